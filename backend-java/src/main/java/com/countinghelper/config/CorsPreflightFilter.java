@@ -23,6 +23,7 @@ public class CorsPreflightFilter extends OncePerRequestFilter {
         }
         response.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
         response.setHeader("Access-Control-Allow-Headers", "*");
+        response.setHeader("Access-Control-Expose-Headers", "ETag");
         response.setHeader("Access-Control-Max-Age", "3600");
     }
 
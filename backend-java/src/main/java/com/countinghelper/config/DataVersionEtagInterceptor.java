@@ -0,0 +1,68 @@
+package com.countinghelper.config;
+
+import com.countinghelper.service.DataVersionService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.time.LocalDate;
+
+/**
+ * 读接口的条件 GET：ETag 由用户的数据版本号（{@link DataVersionService}）生成，
+ * 与 If-None-Match 相同时在进入 Controller 之前直接返回 304，不查询数据库。
+ * 默认结束日期为当天的接口（账单周期）在 ETag 中带上日期，跨天后自然失效。
+ */
+public class DataVersionEtagInterceptor implements HandlerInterceptor {
+
+    private final DataVersionService dataVersionService;
+
+    public DataVersionEtagInterceptor(DataVersionService dataVersionService) {
+        this.dataVersionService = dataVersionService;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String method = request.getMethod();
+        if (!"GET".equalsIgnoreCase(method) && !"HEAD".equalsIgnoreCase(method)) {
+            return true;
+        }
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || !(auth.getPrincipal() instanceof Number)) {
+            return true;
+        }
+        Integer userId = ((Number) auth.getPrincipal()).intValue();
+        String variant = request.getRequestURI().startsWith("/api/billing-cycles") ? LocalDate.now().toString() : null;
+        String etag = dataVersionService.etag(userId, variant);
+        response.setHeader(HttpHeaders.ETAG, etag);
+        // 允许客户端缓存但每次都要重新验证；已设置 Cache-Control 时 Spring Security 不再写入 no-store
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.AUTHORIZATION);
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return false;
+        }
+        return true;
+    }
+
+    /** If-None-Match 可为 * 或逗号分隔的多个 ETag，按弱比较（忽略 W/ 前缀） */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isEmpty()) {
+            return false;
+        }
+        String opaque = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String c = candidate.trim();
+            if (c.equals("*") || stripWeak(c).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
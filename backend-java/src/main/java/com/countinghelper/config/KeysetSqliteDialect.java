@@ -0,0 +1,20 @@
+package com.countinghelper.config;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.community.dialect.SQLiteDialect;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * 在 SQLiteDialect 上注册 keyset_before(a, b, x, y)，生成行值比较 (a, b) &lt; (x, y)。
+ * Criteria API 没有元组比较，而 SQLite 只有写成行值时才能把游标条件变成索引上的范围查找
+ * （展开成 a &lt; x OR (a = x AND b &lt; y) 时只能按 user_id 定位后逐行过滤）。
+ */
+public class KeysetSqliteDialect extends SQLiteDialect {
+
+    @Override
+    public void initializeFunctionRegistry(FunctionContributions functionContributions) {
+        super.initializeFunctionRegistry(functionContributions);
+        functionContributions.getFunctionRegistry().registerPattern("keyset_before", "((?1, ?2) < (?3, ?4))",
+            functionContributions.getTypeConfiguration().getBasicTypeRegistry().resolve(StandardBasicTypes.BOOLEAN));
+    }
+}
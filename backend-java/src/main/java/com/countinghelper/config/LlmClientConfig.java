@@ -0,0 +1,59 @@
+package com.countinghelper.config;
+
+import com.countinghelper.service.LlmClient;
+import com.countinghelper.service.OpenAiLlmClient;
+import com.countinghelper.service.ResilientLlmClient;
+import com.countinghelper.service.StubLlmClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 大模型客户端单例：app.llm.provider 为 openai（默认，需 openai.api-key）或 stub（本地模拟，离线压测用），
+ * 外层统一加上并发上限与熔断（见 {@link ResilientLlmClient}）。
+ */
+@Configuration
+public class LlmClientConfig {
+
+    @Value("${app.llm.provider:openai}")
+    private String provider;
+
+    @Value("${app.llm.max-concurrent:4}")
+    private int maxConcurrent;
+
+    @Value("${app.llm.acquire-timeout-ms:2000}")
+    private long acquireTimeoutMs;
+
+    @Value("${app.llm.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${app.llm.open-seconds:30}")
+    private long openSeconds;
+
+    @Bean(destroyMethod = "shutdown")
+    public ResilientLlmClient llmClient(
+            @Value("${openai.api-key:}") String apiKey,
+            @Value("${app.llm.model:gpt-3.5-turbo}") String model,
+            @Value("${app.llm.max-tokens:2000}") int maxTokens,
+            @Value("${app.llm.temperature:0.7}") double temperature,
+            @Value("${app.llm.connect-timeout-ms:5000}") long connectTimeoutMs,
+            @Value("${app.llm.read-timeout-ms:30000}") long readTimeoutMs,
+            @Value("${app.llm.call-timeout-ms:120000}") long callTimeoutMs,
+            @Value("${app.llm.max-idle-connections:5}") int maxIdleConnections,
+            @Value("${app.llm.stub.first-token-delay-ms:500}") long stubFirstTokenDelayMs,
+            @Value("${app.llm.stub.token-delay-ms:20}") long stubTokenDelayMs,
+            @Value("${app.llm.stub.failure-rate:0}") double stubFailureRate) {
+        LlmClient delegate;
+        if ("stub".equalsIgnoreCase(provider)) {
+            delegate = new StubLlmClient(stubFirstTokenDelayMs, stubTokenDelayMs, stubFailureRate);
+        } else {
+            delegate = new OpenAiLlmClient(apiKey, model, maxTokens, temperature,
+                Duration.ofMillis(connectTimeoutMs), Duration.ofMillis(readTimeoutMs), Duration.ofMillis(callTimeoutMs),
+                maxIdleConnections);
+        }
+        return new ResilientLlmClient(delegate, maxConcurrent, acquireTimeoutMs, failureThreshold,
+            openSeconds * 1000);
+    }
+}
@@ -0,0 +1,163 @@
+package com.countinghelper.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 启动时按版本号顺序执行 classpath:db/migration/V{n}__{描述}.sql 中尚未执行过的迁移，
+ * 已执行的版本记录在 schema_migrations 表中。每个脚本在一个事务内执行，失败时回滚并中止启动。
+ * <p>
+ * 项目默认 ddl-auto=none，不会自动改表；在 Web 服务开始接收请求前完成迁移。
+ * 依赖 EntityManagerFactory，保证 ddl-auto=update（首次部署空库）时 Hibernate 先建好基础表。
+ * ALTER TABLE ADD COLUMN 遇到「列已存在」（例如已被 Hibernate 补上）时视为已执行。
+ * 首次在空库上执行时，transactions 由 Hibernate 按当前实体建成，早期迁移中引用已移除列的回填语句无数据可处理，直接跳过。
+ */
+@Component
+@Lazy(false)
+public class SchemaMigrator implements InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaMigrator.class);
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate txTemplate;
+    private boolean skipMissingColumns;
+
+    public SchemaMigrator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                          EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        jdbcTemplate.execute(
+            "CREATE TABLE IF NOT EXISTS schema_migrations (" +
+            "  version INTEGER PRIMARY KEY," +
+            "  description TEXT," +
+            "  applied_at TEXT NOT NULL" +
+            ")");
+        Set<Integer> applied = new HashSet<>(
+            jdbcTemplate.queryForList("SELECT version FROM schema_migrations", Integer.class));
+        skipMissingColumns = applied.isEmpty() && transactionsEmpty();
+
+        Resource[] resources = new PathMatchingResourcePatternResolver().getResources("classpath*:db/migration/V*__*.sql");
+        List<Resource> ordered = new ArrayList<>(Arrays.asList(resources));
+        ordered.sort(Comparator.comparingInt(SchemaMigrator::versionOf));
+
+        for (Resource resource : ordered) {
+            int version = versionOf(resource);
+            if (version < 0 || applied.contains(version)) {
+                continue;
+            }
+            String description = descriptionOf(resource);
+            String script = StreamUtils.copyToString(resource.getInputStream(), StandardCharsets.UTF_8);
+            try {
+                txTemplate.executeWithoutResult(status -> {
+                    for (String statement : splitStatements(script)) {
+                        execute(statement);
+                    }
+                    jdbcTemplate.update(
+                        "INSERT INTO schema_migrations (version, description, applied_at) VALUES (?, ?, datetime('now'))",
+                        version, description);
+                });
+                log.info("[DB] Applied migration V{} ({})", version, description);
+            } catch (DataAccessException e) {
+                // 后续代码依赖迁移后的表结构，迁移失败时中止启动；该版本已回滚，修复后重启会从该版本继续
+                log.error("[DB] Migration V{} ({}) failed: {}", version, description,
+                    e.getMostSpecificCause().getMessage());
+                throw new IllegalStateException("迁移 V" + version + " 失败", e);
+            }
+        }
+    }
+
+    private void execute(String statement) {
+        try {
+            jdbcTemplate.execute(statement);
+        } catch (DataAccessException e) {
+            String msg = String.valueOf(e.getMostSpecificCause().getMessage()).toLowerCase(Locale.ROOT);
+            if (msg.contains("duplicate column name")) {
+                log.debug("[DB] Column already present, skipped: {}", statement);
+                return;
+            }
+            if (skipMissingColumns && msg.contains("no such column")) {
+                log.debug("[DB] Column not in fresh schema, skipped: {}", statement);
+                return;
+            }
+            throw e;
+        }
+    }
+
+    private boolean transactionsEmpty() {
+        try {
+            return jdbcTemplate.queryForList("SELECT 1 FROM transactions LIMIT 1").isEmpty();
+        } catch (DataAccessException e) {
+            return false;
+        }
+    }
+
+    private static int versionOf(Resource resource) {
+        Matcher m = FILE_NAME.matcher(String.valueOf(resource.getFilename()));
+        return m.matches() ? Integer.parseInt(m.group(1)) : -1;
+    }
+
+    private static String descriptionOf(Resource resource) {
+        Matcher m = FILE_NAME.matcher(String.valueOf(resource.getFilename()));
+        return m.matches() ? m.group(2).replace('_', ' ') : String.valueOf(resource.getFilename());
+    }
+
+    /**
+     * 按行尾分号切分语句；跳过「--」注释行。CREATE TRIGGER ... BEGIN ... END; 作为一条语句整体保留。
+     */
+    static List<String> splitStatements(String script) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean inTrigger = false;
+        for (String line : script.split("\\r?\\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                continue;
+            }
+            if (cur.length() == 0 && trimmed.toUpperCase(Locale.ROOT).matches("CREATE\\s+(TEMP\\s+|TEMPORARY\\s+)?TRIGGER\\b.*")) {
+                inTrigger = true;
+            }
+            cur.append(line).append('\n');
+            boolean end = inTrigger
+                ? trimmed.equalsIgnoreCase("END;")
+                : trimmed.endsWith(";");
+            if (end) {
+                String statement = cur.toString().trim();
+                out.add(statement.substring(0, statement.length() - 1));
+                cur.setLength(0);
+                inTrigger = false;
+            }
+        }
+        if (!cur.toString().isBlank()) {
+            out.add(cur.toString().trim());
+        }
+        return out;
+    }
+}
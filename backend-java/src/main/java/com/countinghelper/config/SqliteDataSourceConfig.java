@@ -1,30 +1,104 @@
 package com.countinghelper.config;
 
 import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.sqlite.SQLiteConfig;
 
 import javax.sql.DataSource;
 import java.io.File;
+import java.sql.Connection;
+import java.util.Map;
 
 /**
  * 使用 db.path 构建 SQLite 连接，路径统一转为「正斜杠」避免 Windows 下空格路径问题。
+ * <p>
+ * 数据库运行在 WAL 模式下，读写分离为两个连接池：
+ * <ul>
+ *   <li>写池：固定 1 个连接，所有写事务串行执行；</li>
+ *   <li>读池：db.read-pool-size 个只读连接，WAL 下读不会被写阻塞。</li>
+ * </ul>
+ * {@code @Transactional(readOnly = true)} 或只读 TransactionTemplate 的事务（包括 Spring Data 仓库的查询方法）
+ * 自动走读池，其余事务及无事务的语句走写池：事务外的 JdbcTemplate 查询需放进只读事务，否则会在写连接上排队。
+ * 外层用 {@link LazyConnectionDataSourceProxy} 包装，确保在事务的只读标记确定后才真正取连接。
  */
 @Configuration
 public class SqliteDataSourceConfig {
 
-    @Bean
-    @Primary
-    public DataSource dataSource(@Value("${db.path}") String dbPath) {
-        File file = new File(dbPath);
-        String absolute = file.getAbsolutePath().replace("\\", "/");
-        String url = "jdbc:sqlite:" + absolute;
+    static final String WRITE = "write";
+    static final String READ = "read";
+
+    @Value("${db.busy-timeout-ms:5000}")
+    private int busyTimeoutMs;
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource writeDataSource(@Value("${db.path}") String dbPath) {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        config.setBusyTimeout(busyTimeoutMs);
         HikariDataSource ds = new HikariDataSource();
-        ds.setJdbcUrl(url);
+        ds.setPoolName("sqlite-write");
+        ds.setJdbcUrl(toJdbcUrl(dbPath));
         ds.setDriverClassName("org.sqlite.JDBC");
+        ds.setDataSourceProperties(config.toProperties());
         ds.setMaximumPoolSize(1);
         return ds;
     }
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource readDataSource(
+            @Value("${db.path}") String dbPath,
+            @Value("${db.read-pool-size:4}") int readPoolSize) {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(busyTimeoutMs);
+        HikariDataSource ds = new HikariDataSource();
+        ds.setPoolName("sqlite-read");
+        ds.setJdbcUrl(toJdbcUrl(dbPath));
+        ds.setDriverClassName("org.sqlite.JDBC");
+        ds.setDataSourceProperties(config.toProperties());
+        // 与连接的只读打开方式一致；否则 Hikari 建连时把只读标记设回 false，SQLite 驱动会拒绝
+        ds.setReadOnly(true);
+        ds.setMaximumPoolSize(Math.max(1, readPoolSize));
+        // 首次部署时数据库文件可能尚不存在（由写连接创建），读池不在启动时建连
+        ds.setMinimumIdle(0);
+        ds.setInitializationFailTimeout(-1);
+        return ds;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(
+            @Qualifier("writeDataSource") DataSource writeDataSource,
+            @Qualifier("readDataSource") DataSource readDataSource) {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource();
+        routing.setTargetDataSources(Map.of(WRITE, writeDataSource, READ, readDataSource));
+        routing.setDefaultTargetDataSource(writeDataSource);
+        routing.afterPropertiesSet();
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(routing);
+        // 显式给出默认值，避免代理在启动时为探测默认属性而去取一个真实连接
+        proxy.setDefaultAutoCommit(true);
+        proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        return proxy;
+    }
+
+    private static String toJdbcUrl(String dbPath) {
+        File file = new File(dbPath);
+        String absolute = file.getAbsolutePath().replace("\\", "/");
+        return "jdbc:sqlite:" + absolute;
+    }
+
+    /** 按当前事务的只读标记选择读池或写池。 */
+    static class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+        @Override
+        protected Object determineCurrentLookupKey() {
+            return TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? READ : WRITE;
+        }
+    }
 }
@@ -0,0 +1,30 @@
+package com.countinghelper.config;
+
+import com.countinghelper.service.DataVersionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private DataVersionService dataVersionService;
+
+    /** 只读取用户自身数据、结果只随数据版本变化的 GET 接口；导出与导入进度不在此列 */
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new DataVersionEtagInterceptor(dataVersionService))
+            .addPathPatterns(
+                "/api/transactions",
+                "/api/transactions/paged",
+                "/api/transactions/stats/summary",
+                "/api/transactions/{id:\\d+}",
+                "/api/categories",
+                "/api/billing-cycles",
+                "/api/settings/**",
+                "/api/sync",
+                "/api/transaction-info");
+    }
+}
@@ -2,6 +2,7 @@ package com.countinghelper.controller;
 
 import com.countinghelper.dto.response.UserResponse;
 import com.countinghelper.service.AdminService;
+import com.countinghelper.service.UserStatsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -17,6 +18,9 @@ public class AdminController {
     
     @Autowired
     private AdminService adminService;
+
+    @Autowired
+    private UserStatsService userStatsService;
     
     private Integer getUserId(Authentication authentication) {
         if (authentication == null || authentication.getPrincipal() == null) {
@@ -57,6 +61,23 @@ public class AdminController {
         }
     }
     
+    /** 从交易表重算所有用户的汇总计数器，返回修正的偏差 */
+    @PostMapping("/user-stats/repair")
+    public ResponseEntity<?> repairUserStats(Authentication authentication) {
+        try {
+            Integer userId = getUserId(authentication);
+            if (!adminService.isAdmin(userId)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "需要管理员权限"));
+            }
+            List<UserStatsService.Drift> drifts = userStatsService.repair();
+            return ResponseEntity.ok(Map.of("driftCount", drifts.size(), "drifts", drifts));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "修复统计失败"));
+        }
+    }
+    
     @DeleteMapping("/users/{id}")
     public ResponseEntity<?> deleteUser(
             Authentication authentication,
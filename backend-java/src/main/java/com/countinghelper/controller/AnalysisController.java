@@ -1,31 +1,98 @@
 package com.countinghelper.controller;
 
 import com.countinghelper.dto.request.AnalysisRequest;
-import com.countinghelper.dto.response.AnalysisResponse;
-import com.countinghelper.service.AnalysisService;
+import com.countinghelper.service.AnalysisJobService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/analysis")
 public class AnalysisController {
-    
+
     @Autowired
-    private AnalysisService analysisService;
-    
+    private AnalysisJobService analysisJobService;
+
+    /**
+     * 创建分析任务，立即返回任务 id；输出通过 GET /{jobId}/stream（SSE）接收，或 GET /{jobId} 查询。
+     */
     @PostMapping
-    public ResponseEntity<AnalysisResponse> analyze(
+    public ResponseEntity<?> analyze(
             Authentication authentication,
             @RequestBody(required = false) AnalysisRequest request) {
         if (authentication == null || authentication.getPrincipal() == null) {
-            return ResponseEntity.status(org.springframework.http.HttpStatus.UNAUTHORIZED).build();
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
         Integer userId = (Integer) authentication.getPrincipal();
         String period = (request != null && request.getPeriod() != null)
             ? request.getPeriod() : "all";
-        AnalysisResponse response = analysisService.analyze(userId, period);
-        return ResponseEntity.ok(response);
+        try {
+            String jobId = analysisJobService.submit(userId, period);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("jobId", jobId, "status", "queued"));
+        } catch (RuntimeException e) {
+            if ("分析任务过多，请等待当前分析完成".equals(e.getMessage())
+                    || "分析服务繁忙，请稍后重试".equals(e.getMessage())) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(Map.of("error", e.getMessage()));
+            }
+            throw e;
+        }
+    }
+
+    /** 任务状态：status（queued | running | done | failed | cancelled）、analysis、model、error、message */
+    @GetMapping("/{jobId}")
+    public ResponseEntity<?> getJob(Authentication authentication, @PathVariable String jobId) {
+        try {
+            return ResponseEntity.ok(analysisJobService.getStatus(getUserId(authentication), jobId));
+        } catch (RuntimeException e) {
+            return notFound(e);
+        }
+    }
+
+    /**
+     * 流式接收任务输出：token 事件为新生成的片段，end 事件为最终结果（同 GET /{jobId}）。
+     * 断开连接且没有其他订阅者时任务被取消。
+     */
+    @GetMapping(value = "/{jobId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> stream(Authentication authentication, @PathVariable String jobId) {
+        try {
+            SseEmitter emitter = analysisJobService.subscribe(getUserId(authentication), jobId);
+            return ResponseEntity.ok()
+                .header("Cache-Control", "no-cache")
+                .header("X-Accel-Buffering", "no")
+                .body(emitter);
+        } catch (RuntimeException e) {
+            return notFound(e);
+        }
+    }
+
+    /** 取消任务 */
+    @DeleteMapping("/{jobId}")
+    public ResponseEntity<?> cancel(Authentication authentication, @PathVariable String jobId) {
+        try {
+            analysisJobService.cancel(getUserId(authentication), jobId);
+            return ResponseEntity.noContent().build();
+        } catch (RuntimeException e) {
+            return notFound(e);
+        }
+    }
+
+    private static ResponseEntity<?> notFound(RuntimeException e) {
+        if ("分析任务不存在".equals(e.getMessage())) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        }
+        throw e;
+    }
+
+    private Integer getUserId(Authentication authentication) {
+        if (authentication == null || authentication.getPrincipal() == null) {
+            throw new org.springframework.security.access.AccessDeniedException("未认证");
+        }
+        return (Integer) authentication.getPrincipal();
     }
 }
@@ -0,0 +1,49 @@
+package com.countinghelper.controller;
+
+import com.countinghelper.service.SyncService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * 客户端增量同步：GET /api/sync?since=上次的 version，返回之后变更的交易（紧凑的数组行，列见 fields）
+ * 与被删除的交易 id。hasMore 时带 cursor 继续取下一页；reset 为 true 时需清空本地数据，本次即全量。
+ */
+@RestController
+@RequestMapping("/api/sync")
+public class SyncController {
+
+    @Autowired
+    private SyncService syncService;
+
+    private Integer getUserId(Authentication auth) {
+        if (auth == null || auth.getPrincipal() == null) {
+            throw new org.springframework.security.access.AccessDeniedException("未认证");
+        }
+        Object p = auth.getPrincipal();
+        if (p instanceof Number) return ((Number) p).intValue();
+        return (Integer) p;
+    }
+
+    @GetMapping
+    public ResponseEntity<?> changes(
+            Authentication authentication,
+            @RequestParam(defaultValue = "0") long since,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            Integer userId = getUserId(authentication);
+            return ResponseEntity.ok(syncService.changesSince(userId, since, cursor, limit));
+        } catch (RuntimeException e) {
+            if ("无效的同步游标".equals(e.getMessage())) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+            }
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "同步失败"));
+        }
+    }
+}
@@ -2,6 +2,10 @@ package com.countinghelper.controller;
 
 import com.countinghelper.entity.Transaction;
 import com.countinghelper.repository.TransactionRepository;
+import com.countinghelper.service.AnalysisCacheService;
+import com.countinghelper.service.GroupCommitWriter;
+import com.countinghelper.service.ResilientLlmClient;
+import com.countinghelper.service.TransactionColumnCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -11,8 +15,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api")
@@ -21,6 +25,18 @@ public class SystemController {
     @Autowired
     private TransactionRepository transactionRepository;
 
+    @Autowired
+    private GroupCommitWriter groupCommitWriter;
+
+    @Autowired
+    private TransactionColumnCache columnCache;
+
+    @Autowired
+    private AnalysisCacheService analysisCache;
+
+    @Autowired
+    private ResilientLlmClient llmClient;
+
     /**
      * API 根路径：无需登录，避免访问 /api 时出现 403。
      */
@@ -49,6 +65,17 @@ public class SystemController {
         return "ok";
     }
 
+    /** 运行指标：写队列组提交批大小与提交耗时等（需登录） */
+    @GetMapping("/metrics")
+    public ResponseEntity<Map<String, Object>> metrics() {
+        Map<String, Object> body = new HashMap<>();
+        body.put("writeQueue", groupCommitWriter.snapshot());
+        body.put("columnCache", columnCache.snapshot());
+        body.put("analysisCache", analysisCache.snapshot());
+        body.put("llm", llmClient.snapshot());
+        return ResponseEntity.ok(body);
+    }
+
     /** 调试：查看当前登录用户的交易笔数及一条示例 */
     @GetMapping("/transaction-info")
     public ResponseEntity<Map<String, Object>> transactionInfo(Authentication authentication) {
@@ -56,12 +83,21 @@ public class SystemController {
             return ResponseEntity.status(401).body(Map.of("error", "未认证"));
         }
         int userId = (Integer) authentication.getPrincipal();
-        List<Transaction> list = transactionRepository.findByUserIdOrderByCreatedAtDesc(userId);
         Map<String, Object> body = new HashMap<>();
         body.put("userId", userId);
-        body.put("transactionCount", list.size());
-        if (!list.isEmpty()) {
-            Transaction first = list.get(0);
+        TransactionColumnCache.Summary summary = columnCache.summary(userId);
+        if (summary != null) {
+            body.put("transactionCount", summary.count);
+            if (summary.latestId != null) {
+                body.put("sampleId", summary.latestId);
+                body.put("sampleCreatedAt", summary.latestCreatedAt != null ? summary.latestCreatedAt.toString() : null);
+            }
+            return ResponseEntity.ok(body);
+        }
+        body.put("transactionCount", transactionRepository.countByUserId(userId));
+        Optional<Transaction> latest = transactionRepository.findFirstByUserIdOrderByCreatedAtEpochDescIdDesc(userId);
+        if (latest.isPresent()) {
+            Transaction first = latest.get();
             body.put("sampleId", first.getId());
             body.put("sampleCreatedAt", first.getCreatedAt() != null ? first.getCreatedAt().toString() : null);
         }
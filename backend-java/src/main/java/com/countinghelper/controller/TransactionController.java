@@ -1,14 +1,19 @@
 package com.countinghelper.controller;
 
+import com.countinghelper.dto.request.TransactionBatchRequest;
 import com.countinghelper.dto.request.TransactionRequest;
 import com.countinghelper.dto.response.StatsResponse;
 import com.countinghelper.entity.Transaction;
+import com.countinghelper.service.ImportJobService;
+import com.countinghelper.service.TransactionBatchService;
 import com.countinghelper.service.TransactionExportService;
 import com.countinghelper.service.TransactionImportService;
+import com.countinghelper.service.TransactionSearchService;
 import com.countinghelper.service.TransactionService;
 import org.springframework.data.domain.Page;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -16,12 +21,14 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/transactions")
@@ -34,7 +41,13 @@ public class TransactionController {
     private TransactionExportService transactionExportService;
 
     @Autowired
-    private TransactionImportService transactionImportService;
+    private ImportJobService importJobService;
+
+    @Autowired
+    private TransactionBatchService transactionBatchService;
+
+    @Value("${app.export.gzip:true}")
+    private boolean exportGzip;
     
     private Integer getUserId(Authentication authentication) {
         if (authentication == null || authentication.getPrincipal() == null) {
@@ -57,6 +70,43 @@ public class TransactionController {
         }
     }
     
+    /**
+     * 批量新增 / 修改 / 删除：operations 为 [{clientId, op: create|update|delete, id, data}]，
+     * 整批在一个写事务内执行，按顺序返回每项结果 {clientId, op, status, id, error}。
+     * mode=atomic（默认）时任一项失败则全部不执行并返回 400；best-effort 时跳过失败项。
+     * 条数上限为 app.batch.max-operations，超出返回 413。
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> batchTransactions(
+            Authentication authentication,
+            @RequestBody TransactionBatchRequest request) {
+        try {
+            Integer userId = getUserId(authentication);
+            TransactionBatchService.BatchResult result = transactionBatchService.apply(userId, request);
+            Map<String, Object> body = new HashMap<>();
+            body.put("mode", result.mode);
+            body.put("applied", result.applied);
+            body.put("succeeded", result.succeeded);
+            body.put("failed", result.failed);
+            body.put("results", result.results);
+            if (!result.applied) {
+                body.put("error", "批量操作未执行：" + result.failed + " 项校验失败");
+                return ResponseEntity.badRequest().body(body);
+            }
+            return ResponseEntity.ok(body);
+        } catch (RuntimeException e) {
+            String message = e.getMessage() != null ? e.getMessage() : "";
+            if (message.startsWith("批量操作最多")) {
+                return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(Map.of("error", message));
+            }
+            if (message.startsWith("批量模式无效") || message.equals("批量操作不能为空")) {
+                return ResponseEntity.badRequest().body(Map.of("error", message));
+            }
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "批量操作失败"));
+        }
+    }
+    
     @GetMapping
     public ResponseEntity<?> getTransactions(
             Authentication authentication,
@@ -89,24 +139,70 @@ public class TransactionController {
             @RequestParam(required = false) String type,
             @RequestParam(required = false) String paymentMethod,
             @RequestParam(required = false) String category,
-            @RequestParam(required = false) String keyword) {
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean withTotal,
+            @RequestParam(required = false) String sort,
+            @RequestParam(defaultValue = "false") boolean highlight) {
         try {
             Integer userId = getUserId(authentication);
+            if (cursor != null) {
+                // 游标模式：cursor 为空串表示第一页，之后传上一页返回的 nextCursor
+                TransactionService.CursorPage result = transactionService.getTransactionsByCursor(
+                    userId, cursor, size, withTotal, date, from, to, type, paymentMethod, category, keyword);
+                Map<String, Object> body = new HashMap<>();
+                body.put("content", result.content);
+                body.put("size", result.content.size());
+                body.put("nextCursor", result.nextCursor);
+                body.put("hasNext", result.nextCursor != null);
+                if (result.totalElements != null) {
+                    body.put("totalElements", result.totalElements);
+                }
+                if (highlight) {
+                    body.put("highlights", highlights(result.content, keyword));
+                }
+                return ResponseEntity.ok(body);
+            }
             Page<Transaction> result = transactionService.getTransactionsPaged(
-                userId, page, size, date, from, to, type, paymentMethod, category, keyword);
+                userId, page, size, date, from, to, type, paymentMethod, category, keyword, "relevance".equals(sort));
             Map<String, Object> body = new HashMap<>();
             body.put("content", result.getContent());
             body.put("totalElements", result.getTotalElements());
             body.put("totalPages", result.getTotalPages());
             body.put("number", result.getNumber());
             body.put("size", result.getSize());
+            if (highlight) {
+                body.put("highlights", highlights(result.getContent(), keyword));
+            }
             return ResponseEntity.ok(body);
+        } catch (RuntimeException e) {
+            if ("无效的分页游标".equals(e.getMessage())) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+            }
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "获取交易失败"));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(Map.of("error", "获取交易失败"));
         }
     }
 
+    /** 关键字命中位置：{交易id: {description: [[start, end], ...], category: [...]}}，仅包含有命中的交易 */
+    private Map<Integer, Map<String, List<int[]>>> highlights(List<Transaction> content, String keyword) {
+        Map<Integer, Map<String, List<int[]>>> out = new HashMap<>();
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return out;
+        }
+        for (Transaction t : content) {
+            List<int[]> description = TransactionSearchService.highlight(t.getDescription(), keyword);
+            List<int[]> category = TransactionSearchService.highlight(t.getCategory(), keyword);
+            if (!description.isEmpty() || !category.isEmpty()) {
+                out.put(t.getId(), Map.of("description", description, "category", category));
+            }
+        }
+        return out;
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<?> getTransaction(
             Authentication authentication,
@@ -162,69 +258,101 @@ public class TransactionController {
         }
     }
     
-    /** 导入交易：上传 CSV 文件，格式与导出一致（日期,类型,金额,货币,支付方式,分类,描述） */
+    /**
+     * 导入交易：上传 CSV / XLSX（列与导出一致：日期,类型,金额,货币,支付方式,分类,描述）
+     * 或银行对账单（OFX、QIF、CAMT.053），格式按文件内容识别。
+     * 文件落盘后在后台按块导入，立即返回任务 id，进度通过 GET /import/{jobId} 查询。
+     * duplicates：与已有交易重复的行的处理方式，skip（默认，跳过）| flag（导入并标记）| force（不检查）。
+     */
     @PostMapping("/import")
     public ResponseEntity<?> importTransactions(
             Authentication authentication,
-            @RequestParam("file") MultipartFile file) {
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "duplicates", required = false) String duplicates) {
         if (file.isEmpty()) {
-            return ResponseEntity.badRequest().body(Map.of("error", "请选择 CSV 文件"));
-        }
-        String name = file.getOriginalFilename();
-        if (name == null || !name.toLowerCase().endsWith(".csv")) {
-            return ResponseEntity.badRequest().body(Map.of("error", "仅支持 .csv 文件"));
+            return ResponseEntity.badRequest().body(Map.of("error", "请选择要导入的文件"));
         }
         try {
             Integer userId = getUserId(authentication);
-            byte[] bytes = file.getBytes();
-            TransactionImportService.ImportResult result = transactionImportService.importCsvForUser(userId, bytes);
-            Map<String, Object> body = new HashMap<>();
-            body.put("imported", result.imported);
-            body.put("failed", result.failed);
-            body.put("errors", result.errors);
-            return ResponseEntity.ok(body);
+            TransactionImportService.DuplicateMode mode = TransactionImportService.DuplicateMode.parse(duplicates);
+            String jobId = importJobService.submit(userId, file, mode);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("jobId", jobId, "status", "queued"));
+        } catch (RuntimeException e) {
+            if (e.getMessage() != null
+                    && (e.getMessage().startsWith("重复处理方式无效") || e.getMessage().startsWith("无法识别的文件格式"))) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+            }
+            if ("导入任务过多，请等待当前任务完成".equals(e.getMessage())) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(Map.of("error", e.getMessage()));
+            }
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "导入失败：" + e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("error", "导入失败：" + e.getMessage()));
         }
     }
 
-    /** 导出交易：format=csv|excel，from/to 可选日期范围（YYYY-MM-DD），不传则导出全部 */
-    @GetMapping("/export")
-    public ResponseEntity<?> exportTransactions(
+    /** 导入任务进度：status、processed/imported/failed、bytesRead/totalBytes、rowsPerSecond、errors、duplicates/duplicateRows */
+    @GetMapping("/import/{jobId}")
+    public ResponseEntity<?> getImportJob(
             Authentication authentication,
-            @RequestParam(defaultValue = "csv") String format,
-            @RequestParam(required = false) String from,
-            @RequestParam(required = false) String to) {
+            @PathVariable String jobId) {
         try {
             Integer userId = getUserId(authentication);
-            List<Transaction> list;
-            if (from != null && !from.isEmpty() && to != null && !to.isEmpty()) {
-                list = transactionService.getTransactionsInRange(userId, from, to);
-            } else {
-                list = transactionService.getTransactions(userId, null);
-            }
-            byte[] bytes;
-            String filename;
-            String contentType;
-            if ("excel".equalsIgnoreCase(format)) {
-                bytes = transactionExportService.exportToExcel(list);
-                filename = "transactions.xlsx";
-                contentType = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
-            } else {
-                bytes = transactionExportService.exportToCsv(list);
-                filename = "transactions.csv";
-                contentType = "text/csv; charset=UTF-8";
+            return ResponseEntity.ok(importJobService.getStatus(userId, jobId));
+        } catch (RuntimeException e) {
+            if ("导入任务不存在".equals(e.getMessage())) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
             }
-            String encodedFilename = URLEncoder.encode(filename, StandardCharsets.UTF_8).replace("+", "%20");
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType(contentType));
-            headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"; filename*=UTF-8''" + encodedFilename);
-            return new ResponseEntity<>(bytes, headers, HttpStatus.OK);
-        } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("error", "导出失败：" + e.getMessage()));
+                    .body(Map.of("error", "获取导入进度失败"));
+        }
+    }
+
+    /**
+     * 导出交易：format=csv|excel，from/to 可选日期范围（YYYY-MM-DD），不传则导出全部。
+     * 两种格式都以流的方式边查边写；CSV 在客户端支持且 app.export.gzip 开启时使用 gzip 传输编码。
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportTransactions(
+            Authentication authentication,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        // 返回类型须声明为 StreamingResponseBody，Spring 才按流写出，而不是找消息转换器序列化 lambda
+        Integer userId = getUserId(authentication);
+        if (!"excel".equalsIgnoreCase(format)) {
+            boolean gzip = exportGzip && acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+            StreamingResponseBody body = out -> {
+                if (gzip) {
+                    GZIPOutputStream gz = new GZIPOutputStream(out, 8192);
+                    transactionExportService.writeCsv(userId, from, to, gz);
+                    gz.finish();
+                } else {
+                    transactionExportService.writeCsv(userId, from, to, out);
+                }
+            };
+            HttpHeaders headers = attachmentHeaders("transactions.csv", "text/csv; charset=UTF-8");
+            headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (gzip) {
+                headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            return new ResponseEntity<>(body, headers, HttpStatus.OK);
         }
+        StreamingResponseBody body = out -> transactionExportService.writeExcel(userId, from, to, out);
+        HttpHeaders headers = attachmentHeaders("transactions.xlsx",
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    private static HttpHeaders attachmentHeaders(String filename, String contentType) {
+        String encodedFilename = URLEncoder.encode(filename, StandardCharsets.UTF_8).replace("+", "%20");
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(contentType));
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"; filename*=UTF-8''" + encodedFilename);
+        return headers;
     }
 
     @GetMapping("/stats/summary")
@@ -0,0 +1,83 @@
+package com.countinghelper.dto.request;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+/** 批量新增 / 修改 / 删除交易 */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TransactionBatchRequest {
+    /** atomic（默认，全部成功才写入）| best-effort（失败项跳过，其余照常写入） */
+    private String mode;
+
+    private List<Operation> operations;
+
+    public TransactionBatchRequest() {
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    public void setOperations(List<Operation> operations) {
+        this.operations = operations;
+    }
+
+    /** 单个操作：op 为 create | update | delete；update / delete 需要 id，create / update 需要 data */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Operation {
+        /** 客户端自定义的标识，原样返回，用于对应结果 */
+        @JsonAlias("client_id")
+        private String clientId;
+
+        private String op;
+
+        private Integer id;
+
+        private TransactionRequest data;
+
+        public Operation() {
+        }
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        public void setClientId(String clientId) {
+            this.clientId = clientId;
+        }
+
+        public String getOp() {
+            return op;
+        }
+
+        public void setOp(String op) {
+            this.op = op;
+        }
+
+        public Integer getId() {
+            return id;
+        }
+
+        public void setId(Integer id) {
+            this.id = id;
+        }
+
+        public TransactionRequest getData() {
+            return data;
+        }
+
+        public void setData(TransactionRequest data) {
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.countinghelper.entity;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Set;
+
+/**
+ * 金额以最小货币单位的 long 存储与运算（分、便士；日元等无小数货币为元，第纳尔等为千分之一）。
+ * 小数位数由货币决定，英镑折算金额固定两位。汇总只做整数加减，展示和 JSON 时才换算成小数。
+ */
+public final class Money {
+
+    /** 英镑折算金额的小数位数 */
+    public static final int GBP_SCALE = 2;
+
+    private static final Set<String> ZERO_DECIMAL = Set.of(
+        "JPY", "KRW", "VND", "CLP", "ISK", "PYG", "UGX", "XAF", "XOF", "XPF", "BIF", "DJF", "GNF", "KMF", "RWF", "VUV");
+    private static final Set<String> THREE_DECIMAL = Set.of("BHD", "IQD", "JOD", "KWD", "LYD", "OMR", "TND");
+    private static final long[] POW10 = { 1, 10, 100, 1000 };
+
+    private Money() {
+    }
+
+    /** 货币的小数位数，未知货币按两位 */
+    public static int scale(String currency) {
+        if (currency == null) {
+            return 2;
+        }
+        if (ZERO_DECIMAL.contains(currency)) {
+            return 0;
+        }
+        return THREE_DECIMAL.contains(currency) ? 3 : 2;
+    }
+
+    /** 小数金额换成最小单位，多余的小数位四舍五入；按十进制表示换算，0.1 + 0.2 之类不会带入二进制误差 */
+    public static long toMinor(double amount, String currency) {
+        return toMinor(BigDecimal.valueOf(amount), scale(currency));
+    }
+
+    public static long toMinor(BigDecimal amount, int scale) {
+        return amount.setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static double toDouble(long minor, String currency) {
+        return toDouble(minor, scale(currency));
+    }
+
+    public static double toDouble(long minor, int scale) {
+        return (double) minor / POW10[scale];
+    }
+
+    /** 按货币金额换算英镑便士：汇率只参与这一次乘法，结果四舍五入为整数 */
+    public static long toGbpMinor(long minor, String currency, double rate) {
+        int scale = scale(currency);
+        return Math.round(minor * rate * POW10[GBP_SCALE] / POW10[scale]);
+    }
+
+    /** 定点格式化，如 -1234 按两位为 "-12.34"；不经过浮点与 String.format */
+    public static String format(long minor, int scale) {
+        if (scale == 0) {
+            return Long.toString(minor);
+        }
+        StringBuilder sb = new StringBuilder(24);
+        if (minor < 0) {
+            sb.append('-');
+        }
+        long abs = Math.abs(minor);
+        long pow = POW10[scale];
+        sb.append(abs / pow).append('.');
+        long frac = abs % pow;
+        for (long p = pow / 10; p > 1 && frac < p; p /= 10) {
+            sb.append('0');
+        }
+        return sb.append(frac).toString();
+    }
+
+    public static String format(long minor, String currency) {
+        return format(minor, scale(currency));
+    }
+}
@@ -1,12 +1,16 @@
 package com.countinghelper.entity;
 
 import com.countinghelper.config.LocalDateTimeSqliteConverter;
+import com.countinghelper.service.TransactionLabelListener;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
 @Entity
 @Table(name = "transactions")
+@EntityListeners(TransactionLabelListener.class)
 public class Transaction {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -15,56 +19,91 @@ public class Transaction {
     @Column(name = "user_id", nullable = false)
     private Integer userId;
     
-    @Column(nullable = false)
-    private Double amount;
+    /** 金额，按 currency 的最小单位存储，见 {@link Money} */
+    @JsonIgnore
+    @Column(name = "amount", nullable = false)
+    private Long amountMinor;
     
-    @Column(nullable = false, length = 10)
+    /** 类型、货币、分类、支付方式存为 transaction_labels 的 id，见 TransactionLabelService */
+    @JsonIgnore
+    @Column(name = "currency_id")
+    private Integer currencyId;
+    
+    @Transient
     private String currency;
     
+    /** 英镑折算金额，单位便士 */
+    @JsonIgnore
     @Column(name = "amount_in_gbp", nullable = false)
-    private Double amountInGbp;
+    private Long amountInGbpMinor;
     
     @Column(columnDefinition = "TEXT")
     private String description;
     
-    @Column(columnDefinition = "TEXT")
+    @JsonIgnore
+    @Column(name = "category_id")
+    private Integer categoryId;
+    
+    @Transient
     private String category;
     
-    @Column(name = "payment_method", nullable = false, length = 50)
+    @JsonIgnore
+    @Column(name = "payment_method_id")
+    private Integer paymentMethodId;
+    
+    @Transient
     private String paymentMethod;
     
-    @Column(name = "transaction_type", nullable = false, length = 20)
+    @JsonIgnore
+    @Column(name = "type_id")
+    private Integer typeId;
+    
+    @Transient
     private String transactionType;
     
     @Convert(converter = LocalDateTimeSqliteConverter.class)
     @Column(name = "created_at")
     private LocalDateTime createdAt;
     
+    /** created_at 视为 UTC 换算的秒数（不做时区换算，只用于定位与排序），随 createdAt 一起设置 */
+    @JsonIgnore
+    @Column(name = "created_at_epoch")
+    private Long createdAtEpoch;
+    
+    /** created_at 的日期，距 1970-01-01 的天数 */
+    @JsonIgnore
+    @Column(name = "created_day")
+    private Integer createdDay;
+    
     public Transaction() {
     }
     
-    public Transaction(Integer id, Integer userId, Double amount, String currency, Double amountInGbp, 
+    public Transaction(Integer id, Integer userId, Long amountMinor, String currency, Long amountInGbpMinor, 
                        String description, String category, String paymentMethod, String transactionType, 
                        LocalDateTime createdAt) {
         this.id = id;
         this.userId = userId;
-        this.amount = amount;
+        this.amountMinor = amountMinor;
         this.currency = currency;
-        this.amountInGbp = amountInGbp;
+        this.amountInGbpMinor = amountInGbpMinor;
         this.description = description;
         this.category = category;
         this.paymentMethod = paymentMethod;
         this.transactionType = transactionType;
-        this.createdAt = createdAt;
+        setCreatedAt(createdAt);
     }
     
     @PrePersist
     protected void onCreate() {
         if (createdAt == null) {
-            createdAt = LocalDateTime.now();
+            setCreatedAt(LocalDateTime.now());
         }
     }
     
+    public static Long epochOf(LocalDateTime t) {
+        return t != null ? t.toEpochSecond(ZoneOffset.UTC) : null;
+    }
+    
     // Getters and Setters
     public Integer getId() {
         return id;
@@ -82,12 +121,25 @@ public class Transaction {
         this.userId = userId;
     }
     
+    public Long getAmountMinor() {
+        return amountMinor;
+    }
+    
+    public void setAmountMinor(Long amountMinor) {
+        this.amountMinor = amountMinor;
+    }
+    
+    /** 小数金额，仅用于 JSON 与展示 */
     public Double getAmount() {
-        return amount;
+        return amountMinor != null ? Money.toDouble(amountMinor, currency) : null;
     }
     
-    public void setAmount(Double amount) {
-        this.amount = amount;
+    public Integer getCurrencyId() {
+        return currencyId;
+    }
+    
+    public void setCurrencyId(Integer currencyId) {
+        this.currencyId = currencyId;
     }
     
     public String getCurrency() {
@@ -98,12 +150,16 @@ public class Transaction {
         this.currency = currency;
     }
     
-    public Double getAmountInGbp() {
-        return amountInGbp;
+    public Long getAmountInGbpMinor() {
+        return amountInGbpMinor;
+    }
+    
+    public void setAmountInGbpMinor(Long amountInGbpMinor) {
+        this.amountInGbpMinor = amountInGbpMinor;
     }
     
-    public void setAmountInGbp(Double amountInGbp) {
-        this.amountInGbp = amountInGbp;
+    public Double getAmountInGbp() {
+        return amountInGbpMinor != null ? Money.toDouble(amountInGbpMinor, Money.GBP_SCALE) : null;
     }
     
     public String getDescription() {
@@ -114,6 +170,14 @@ public class Transaction {
         this.description = description;
     }
     
+    public Integer getCategoryId() {
+        return categoryId;
+    }
+    
+    public void setCategoryId(Integer categoryId) {
+        this.categoryId = categoryId;
+    }
+    
     public String getCategory() {
         return category;
     }
@@ -122,6 +186,14 @@ public class Transaction {
         this.category = category;
     }
     
+    public Integer getPaymentMethodId() {
+        return paymentMethodId;
+    }
+    
+    public void setPaymentMethodId(Integer paymentMethodId) {
+        this.paymentMethodId = paymentMethodId;
+    }
+    
     public String getPaymentMethod() {
         return paymentMethod;
     }
@@ -130,6 +202,14 @@ public class Transaction {
         this.paymentMethod = paymentMethod;
     }
     
+    public Integer getTypeId() {
+        return typeId;
+    }
+    
+    public void setTypeId(Integer typeId) {
+        this.typeId = typeId;
+    }
+    
     public String getTransactionType() {
         return transactionType;
     }
@@ -144,5 +224,15 @@ public class Transaction {
     
     public void setCreatedAt(LocalDateTime createdAt) {
         this.createdAt = createdAt;
+        this.createdAtEpoch = epochOf(createdAt);
+        this.createdDay = createdAt != null ? (int) createdAt.toLocalDate().toEpochDay() : null;
+    }
+    
+    public Long getCreatedAtEpoch() {
+        return createdAtEpoch;
+    }
+    
+    public Integer getCreatedDay() {
+        return createdDay;
     }
 }
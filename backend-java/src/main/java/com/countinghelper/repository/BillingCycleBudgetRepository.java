@@ -3,10 +3,15 @@ package com.countinghelper.repository;
 import com.countinghelper.entity.BillingCycleBudget;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
+@Transactional(readOnly = true)
 public interface BillingCycleBudgetRepository extends JpaRepository<BillingCycleBudget, Integer> {
     Optional<BillingCycleBudget> findByUserIdAndCycleStart(Integer userId, String cycleStart);
+
+    List<BillingCycleBudget> findByUserIdAndCycleStartBetween(Integer userId, String fromInclusive, String toInclusive);
 }
@@ -8,37 +8,83 @@ import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
+/**
+ * 查询默认在只读事务中执行，由 {@code SqliteDataSourceConfig} 路由到读连接池；写方法单独声明读写事务。
+ * 按时间的筛选与排序都用 created_at_epoch，走 (user_id, created_at_epoch DESC, id DESC) 索引定位，
+ * 不对 created_at 文本调用 DATE() 等函数。
+ */
 @Repository
+@Transactional(readOnly = true)
 public interface TransactionRepository extends JpaRepository<Transaction, Integer>, JpaSpecificationExecutor<Transaction> {
-    List<Transaction> findByUserIdOrderByCreatedAtDesc(Integer userId);
+    /** DATE(:date) 当天 [0 点, 次日 0 点) 的 created_at_epoch 区间；date 无法解析时为 NULL，没有结果 */
+    String DAY_RANGE =
+        " AND created_at_epoch >= CAST(strftime('%s', DATE(:date)) AS INTEGER)" +
+        " AND created_at_epoch < CAST(strftime('%s', DATE(:date), '+1 day') AS INTEGER)";
 
-    Page<Transaction> findByUserIdOrderByCreatedAtDesc(Integer userId, Pageable pageable);
+    @Query("SELECT t FROM Transaction t WHERE t.userId = :userId ORDER BY t.createdAtEpoch DESC, t.id DESC")
+    List<Transaction> findByUserIdOrderByCreatedAtDesc(@Param("userId") Integer userId);
 
-    @Query(value = "SELECT * FROM transactions WHERE user_id = :userId AND DATE(created_at) = DATE(:date) ORDER BY created_at DESC", nativeQuery = true)
+    @Query(value = "SELECT t FROM Transaction t WHERE t.userId = :userId ORDER BY t.createdAtEpoch DESC, t.id DESC",
+           countQuery = "SELECT COUNT(t) FROM Transaction t WHERE t.userId = :userId")
+    Page<Transaction> findByUserIdOrderByCreatedAtDesc(@Param("userId") Integer userId, Pageable pageable);
+
+    @Query(value = "SELECT * FROM transactions WHERE user_id = :userId" + DAY_RANGE + " ORDER BY created_at_epoch DESC, id DESC",
+           nativeQuery = true)
     List<Transaction> findByUserIdAndDate(@Param("userId") Integer userId, @Param("date") String date);
 
-    @Query(value = "SELECT * FROM transactions WHERE user_id = :userId AND DATE(created_at) = DATE(:date) ORDER BY created_at DESC",
-           countQuery = "SELECT COUNT(*) FROM transactions WHERE user_id = :userId AND DATE(created_at) = DATE(:date)",
+    @Query(value = "SELECT * FROM transactions WHERE user_id = :userId" + DAY_RANGE + " ORDER BY created_at_epoch DESC, id DESC",
+           countQuery = "SELECT COUNT(*) FROM transactions WHERE user_id = :userId" + DAY_RANGE,
            nativeQuery = true)
     Page<Transaction> findByUserIdAndDatePaged(@Param("userId") Integer userId, @Param("date") String date, Pageable pageable);
 
-    List<Transaction> findByUserIdAndCreatedAtBetween(
-        Integer userId, LocalDateTime start, LocalDateTime end);
+    @Query("SELECT t FROM Transaction t WHERE t.userId = :userId AND t.createdAtEpoch BETWEEN :start AND :end" +
+           " ORDER BY t.createdAtEpoch DESC, t.id DESC")
+    List<Transaction> findByUserIdAndEpochBetween(
+        @Param("userId") Integer userId, @Param("start") Long start, @Param("end") Long end);
 
-    Page<Transaction> findByUserIdAndCreatedAtBetween(
-        Integer userId, LocalDateTime start, LocalDateTime end, Pageable pageable);
-    
-    @Query("SELECT t FROM Transaction t WHERE t.userId = :userId AND t.createdAt >= :start ORDER BY t.createdAt DESC")
-    List<Transaction> findByUserIdAndCreatedAtAfter(@Param("userId") Integer userId, @Param("start") LocalDateTime start);
+    @Query(value = "SELECT t FROM Transaction t WHERE t.userId = :userId AND t.createdAtEpoch BETWEEN :start AND :end",
+           countQuery = "SELECT COUNT(t) FROM Transaction t WHERE t.userId = :userId AND t.createdAtEpoch BETWEEN :start AND :end")
+    Page<Transaction> findByUserIdAndEpochBetween(
+        @Param("userId") Integer userId, @Param("start") Long start, @Param("end") Long end, Pageable pageable);
+
+    /** [start, end]（含两端） */
+    default List<Transaction> findByUserIdAndCreatedAtBetween(Integer userId, LocalDateTime start, LocalDateTime end) {
+        return findByUserIdAndEpochBetween(userId, Transaction.epochOf(start), Transaction.epochOf(end));
+    }
+
+    default Page<Transaction> findByUserIdAndCreatedAtBetween(
+            Integer userId, LocalDateTime start, LocalDateTime end, Pageable pageable) {
+        return findByUserIdAndEpochBetween(userId, Transaction.epochOf(start), Transaction.epochOf(end), pageable);
+    }
+
+    @Query("SELECT t FROM Transaction t WHERE t.userId = :userId AND t.createdAtEpoch >= :start" +
+           " ORDER BY t.createdAtEpoch DESC, t.id DESC")
+    List<Transaction> findByUserIdAndEpochFrom(@Param("userId") Integer userId, @Param("start") Long start);
+
+    default List<Transaction> findByUserIdAndCreatedAtAfter(Integer userId, LocalDateTime start) {
+        return findByUserIdAndEpochFrom(userId, Transaction.epochOf(start));
+    }
     
+    /** 最近 50 条（分析提示词中的交易明细） */
+    List<Transaction> findTop50ByUserIdOrderByCreatedAtEpochDescIdDesc(Integer userId);
+
+    List<Transaction> findTop50ByUserIdAndCreatedAtEpochGreaterThanEqualOrderByCreatedAtEpochDescIdDesc(Integer userId, Long start);
+
+    /** 最新一条 */
+    Optional<Transaction> findFirstByUserIdOrderByCreatedAtEpochDescIdDesc(Integer userId);
+
+    long countByUserId(Integer userId);
+
     Optional<Transaction> findByIdAndUserId(Integer id, Integer userId);
 
     boolean existsByIdAndUserId(Integer id, Integer userId);
 
+    @Transactional
     void deleteByIdAndUserId(Integer id, Integer userId);
 }
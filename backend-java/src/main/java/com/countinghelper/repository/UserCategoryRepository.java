@@ -3,11 +3,13 @@ package com.countinghelper.repository;
 import com.countinghelper.entity.UserCategory;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
 
 @Repository
+@Transactional(readOnly = true)
 public interface UserCategoryRepository extends JpaRepository<UserCategory, Integer> {
     List<UserCategory> findByUserIdOrderByDisplayOrderAscIdAsc(Integer userId);
 
@@ -15,5 +17,6 @@ public interface UserCategoryRepository extends JpaRepository<UserCategory, Inte
 
     boolean existsByUserIdAndName(Integer userId, String name);
 
+    @Transactional
     void deleteByIdAndUserId(Integer id, Integer userId);
 }
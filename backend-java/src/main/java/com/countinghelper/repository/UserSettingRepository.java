@@ -3,10 +3,12 @@ package com.countinghelper.repository;
 import com.countinghelper.entity.UserSetting;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
 @Repository
+@Transactional(readOnly = true)
 public interface UserSettingRepository extends JpaRepository<UserSetting, Integer> {
     Optional<UserSetting> findByUserIdAndSettingKey(Integer userId, String settingKey);
 }
@@ -21,15 +21,24 @@ public class AdminService {
     
     @Autowired
     private TransactionRepository transactionRepository;
+
+    @Autowired
+    private UserStatsService userStatsService;
+
+    @Autowired
+    private List<TransactionChangeListener> changeListeners;
     
+    @Transactional(readOnly = true)
     public List<UserResponse> getAllUsers() {
         List<User> users = userRepository.findAll();
+        Map<Integer, Integer> counts = userStatsService.transactionCountsByUser();
         
         return users.stream().map(user -> {
             String role = (user.getRole() != null && !user.getRole().isEmpty() && !user.getRole().equals("null")) 
                 ? user.getRole() : "user";
             
-            long transactionCount = transactionRepository.findByUserIdOrderByCreatedAtDesc(user.getId()).size();
+            Integer counted = counts.get(user.getId());
+            long transactionCount = counted != null ? counted : userStatsService.get(user.getId()).getTransactionCount();
             
             UserResponse response = new UserResponse();
             response.setId(user.getId());
@@ -43,6 +52,7 @@ public class AdminService {
         }).collect(Collectors.toList());
     }
     
+    @Transactional(readOnly = true)
     public Map<String, Object> getStats() {
         List<User> users = userRepository.findAll();
         long totalTransactions = transactionRepository.count();
@@ -77,6 +87,9 @@ public class AdminService {
         List<com.countinghelper.entity.Transaction> transactions = 
             transactionRepository.findByUserIdOrderByCreatedAtDesc(userId);
         transactionRepository.deleteAll(transactions);
+        for (TransactionChangeListener listener : changeListeners) {
+            listener.onAllDeleted(userId);
+        }
         
         // 删除用户
         userRepository.delete(user);
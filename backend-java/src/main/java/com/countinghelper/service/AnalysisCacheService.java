@@ -0,0 +1,170 @@
+package com.countinghelper.service;
+
+import com.countinghelper.dto.response.AnalysisResponse;
+import com.countinghelper.entity.Transaction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分析结果缓存（analysis_cache 表，迁移 V12）：按 (用户, 时间段) 保存最近一次分析及其所用数据的哈希，
+ * 哈希一致时直接返回，不再构建提示词、不再调用模型；AI 分析与基础分析共用，哈希中区分两者。
+ * <p>
+ * 作为 {@link TransactionChangeListener} 在写入的同一事务内删除被影响的条目：交易时间不早于条目时间段起点的写入、
+ * 用户删除与分类改名。即使漏删，数据变化后哈希也不再一致，不会返回过期结果。
+ * 条目数超过 app.analysis.cache.max-entries 时淘汰最久未用的。
+ */
+@Service
+public class AnalysisCacheService implements TransactionChangeListener {
+
+    /** 命中时最多每隔这么久（秒）更新一次 last_used_at，避免每次命中都写库 */
+    private static final long TOUCH_INTERVAL_SECONDS = 60;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private GroupCommitWriter groupCommitWriter;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.analysis.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.analysis.cache.max-entries:2000}")
+    private int maxEntries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /** 哈希一致的缓存结果，没有返回 null；读在只读连接上，更新 last_used_at 在其后经写队列进行 */
+    public AnalysisResponse get(Integer userId, String period, String dataHash) {
+        if (!enabled) {
+            return null;
+        }
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        List<Object[]> found = tx.execute(status -> jdbcTemplate.query(
+            "SELECT analysis, model, last_used_at FROM analysis_cache WHERE user_id = ? AND period = ? AND data_hash = ?",
+            (rs, i) -> new Object[] { rs.getString(1), rs.getString(2), rs.getLong(3) },
+            userId, period, dataHash));
+        if (found.isEmpty()) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        long now = System.currentTimeMillis() / 1000;
+        if ((Long) found.get(0)[2] < now - TOUCH_INTERVAL_SECONDS) {
+            groupCommitWriter.execute(() -> jdbcTemplate.update(
+                "UPDATE analysis_cache SET last_used_at = ? WHERE user_id = ? AND period = ?", now, userId, period));
+        }
+        return new AnalysisResponse((String) found.get(0)[0], (String) found.get(0)[1], null);
+    }
+
+    /** 保存分析结果，取代该用户该时间段的旧条目；windowStart 为时间段起点的 epoch 秒，全部为 null */
+    public void put(Integer userId, String period, String dataHash, Long windowStart, AnalysisResponse result) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        int evicted = groupCommitWriter.execute(() -> {
+            jdbcTemplate.update(
+                "INSERT OR REPLACE INTO analysis_cache (user_id, period, data_hash, window_start, analysis, model," +
+                " created_at, last_used_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                userId, period, dataHash, windowStart, result.getAnalysis(), result.getModel(), now, now);
+            Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM analysis_cache", Integer.class);
+            int over = count != null ? count - Math.max(1, maxEntries) : 0;
+            if (over <= 0) {
+                return 0;
+            }
+            return jdbcTemplate.update(
+                "DELETE FROM analysis_cache WHERE rowid IN" +
+                " (SELECT rowid FROM analysis_cache ORDER BY last_used_at LIMIT ?)", over);
+        });
+        puts.increment();
+        evictions.add(evicted);
+    }
+
+    @Override
+    public void onCreated(Transaction created) {
+        invalidate(created.getUserId(), created.getCreatedAtEpoch());
+    }
+
+    @Override
+    public void onCreatedAll(List<Transaction> created) {
+        // 每个用户按最早的交易时间删一次，有无时间的交易时删除全部
+        Map<Integer, Long> earliest = new HashMap<>();
+        for (Transaction t : created) {
+            Long epoch = t.getCreatedAtEpoch();
+            if (!earliest.containsKey(t.getUserId())) {
+                earliest.put(t.getUserId(), epoch);
+            } else {
+                Long seen = earliest.get(t.getUserId());
+                earliest.put(t.getUserId(), seen == null || epoch == null ? null : Math.min(seen, epoch));
+            }
+        }
+        earliest.forEach(this::invalidate);
+    }
+
+    @Override
+    public void onUpdated(Transaction before, Transaction after) {
+        Long b = before.getCreatedAtEpoch();
+        Long a = after.getCreatedAtEpoch();
+        invalidate(after.getUserId(), b == null || a == null ? null : Math.min(b, a));
+    }
+
+    @Override
+    public void onDeleted(Transaction deleted) {
+        invalidate(deleted.getUserId(), deleted.getCreatedAtEpoch());
+    }
+
+    @Override
+    public void onAllDeleted(Integer userId) {
+        invalidate(userId, null);
+    }
+
+    /** 分类名称出现在提示词与结果中，改名后该用户的条目全部失效 */
+    @Override
+    public void onCategoryRenamed(Integer userId, int fromLabelId, int toLabelId) {
+        invalidate(userId, null);
+    }
+
+    /** 删除时间段包含 epoch 的条目；epoch 为 null（交易无时间）时删除该用户全部条目 */
+    private void invalidate(Integer userId, Long epoch) {
+        int n = epoch == null
+            ? jdbcTemplate.update("DELETE FROM analysis_cache WHERE user_id = ?", userId)
+            : jdbcTemplate.update(
+                "DELETE FROM analysis_cache WHERE user_id = ? AND (window_start IS NULL OR window_start <= ?)",
+                userId, epoch);
+        invalidations.add(n);
+    }
+
+    /** 运行指标：条目数与命中、未命中、写入、淘汰、失效次数 */
+    @Transactional(readOnly = true)
+    public Map<String, Object> snapshot() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", enabled);
+        m.put("entries", jdbcTemplate.queryForObject("SELECT COUNT(*) FROM analysis_cache", Integer.class));
+        m.put("maxEntries", maxEntries);
+        m.put("hits", hits.sum());
+        m.put("misses", misses.sum());
+        m.put("puts", puts.sum());
+        m.put("evictions", evictions.sum());
+        m.put("invalidations", invalidations.sum());
+        return m;
+    }
+}
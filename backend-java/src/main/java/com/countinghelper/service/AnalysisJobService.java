@@ -0,0 +1,307 @@
+package com.countinghelper.service;
+
+import com.countinghelper.dto.response.AnalysisResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AI 分析任务：POST /api/analysis 立即返回任务 id，分析在 app.analysis.workers 个工作线程上执行，
+ * 不占用请求线程；排队的任务最多 app.analysis.queue-capacity 个。
+ * 模型输出的片段经 SSE 随到随推给订阅者，晚到的订阅者先收到已生成的全部文本。
+ * <p>
+ * 每个用户同时未结束的任务不超过 app.analysis.max-per-user 个。任务的最后一个订阅者断开（推送失败、超时）
+ * 或调用取消接口时，任务被取消、生成中断。任务只保存在内存中，结束 app.analysis.retention-seconds 秒后清除。
+ */
+@Service
+public class AnalysisJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisJobService.class);
+
+    static final String QUEUED = "queued";
+    static final String RUNNING = "running";
+    static final String DONE = "done";
+    static final String FAILED = "failed";
+    static final String CANCELLED = "cancelled";
+
+    @Autowired
+    private AnalysisService analysisService;
+
+    @Value("${app.analysis.workers:4}")
+    private int workers;
+
+    @Value("${app.analysis.queue-capacity:32}")
+    private int queueCapacity;
+
+    @Value("${app.analysis.max-per-user:2}")
+    private int maxPerUser;
+
+    @Value("${app.analysis.retention-seconds:300}")
+    private int retentionSeconds;
+
+    private ThreadPoolExecutor executor;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    /** 一个分析任务；除 id 等不变字段外均由 synchronized (job) 保护 */
+    private static class Job {
+        final String id;
+        final int userId;
+        final String period;
+        String status = QUEUED;
+        final StringBuilder text = new StringBuilder();
+        AnalysisResponse result;
+        String message;
+        final List<SseEmitter> subscribers = new ArrayList<>();
+        boolean subscribed;
+        Future<?> future;
+        long finishedAt;
+
+        Job(String id, int userId, String period) {
+            this.id = id;
+            this.userId = userId;
+            this.period = period;
+        }
+
+        boolean finished() {
+            return finishedAt != 0;
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        AtomicInteger seq = new AtomicInteger();
+        int n = Math.max(1, workers);
+        executor = new ThreadPoolExecutor(n, n, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                Thread t = new Thread(r, "analysis-worker-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+    }
+
+    /** 关闭时中断运行中的分析；订阅者收到 cancelled */
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+        for (Job job : jobs.values()) {
+            finish(job, CANCELLED, null, "服务正在重启，请重新分析");
+        }
+    }
+
+    /** 创建分析任务并返回任务 id；该用户未结束的任务已达上限或队列已满时拒绝 */
+    public String submit(int userId, String period) {
+        purgeExpired();
+        Job job = new Job(UUID.randomUUID().toString(), userId, period);
+        synchronized (jobs) {
+            long active = jobs.values().stream().filter(j -> j.userId == userId && !isFinished(j)).count();
+            if (active >= Math.max(1, maxPerUser)) {
+                throw new RuntimeException("分析任务过多，请等待当前分析完成");
+            }
+            jobs.put(job.id, job);
+        }
+        synchronized (job) {
+            try {
+                job.future = executor.submit(() -> run(job));
+            } catch (RejectedExecutionException e) {
+                jobs.remove(job.id);
+                throw new RuntimeException("分析服务繁忙，请稍后重试");
+            }
+        }
+        return job.id;
+    }
+
+    /** 任务状态：status、已生成的文本（结束后为完整结果）、model、error、message。任务不属于该用户时视为不存在 */
+    public Map<String, Object> getStatus(int userId, String jobId) {
+        Job job = find(userId, jobId);
+        synchronized (job) {
+            return snapshot(job);
+        }
+    }
+
+    /**
+     * 订阅任务输出（SSE）：先推送已生成的文本，之后每个片段一个 token 事件（data 为 {"text": ...}），
+     * 结束时推送 end 事件（data 同 {@link #getStatus}，analysis 为完整结果，以它为准）并关闭连接。
+     */
+    public SseEmitter subscribe(int userId, String jobId) {
+        Job job = find(userId, jobId);
+        SseEmitter emitter = new SseEmitter();
+        emitter.onCompletion(() -> unsubscribe(job, emitter));
+        emitter.onTimeout(() -> unsubscribe(job, emitter));
+        emitter.onError(e -> unsubscribe(job, emitter));
+        synchronized (job) {
+            try {
+                if (job.text.length() > 0 && job.result == null) {
+                    emitter.send(token(job.text.toString()));
+                }
+                if (job.finished()) {
+                    emitter.send(end(job));
+                    emitter.complete();
+                    return emitter;
+                }
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+                return emitter;
+            }
+            job.subscribers.add(emitter);
+            job.subscribed = true;
+        }
+        return emitter;
+    }
+
+    /** 取消任务；已结束的任务不受影响 */
+    public void cancel(int userId, String jobId) {
+        Job job = find(userId, jobId);
+        if (finish(job, CANCELLED, null, "分析已取消")) {
+            log.debug("[Analysis] Job {} cancelled by user {}", job.id, userId);
+        }
+    }
+
+    private void run(Job job) {
+        synchronized (job) {
+            if (job.finished()) {
+                return;
+            }
+            job.status = RUNNING;
+        }
+        long start = System.nanoTime();
+        try {
+            AnalysisResponse result = analysisService.analyze(job.userId, job.period, token -> append(job, token));
+            finish(job, DONE, result, null);
+            log.debug("[Analysis] Job {} done for user {} in {} ms", job.id, job.userId,
+                (System.nanoTime() - start) / 1_000_000);
+        } catch (CancellationException e) {
+            finish(job, CANCELLED, null, "分析已取消");
+        } catch (Exception e) {
+            log.warn("[Analysis] Job {} failed: {}", job.id, e.getMessage());
+            finish(job, FAILED, null,
+                "分析失败：" + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()));
+        }
+    }
+
+    /** 记录并推送一个片段；任务已结束（被取消）时抛出 CancellationException 以停止生成 */
+    private void append(Job job, String token) {
+        synchronized (job) {
+            if (job.finished()) {
+                throw new CancellationException();
+            }
+            job.text.append(token);
+            for (SseEmitter emitter : new ArrayList<>(job.subscribers)) {
+                try {
+                    emitter.send(token(token));
+                } catch (IOException | IllegalStateException e) {
+                    // 客户端已断开；completeWithError 会回调 unsubscribe
+                    job.subscribers.remove(emitter);
+                    emitter.completeWithError(e);
+                }
+            }
+            if (job.subscribed && job.subscribers.isEmpty()) {
+                throw new CancellationException();
+            }
+        }
+    }
+
+    /** 结束任务并通知订阅者；任务已结束时返回 false */
+    private boolean finish(Job job, String status, AnalysisResponse result, String message) {
+        List<SseEmitter> subscribers;
+        synchronized (job) {
+            if (job.finished()) {
+                return false;
+            }
+            job.status = status;
+            job.result = result;
+            job.message = message;
+            job.finishedAt = System.currentTimeMillis();
+            if (job.future != null && !DONE.equals(status)) {
+                job.future.cancel(true);
+            }
+            subscribers = new ArrayList<>(job.subscribers);
+            job.subscribers.clear();
+            for (SseEmitter emitter : subscribers) {
+                try {
+                    emitter.send(end(job));
+                    emitter.complete();
+                } catch (IOException | IllegalStateException e) {
+                    emitter.completeWithError(e);
+                }
+            }
+        }
+        return true;
+    }
+
+    /** 最后一个订阅者断开时取消未结束的任务 */
+    private void unsubscribe(Job job, SseEmitter emitter) {
+        boolean abandoned;
+        synchronized (job) {
+            abandoned = job.subscribers.remove(emitter) && job.subscribers.isEmpty() && !job.finished();
+        }
+        if (abandoned) {
+            log.debug("[Analysis] Job {} cancelled: client disconnected", job.id);
+            finish(job, CANCELLED, null, "客户端已断开，分析已取消");
+        }
+    }
+
+    private Job find(int userId, String jobId) {
+        Job job = jobId != null ? jobs.get(jobId) : null;
+        if (job == null || job.userId != userId) {
+            throw new RuntimeException("分析任务不存在");
+        }
+        return job;
+    }
+
+    private void purgeExpired() {
+        long cutoff = System.currentTimeMillis() - retentionSeconds * 1000L;
+        jobs.values().removeIf(j -> {
+            synchronized (j) {
+                return j.finished() && j.finishedAt < cutoff;
+            }
+        });
+    }
+
+    private static boolean isFinished(Job job) {
+        synchronized (job) {
+            return job.finished();
+        }
+    }
+
+    private static SseEmitter.SseEventBuilder token(String text) {
+        return SseEmitter.event().name("token").data(Map.of("text", text), MediaType.APPLICATION_JSON);
+    }
+
+    private static SseEmitter.SseEventBuilder end(Job job) {
+        return SseEmitter.event().name("end").data(snapshot(job), MediaType.APPLICATION_JSON);
+    }
+
+    private static Map<String, Object> snapshot(Job job) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("jobId", job.id);
+        m.put("status", job.status);
+        m.put("period", job.period);
+        m.put("analysis", job.result != null ? job.result.getAnalysis() : job.text.toString());
+        m.put("model", job.result != null ? job.result.getModel() : null);
+        m.put("error", job.result != null ? job.result.getError() : null);
+        m.put("message", job.message);
+        return m;
+    }
+}
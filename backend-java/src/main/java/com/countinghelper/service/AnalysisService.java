@@ -1,271 +1,267 @@
 package com.countinghelper.service;
 
 import com.countinghelper.dto.response.AnalysisResponse;
+import com.countinghelper.entity.Money;
 import com.countinghelper.entity.Transaction;
 import com.countinghelper.repository.TransactionRepository;
-import com.theokanning.openai.completion.chat.ChatCompletionRequest;
-import com.theokanning.openai.completion.chat.ChatMessage;
-import com.theokanning.openai.completion.chat.ChatMessageRole;
-import com.theokanning.openai.service.OpenAiService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
 
 @Service
 public class AnalysisService {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisService.class);
     
     @Autowired
     private TransactionRepository transactionRepository;
+
+    @Autowired
+    private DailyRollupService dailyRollupService;
+
+    @Autowired
+    private TransactionColumnCache columnCache;
+
+    @Autowired
+    private TransactionAggregationService aggregationService;
+
+    @Autowired
+    private AnalysisCacheService analysisCache;
     
-    @Value("${openai.api-key:}")
-    private String openaiApiKey;
+    @Autowired
+    private LlmClient llmClient;
     
-    public AnalysisResponse analyze(Integer userId, String period) {
-        List<Transaction> transactions = getTransactionsByPeriod(userId, period);
-        
-        if (openaiApiKey == null || openaiApiKey.isEmpty()) {
-            return new AnalysisResponse(generateBasicAnalysis(transactions), null, null);
+    /** 某个分析时间段的数据：全部汇总行（含不足一天的零头）与最近 50 条明细；windowStart 为起点的 epoch 秒，全部为 null */
+    private static class PeriodData {
+        final List<DailyRollupService.Row> rows;
+        final List<Transaction> recent;
+        final Long windowStart;
+
+        PeriodData(List<DailyRollupService.Row> rows, List<Transaction> recent, Long windowStart) {
+            this.rows = rows;
+            this.recent = recent;
+            this.windowStart = windowStart;
         }
-        
+
+        /** 分析所用数据（汇总行与明细）连同分析方式的 SHA-256，作为缓存的版本 */
+        String hash(String mode) {
+            StringBuilder sb = new StringBuilder(mode).append('\n');
+            for (DailyRollupService.Row r : rows) {
+                sb.append(r.day).append('|').append(r.typeId).append('|').append(r.categoryId).append('|')
+                    .append(r.paymentMethodId).append('|').append(r.currencyId).append('|').append(r.amount).append('|')
+                    .append(r.amountInGbp).append('|').append(r.count).append('\n');
+            }
+            sb.append('\n');
+            for (Transaction t : recent) {
+                sb.append(t.getId()).append('|').append(t.getCreatedAtEpoch()).append('|').append(t.getTypeId())
+                    .append('|').append(t.getCategoryId()).append('|').append(t.getPaymentMethodId()).append('|')
+                    .append(t.getCurrencyId()).append('|').append(t.getAmountMinor()).append('|')
+                    .append(t.getDescription()).append('\u001f');
+            }
+            try {
+                return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        int transactionCount() {
+            int n = 0;
+            for (DailyRollupService.Row r : rows) {
+                n += r.count;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * 生成分析。所用数据与上次相同时直接返回缓存的结果（见 {@link AnalysisCacheService}），整段交给 onToken 一次。
+     * 否则模型输出的片段随到随交给 onToken；回退到基础分析时整段交给 onToken 一次。
+     * 返回值中的 analysis 为完整文本，以它为准（流式输出中途失败时，回退的基础分析不再经 onToken 推送，直接取代已推送的片段）。
+     * onToken 抛出 {@link CancellationException} 或线程被中断时停止生成并抛出 CancellationException。
+     */
+    public AnalysisResponse analyze(Integer userId, String period, Consumer<String> onToken) {
+        PeriodData data = loadPeriod(userId, period);
+        boolean ai = llmClient.isConfigured();
+        String dataHash = data.hash(ai ? llmClient.model() : "basic");
+
+        AnalysisResponse cached = analysisCache.get(userId, period, dataHash);
+        if (cached != null) {
+            onToken.accept(cached.getAnalysis());
+            return cached;
+        }
+
+        AnalysisResponse result = ai ? generate(userId, data, onToken) : basic(userId, data, null, onToken);
+        // AI 不可用时的回退结果不缓存，下次仍尝试 AI 分析
+        if (result.getError() == null) {
+            analysisCache.put(userId, period, dataHash, data.windowStart, result);
+        }
+        return result;
+    }
+
+    private AnalysisResponse generate(Integer userId, PeriodData data, Consumer<String> onToken) {
+        boolean[] streamed = { false };
         try {
-            OpenAiService service = new OpenAiService(openaiApiKey);
-            
-            String prompt = buildPrompt(transactions);
-            
-            ChatCompletionRequest chatRequest = ChatCompletionRequest.builder()
-                .model("gpt-3.5-turbo")
-                .messages(List.of(
-                    new ChatMessage(ChatMessageRole.SYSTEM.value(), 
-                        "你是一位专业、友好、细致的财务顾问，擅长从交易数据中提取关键信息，提供个性化、具体的财务建议。"),
-                    new ChatMessage(ChatMessageRole.USER.value(), prompt)
-                ))
-                .maxTokens(2000)
-                .temperature(0.7)
-                .build();
-            
-            String analysis = service.createChatCompletion(chatRequest)
-                .getChoices()
-                .get(0)
-                .getMessage()
-                .getContent();
-            
-            return new AnalysisResponse(analysis, "gpt-3.5-turbo", null);
-            
+            String analysis = llmClient.complete(
+                "你是一位专业、友好、细致的财务顾问，擅长从交易数据中提取关键信息，提供个性化、具体的财务建议。",
+                buildPrompt(userId, data),
+                token -> {
+                    streamed[0] = true;
+                    onToken.accept(token);
+                });
+            return new AnalysisResponse(analysis, llmClient.model(), null);
         } catch (Exception e) {
-            return new AnalysisResponse(
-                generateBasicAnalysis(transactions), 
-                null, 
-                "AI分析暂时不可用，已提供基础分析。"
-            );
+            if (e instanceof CancellationException || e.getCause() instanceof InterruptedException
+                    || Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("分析已取消");
+            }
+            // 超时、熔断或限流：改用基础分析；已推送过片段时不再追加，由返回值整体取代
+            log.debug("[Analysis] LLM unavailable for user {}: {}", userId, e.getMessage());
+            return basic(userId, data, "AI分析暂时不可用，已提供基础分析。",
+                streamed[0] ? token -> { } : onToken);
         }
     }
+
+    private AnalysisResponse basic(Integer userId, PeriodData data, String error, Consumer<String> onToken) {
+        String analysis = generateBasicAnalysis(userId, data);
+        onToken.accept(analysis);
+        return new AnalysisResponse(analysis, null, error);
+    }
     
-    private List<Transaction> getTransactionsByPeriod(Integer userId, String period) {
+    /** 时间段起点；all 返回 null 表示不限 */
+    private static LocalDateTime periodStart(String period) {
         LocalDateTime now = LocalDateTime.now();
-        LocalDateTime start = null;
-        
         switch (period) {
             case "day":
-                start = now.withHour(0).withMinute(0).withSecond(0);
-                break;
+                return now.withHour(0).withMinute(0).withSecond(0).withNano(0);
             case "3days":
-                start = now.minusDays(3);
-                break;
+                return now.minusDays(3);
             case "week":
-                start = now.minusDays(7);
-                break;
+                return now.minusDays(7);
             case "month":
-                start = now.minusDays(30);
-                break;
+                return now.minusDays(30);
             default:
-                return transactionRepository.findByUserIdOrderByCreatedAtDesc(userId);
+                return null;
         }
-        
-        if (start != null) {
-            return transactionRepository.findByUserIdAndCreatedAtAfter(userId, start);
+    }
+
+    /**
+     * 汇总行优先在列式缓存上按时间段分组；缓存不可用时整天部分读日汇总表，起点不在零点时，
+     * 起点当天的零头按索引从交易表分组补齐。两条路径的结果与行顺序相同，数据哈希不随来源变化。
+     */
+    private PeriodData loadPeriod(Integer userId, String period) {
+        LocalDateTime start = periodStart(period);
+        if (start == null) {
+            List<DailyRollupService.Row> rows = columnCache.rollup(userId, null, null);
+            return new PeriodData(
+                rows != null ? rows : dailyRollupService.findRows(userId, null, null),
+                transactionRepository.findTop50ByUserIdOrderByCreatedAtEpochDescIdDesc(userId), null);
         }
-        
-        return transactionRepository.findByUserIdOrderByCreatedAtDesc(userId);
+        List<DailyRollupService.Row> rows = columnCache.rollup(userId, start, null);
+        if (rows == null) {
+            rows = loadRollupRows(userId, start);
+        }
+        Long windowStart = Transaction.epochOf(start);
+        return new PeriodData(rows,
+            transactionRepository.findTop50ByUserIdAndCreatedAtEpochGreaterThanEqualOrderByCreatedAtEpochDescIdDesc(
+                userId, windowStart), windowStart);
+    }
+
+    private List<DailyRollupService.Row> loadRollupRows(Integer userId, LocalDateTime start) {
+        LocalDate startDay = start.toLocalDate();
+        if (start.toLocalTime().equals(LocalTime.MIDNIGHT)) {
+            return dailyRollupService.findRows(userId, startDay.format(DateTimeFormatter.ISO_LOCAL_DATE), null);
+        }
+        List<DailyRollupService.Row> rows = new ArrayList<>(dailyRollupService.findRowsBetween(
+            userId, Transaction.epochOf(start), Transaction.epochOf(startDay.atTime(23, 59, 59))));
+        rows.addAll(dailyRollupService.findRows(userId, startDay.plusDays(1).format(DateTimeFormatter.ISO_LOCAL_DATE), null));
+        return rows;
     }
     
-    private String buildPrompt(List<Transaction> transactions) {
-        Map<String, Double> stats = calculateStats(transactions);
-        Map<String, Object> dailyStats = calculateDailyStats(transactions);
-        Map<String, Object> paymentMethodStats = calculatePaymentMethodStats(transactions);
-        Map<String, Object> categoryStats = calculateCategoryStats(transactions);
+    private String buildPrompt(Integer userId, PeriodData data) {
+        TransactionAggregationService.Breakdown stats = aggregate(userId, data);
         
         StringBuilder prompt = new StringBuilder();
         prompt.append("你是一位专业的财务顾问，请基于以下用户的交易数据，提供详细、个性化、具体的财务分析和建议。\n\n");
-        prompt.append("用户交易数据（").append(transactions.size()).append("笔交易）：\n");
+        prompt.append("用户交易数据（").append(data.transactionCount()).append("笔交易）：\n");
         
-        int limit = Math.min(transactions.size(), 50);
-        for (int i = 0; i < limit; i++) {
-            Transaction t = transactions.get(i);
-            prompt.append(String.format("- %s: %.2f %s (%s, %s, %s)\n", 
+        for (Transaction t : data.recent) {
+            prompt.append(String.format("- %s: %s %s (%s, %s, %s)\n", 
                 t.getDescription() != null ? t.getDescription() : "无描述",
-                t.getAmount(), t.getCurrency(), t.getTransactionType(), 
+                Money.format(t.getAmountMinor(), t.getCurrency()), t.getCurrency(), t.getTransactionType(), 
                 t.getPaymentMethod(), t.getCategory() != null ? t.getCategory() : "未分类"));
         }
         
         prompt.append("\n【汇总统计】\n");
-        prompt.append("- 总收入：").append(String.format("%.2f", stats.get("income"))).append(" GBP\n");
-        prompt.append("- 总支出：").append(String.format("%.2f", stats.get("expense"))).append(" GBP\n");
-        prompt.append("- 余额：").append(String.format("%.2f", stats.get("balance"))).append(" GBP\n");
-        prompt.append("- 平均每日支出：").append(String.format("%.2f", stats.get("avgDailyExpense"))).append(" GBP\n");
+        prompt.append("- 总收入：").append(gbp(stats.total.income)).append(" GBP\n");
+        prompt.append("- 总支出：").append(gbp(stats.total.expense)).append(" GBP\n");
+        prompt.append("- 余额：").append(gbp(stats.total.balance())).append(" GBP\n");
+        prompt.append("- 平均每日支出：").append(gbp(stats.avgDailyExpense())).append(" GBP\n");
 
-        if (!dailyStats.isEmpty()) {
+        if (!stats.byDay.isEmpty()) {
             prompt.append("\n【按日统计】\n");
-            dailyStats.entrySet().stream()
-                .sorted(Map.Entry.comparingByKey())
-                .forEach(e -> {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Double> day = (Map<String, Double>) e.getValue();
-                    double in = day.getOrDefault("income", 0.0);
-                    double out = day.getOrDefault("expense", 0.0);
-                    prompt.append("- ").append(e.getKey()).append(": 收入 ").append(String.format("%.2f", in))
-                        .append(" GBP, 支出 ").append(String.format("%.2f", out)).append(" GBP\n");
-                });
+            stats.byDay.forEach((day, t) -> appendLine(prompt, day, t));
         }
 
-        if (!paymentMethodStats.isEmpty()) {
+        if (!stats.byPaymentMethod.isEmpty()) {
             prompt.append("\n【按支付方式】\n");
-            paymentMethodStats.forEach((method, data) -> {
-                @SuppressWarnings("unchecked")
-                Map<String, Double> m = (Map<String, Double>) data;
-                double in = m.getOrDefault("income", 0.0);
-                double out = m.getOrDefault("expense", 0.0);
-                prompt.append("- ").append(method).append(": 收入 ").append(String.format("%.2f", in))
-                    .append(" GBP, 支出 ").append(String.format("%.2f", out)).append(" GBP\n");
-            });
+            stats.byPaymentMethod.forEach((method, t) -> appendLine(prompt, method, t));
         }
 
-        if (!categoryStats.isEmpty()) {
+        if (!stats.byCategory.isEmpty()) {
             prompt.append("\n【按分类】\n");
-            categoryStats.entrySet().stream()
-                .sorted((a, b) -> {
-                    @SuppressWarnings("unchecked")
-                    double expA = ((Map<String, Double>) a.getValue()).getOrDefault("expense", 0.0);
-                    @SuppressWarnings("unchecked")
-                    double expB = ((Map<String, Double>) b.getValue()).getOrDefault("expense", 0.0);
-                    return Double.compare(expB, expA);
-                })
-                .forEach(e -> {
-                    String cat = "未分类".equals(e.getKey()) ? "(未分类)" : e.getKey();
-                    @SuppressWarnings("unchecked")
-                    Map<String, Double> m = (Map<String, Double>) e.getValue();
-                    double in = m.getOrDefault("income", 0.0);
-                    double out = m.getOrDefault("expense", 0.0);
-                    prompt.append("- ").append(cat).append(": 收入 ").append(String.format("%.2f", in))
-                        .append(" GBP, 支出 ").append(String.format("%.2f", out)).append(" GBP\n");
-                });
+            stats.byCategory.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().expense, a.getValue().expense))
+                .forEach(e -> appendLine(prompt, "未分类".equals(e.getKey()) ? "(未分类)" : e.getKey(), e.getValue()));
         }
 
         prompt.append("\n请结合以上按日、按支付方式、按分类的统计，提供详细的分析和可操作的建议，用中文回复。");
         
         return prompt.toString();
     }
-    
-    private Map<String, Double> calculateStats(List<Transaction> transactions) {
-        double income = 0.0;
-        double expense = 0.0;
-        
-        for (Transaction t : transactions) {
-            if ("收入".equals(t.getTransactionType())) {
-                income += t.getAmountInGbp();
-            } else {
-                expense += t.getAmountInGbp();
-            }
-        }
-        
-        long days = transactions.stream()
-            .map(t -> t.getCreatedAt().toLocalDate())
-            .distinct()
-            .count();
-        
-        double avgDailyExpense = days > 0 ? expense / days : 0;
-        
-        Map<String, Double> stats = new HashMap<>();
-        stats.put("income", income);
-        stats.put("expense", expense);
-        stats.put("balance", income - expense);
-        stats.put("avgDailyExpense", avgDailyExpense);
-        
-        return stats;
-    }
-    
-    /** 按日期汇总收入/支出，key 为 yyyy-MM-dd */
-    private Map<String, Object> calculateDailyStats(List<Transaction> transactions) {
-        Map<String, Map<String, Double>> dailyMap = new LinkedHashMap<>();
-        DateTimeFormatter fmt = DateTimeFormatter.ISO_LOCAL_DATE;
-        for (Transaction t : transactions) {
-            if (t.getCreatedAt() == null) continue;
-            String date = t.getCreatedAt().toLocalDate().format(fmt);
-            dailyMap.putIfAbsent(date, new HashMap<>(Map.of("income", 0.0, "expense", 0.0)));
-            Map<String, Double> day = dailyMap.get(date);
-            double gbp = t.getAmountInGbp() != null ? t.getAmountInGbp() : 0;
-            if ("收入".equals(t.getTransactionType())) {
-                day.put("income", day.get("income") + gbp);
-            } else {
-                day.put("expense", day.get("expense") + gbp);
-            }
-        }
-        return new HashMap<>(dailyMap);
-    }
 
-    /** 按支付方式汇总收入/支出 */
-    private Map<String, Object> calculatePaymentMethodStats(List<Transaction> transactions) {
-        Map<String, Map<String, Double>> byMethod = new LinkedHashMap<>();
-        for (Transaction t : transactions) {
-            String method = t.getPaymentMethod() != null && !t.getPaymentMethod().isEmpty()
-                ? t.getPaymentMethod() : "未填写";
-            byMethod.putIfAbsent(method, new HashMap<>(Map.of("income", 0.0, "expense", 0.0)));
-            Map<String, Double> m = byMethod.get(method);
-            double gbp = t.getAmountInGbp() != null ? t.getAmountInGbp() : 0;
-            if ("收入".equals(t.getTransactionType())) {
-                m.put("income", m.get("income") + gbp);
-            } else {
-                m.put("expense", m.get("expense") + gbp);
-            }
-        }
-        return new HashMap<>(byMethod);
+    /** 总计与各分组在一次遍历中得出（见 {@link TransactionAggregationService}） */
+    private TransactionAggregationService.Breakdown aggregate(Integer userId, PeriodData data) {
+        return aggregationService.aggregate(userId, data.rows, "未填写", "未分类");
     }
 
-    /** 按分类汇总收入/支出 */
-    private Map<String, Object> calculateCategoryStats(List<Transaction> transactions) {
-        Map<String, Map<String, Double>> byCategory = new LinkedHashMap<>();
-        for (Transaction t : transactions) {
-            String cat = t.getCategory() != null && !t.getCategory().isEmpty()
-                ? t.getCategory() : "未分类";
-            byCategory.putIfAbsent(cat, new HashMap<>(Map.of("income", 0.0, "expense", 0.0)));
-            Map<String, Double> m = byCategory.get(cat);
-            double gbp = t.getAmountInGbp() != null ? t.getAmountInGbp() : 0;
-            if ("收入".equals(t.getTransactionType())) {
-                m.put("income", m.get("income") + gbp);
-            } else {
-                m.put("expense", m.get("expense") + gbp);
-            }
-        }
-        return new HashMap<>(byCategory);
+    private static void appendLine(StringBuilder prompt, String key, TransactionAggregationService.Totals t) {
+        prompt.append("- ").append(key).append(": 收入 ").append(gbp(t.income))
+            .append(" GBP, 支出 ").append(gbp(t.expense)).append(" GBP\n");
     }
     
-    private String generateBasicAnalysis(List<Transaction> transactions) {
-        Map<String, Double> stats = calculateStats(transactions);
+    private String generateBasicAnalysis(Integer userId, PeriodData data) {
+        TransactionAggregationService.Breakdown stats = aggregate(userId, data);
         
         return String.format(
             "📊 基础财务分析\n\n" +
-            "💰 收入：%.2f GBP\n" +
-            "💸 支出：%.2f GBP\n" +
-            "💵 余额：%.2f GBP\n\n" +
-            "📈 平均每日支出：%.2f GBP\n\n" +
+            "💰 收入：%s GBP\n" +
+            "💸 支出：%s GBP\n" +
+            "💵 余额：%s GBP\n\n" +
+            "📈 平均每日支出：%s GBP\n\n" +
             "💡 提示：配置OpenAI API Key可以获得更详细、个性化的AI分析建议。",
-            stats.get("income"),
-            stats.get("expense"),
-            stats.get("balance"),
-            stats.get("avgDailyExpense")
+            gbp(stats.total.income),
+            gbp(stats.total.expense),
+            gbp(stats.total.balance()),
+            gbp(stats.avgDailyExpense())
         );
     }
+
+    /** 便士格式化为两位小数 */
+    private static String gbp(long minor) {
+        return Money.format(minor, Money.GBP_SCALE);
+    }
 }
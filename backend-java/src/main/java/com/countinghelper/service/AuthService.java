@@ -5,7 +5,6 @@ import com.countinghelper.dto.request.RegisterRequest;
 import com.countinghelper.dto.response.AuthResponse;
 import com.countinghelper.dto.response.UserResponse;
 import com.countinghelper.entity.User;
-import com.countinghelper.repository.TransactionRepository;
 import com.countinghelper.repository.UserRepository;
 import com.countinghelper.security.JwtTokenProvider;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,7 +22,7 @@ public class AuthService {
     private UserRepository userRepository;
 
     @Autowired
-    private TransactionRepository transactionRepository;
+    private UserStatsService userStatsService;
 
     @Autowired
     private PasswordEncoder passwordEncoder;
@@ -88,6 +87,7 @@ public class AuthService {
         return new AuthResponse("登录成功", token, userResponse);
     }
     
+    @Transactional(readOnly = true)
     public UserResponse getCurrentUser(Integer userId) {
         User user = userRepository.findById(userId)
             .orElseThrow(() -> new RuntimeException("用户不存在"));
@@ -95,7 +95,7 @@ public class AuthService {
         String role = (user.getRole() != null && !user.getRole().isEmpty() && !user.getRole().equals("null")) 
             ? user.getRole() : "user";
         
-        long transactionCount = transactionRepository.findByUserIdOrderByCreatedAtDesc(userId).size();
+        long transactionCount = userStatsService.get(userId).getTransactionCount();
         
         UserResponse userResponse = new UserResponse();
         userResponse.setId(user.getId());
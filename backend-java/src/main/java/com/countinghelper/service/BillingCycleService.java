@@ -1,10 +1,11 @@
 package com.countinghelper.service;
 
 import com.countinghelper.entity.BillingCycleBudget;
-import com.countinghelper.entity.Transaction;
+import com.countinghelper.entity.Money;
 import com.countinghelper.repository.BillingCycleBudgetRepository;
-import com.countinghelper.repository.TransactionRepository;
 import com.countinghelper.repository.UserSettingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -14,12 +15,16 @@ import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
 public class BillingCycleService {
 
+    private static final Logger log = LoggerFactory.getLogger(BillingCycleService.class);
+
     private static final String KEY_REPAYMENT_DAY = "repayment_day";
     private static final String KEY_TIMEZONE = "timezone";
     private static final DateTimeFormatter FMT = DateTimeFormatter.ISO_LOCAL_DATE;
@@ -29,9 +34,13 @@ public class BillingCycleService {
     @Autowired
     private BillingCycleBudgetRepository budgetRepository;
     @Autowired
-    private TransactionRepository transactionRepository;
+    private DailyRollupService dailyRollupService;
+    @Autowired
+    private TransactionColumnCache columnCache;
     @Autowired
     private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private DataVersionService dataVersionService;
 
     /** Get repayment day (1-31). Default 15 if not set. */
     public int getRepaymentDay(Integer userId) {
@@ -68,6 +77,7 @@ public class BillingCycleService {
                 "INSERT INTO user_settings (user_id, setting_key, setting_value) VALUES (?, ?, ?)",
                 userId, KEY_TIMEZONE, normalized);
         }
+        dataVersionService.bump(userId);
     }
 
     /** 确保 user_settings / billing_cycle_budget 表存在（首次设置还款日时自动建表） */
@@ -115,6 +125,7 @@ public class BillingCycleService {
                 throw new RuntimeException("保存还款日失败: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
             }
         }
+        dataVersionService.bump(userId);
     }
 
     private void doSetRepaymentDay(Integer userId, String value) {
@@ -140,7 +151,10 @@ public class BillingCycleService {
 
     /** List cycle ranges that overlap [fromInclusive, toInclusive]. */
     public List<CycleRange> listCycles(Integer userId, String fromInclusive, String toInclusive) {
-        int repaymentDay = getRepaymentDay(userId);
+        return computeCycles(getRepaymentDay(userId), fromInclusive, toInclusive);
+    }
+
+    private static List<CycleRange> computeCycles(int repaymentDay, String fromInclusive, String toInclusive) {
         LocalDate from = LocalDate.parse(fromInclusive, FMT);
         LocalDate to = LocalDate.parse(toInclusive, FMT);
         List<CycleRange> list = new ArrayList<>();
@@ -175,40 +189,66 @@ public class BillingCycleService {
         public Double expectedExpense;
     }
 
+    /**
+     * 与周期个数无关，至多 3 次查询：还款日设置、整个区间按日分组的收支合计、区间内全部周期预算；
+     * 按日合计优先在列式缓存上计算，缓存不可用时才读日汇总表。
+     * 周期按起始日期升序且互不重叠，按日合计也按日期升序，一次顺序归并即可把每天分到所属周期；
+     * 落在周期之外的日期（还款日为 29~31 时月末可能出现的空档）与逐周期查询时一样不计入。
+     */
+    @Transactional(readOnly = true)
     public List<CycleDto> listCyclesWithStats(Integer userId, String fromInclusive, String toInclusive) {
-        List<CycleRange> ranges = listCycles(userId, fromInclusive, toInclusive);
-        List<CycleDto> result = new ArrayList<>();
+        long start = System.nanoTime();
+        List<CycleRange> ranges = computeCycles(getRepaymentDay(userId), fromInclusive, toInclusive);
+        int queries = 1;
+        List<CycleDto> result = new ArrayList<>(ranges.size());
+        if (ranges.isEmpty()) {
+            return result;
+        }
+        String first = ranges.get(0).startDate;
+        String last = ranges.get(ranges.size() - 1).endDate;
+
+        List<DailyRollupService.DayTotals> days = columnCache.dailyTotals(userId, first, last);
+        if (days == null) {
+            days = dailyRollupService.dailyTotals(userId, first, last);
+            queries++;
+        }
+        Map<String, BillingCycleBudget> budgets = new HashMap<>();
+        for (BillingCycleBudget b : budgetRepository.findByUserIdAndCycleStartBetween(
+                userId, first, ranges.get(ranges.size() - 1).startDate)) {
+            budgets.put(b.getCycleStart(), b);
+        }
+        queries++;
+
+        int d = 0;
         for (CycleRange r : ranges) {
             CycleDto dto = new CycleDto();
             dto.startDate = r.startDate;
             dto.endDate = r.endDate;
-            List<Transaction> tx = transactionRepository.findByUserIdAndCreatedAtBetween(
-                userId,
-                java.time.LocalDateTime.parse(r.startDate + "T00:00:00"),
-                java.time.LocalDateTime.parse(r.endDate + "T23:59:59")
-            );
-            double income = 0, expense = 0;
-            int inc = 0, exp = 0;
-            for (Transaction t : tx) {
-                if ("收入".equals(t.getTransactionType())) {
-                    income += t.getAmountInGbp();
-                    inc++;
-                } else {
-                    expense += t.getAmountInGbp();
-                    exp++;
-                }
+            long income = 0;
+            long expense = 0;
+            while (d < days.size() && days.get(d).day.compareTo(r.startDate) < 0) {
+                d++;
+            }
+            while (d < days.size() && days.get(d).day.compareTo(r.endDate) <= 0) {
+                DailyRollupService.DayTotals day = days.get(d++);
+                income += day.income;
+                expense += day.expense;
+                dto.incomeCount += day.incomeCount;
+                dto.expenseCount += day.expenseCount;
             }
-            dto.income = income;
-            dto.expense = expense;
-            dto.balance = income - expense;
-            dto.incomeCount = inc;
-            dto.expenseCount = exp;
-            budgetRepository.findByUserIdAndCycleStart(userId, r.startDate).ifPresent(b -> {
+            // 按便士累加，只在输出时换算一次
+            dto.income = Money.toDouble(income, Money.GBP_SCALE);
+            dto.expense = Money.toDouble(expense, Money.GBP_SCALE);
+            dto.balance = Money.toDouble(income - expense, Money.GBP_SCALE);
+            BillingCycleBudget b = budgets.get(r.startDate);
+            if (b != null) {
                 dto.expectedIncome = b.getExpectedIncome();
                 dto.expectedExpense = b.getExpectedExpense();
-            });
+            }
             result.add(dto);
         }
+        log.debug("[Cycles] user={} cycles={} days={} queries={} in {} ms", userId, ranges.size(), days.size(),
+            queries, (System.nanoTime() - start) / 1_000_000);
         return result;
     }
 
@@ -232,5 +272,6 @@ public class BillingCycleService {
                 "INSERT INTO billing_cycle_budget (user_id, cycle_start, expected_income, expected_expense) VALUES (?, ?, ?, ?)",
                 userId, cycleStart, expectedIncome, expectedExpense);
         }
+        dataVersionService.bump(userId);
     }
 }
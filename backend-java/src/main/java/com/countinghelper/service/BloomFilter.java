@@ -0,0 +1,43 @@
+package com.countinghelper.service;
+
+/**
+ * 针对 64 位指纹的布隆过滤器：按预期元素数与误判率确定位数与哈希次数，
+ * 用双重哈希（h1 + i * h2）从一个指纹派生 k 个位置。只有「可能存在」时才需要回表确认。
+ */
+public class BloomFilter {
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashes;
+
+    public BloomFilter(long expected, double falsePositiveRate) {
+        long n = Math.max(1, expected);
+        double ln2 = Math.log(2);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (ln2 * ln2));
+        m = Math.max(64, m);
+        this.bits = new long[(int) ((m + 63) / 64)];
+        this.bitCount = (long) bits.length * 64;
+        this.hashes = Math.max(1, (int) Math.round((double) bitCount / n * ln2));
+    }
+
+    public void add(long fingerprint) {
+        long h1 = fingerprint;
+        long h2 = TransactionFingerprint.finish(fingerprint) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(long fingerprint) {
+        long h1 = fingerprint;
+        long h2 = TransactionFingerprint.finish(fingerprint) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
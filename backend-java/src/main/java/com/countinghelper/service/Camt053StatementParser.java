@@ -0,0 +1,245 @@
+package com.countinghelper.service;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * ISO 20022 CAMT.053 银行对账单：用 StAX 逐个事件读取，每个 Ntry（记账条目）产生一条记录，
+ * 不在内存中构建文档。金额取条目的 Amt 与 CdtDbtInd（DBIT 为支出），日期取 BookgDt（缺省时 ValDt），
+ * 描述为交易对手名称加附言（Ustrd，缺省时 AddtlNtryInf）。状态为 PDNG / INFO 的条目尚未记账，跳过。
+ * 续传位置为已读记录数。
+ */
+@Service
+@Order(2)
+public class Camt053StatementParser implements StatementParser {
+
+    @Override
+    public String format() {
+        return "camt053";
+    }
+
+    @Override
+    public boolean matches(byte[] head, int length) {
+        // 根元素为 camt.053 命名空间的 Document（或直接为 BkToCstmrStmt）；正文中出现的字样不算
+        String tag = StatementParser.rootTag(head, length);
+        if (tag == null) {
+            return false;
+        }
+        String name = StatementParser.elementName(tag);
+        return name.equalsIgnoreCase("BkToCstmrStmt")
+            || name.equalsIgnoreCase("Document") && tag.toLowerCase(Locale.ROOT).contains("camt.053");
+    }
+
+    @Override
+    public RecordReader open(Path file, long offset, int nextLine) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file), 64 * 1024);
+        CamtReader reader;
+        try {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            reader = new CamtReader(in, factory.createXMLStreamReader(in));
+        } catch (XMLStreamException | RuntimeException e) {
+            in.close();
+            throw new IOException("无法读取 CAMT.053 文件：" + e.getMessage(), e);
+        }
+        try {
+            while (reader.offset() < offset && reader.next()) {
+                // 跳过已导入的记录
+            }
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    private static class CamtReader implements RecordReader {
+        private final InputStream in;
+        private final XMLStreamReader xml;
+        private final List<String> fields = new ArrayList<>();
+        /** 当前元素的祖先路径（不含已用 getElementText 读完的叶子） */
+        private final Deque<String> path = new ArrayDeque<>();
+        private String accountCurrency;
+        private int recordLine;
+        private long records;
+
+        // 当前条目
+        private String amount;
+        private String currency;
+        private String indicator;
+        private String bookingDate;
+        private String valueDate;
+        private String status;
+        private String creditor;
+        private String debtor;
+        private final StringBuilder remittance = new StringBuilder();
+        private String additionalInfo;
+
+        CamtReader(InputStream in, XMLStreamReader xml) {
+            this.in = in;
+            this.xml = xml;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            try {
+                while (xml.hasNext()) {
+                    int event = xml.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        startElement(xml.getLocalName());
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        String name = path.pop();
+                        if ("Ntry".equals(name) && emit()) {
+                            return true;
+                        }
+                    } else if (event == XMLStreamConstants.CHARACTERS && "Sts".equals(path.peek())
+                            && !xml.isWhiteSpace()) {
+                        status = xml.getText().trim();
+                    }
+                }
+                return false;
+            } catch (XMLStreamException | RuntimeException e) {
+                throw new IOException("第" + xml.getLocation().getLineNumber() + "行附近 CAMT.053 解析失败：" + e.getMessage(), e);
+            }
+        }
+
+        private void startElement(String name) throws XMLStreamException {
+            String parent = path.peek();
+            if ("Ntry".equals(name)) {
+                clearEntry();
+                recordLine = xml.getLocation().getLineNumber();
+                path.push(name);
+                return;
+            }
+            boolean inEntry = path.contains("Ntry");
+            if (!inEntry) {
+                // 对账单账户币种，条目金额未带 Ccy 属性时使用
+                if ("Ccy".equals(name) && "Acct".equals(parent)) {
+                    accountCurrency = xml.getElementText().trim();
+                    return;
+                }
+                path.push(name);
+                return;
+            }
+            if ("Amt".equals(name) && "Ntry".equals(parent)) {
+                currency = xml.getAttributeValue(null, "Ccy");
+                amount = xml.getElementText().trim();
+            } else if ("CdtDbtInd".equals(name) && "Ntry".equals(parent)) {
+                indicator = xml.getElementText().trim();
+            } else if (("Dt".equals(name) || "DtTm".equals(name)) && ("BookgDt".equals(parent) || "ValDt".equals(parent))) {
+                String date = date(xml.getElementText().trim());
+                if ("BookgDt".equals(parent)) {
+                    bookingDate = date;
+                } else {
+                    valueDate = date;
+                }
+            } else if ("Cd".equals(name) && "Sts".equals(parent)) {
+                // 新版 <Sts><Cd>BOOK</Cd></Sts>；旧版 <Sts>BOOK</Sts> 在 next() 中按文本读取
+                status = xml.getElementText().trim();
+            } else if ("Ustrd".equals(name)) {
+                if (remittance.length() > 0) {
+                    remittance.append(' ');
+                }
+                remittance.append(xml.getElementText().trim());
+            } else if ("AddtlNtryInf".equals(name) && "Ntry".equals(parent)) {
+                additionalInfo = xml.getElementText().trim();
+            } else if ("Nm".equals(name) && path.contains("RltdPties")) {
+                String nm = xml.getElementText().trim();
+                if (path.contains("Cdtr") && creditor == null) {
+                    creditor = nm;
+                } else if (path.contains("Dbtr") && debtor == null) {
+                    debtor = nm;
+                }
+            } else {
+                path.push(name);
+            }
+        }
+
+        /** 条目结束：已记账的条目组装为记录并返回 true */
+        private boolean emit() {
+            if (status != null && ("PDNG".equalsIgnoreCase(status) || "INFO".equalsIgnoreCase(status))) {
+                return false;
+            }
+            boolean debit = "DBIT".equalsIgnoreCase(indicator);
+            String counterparty = debit ? creditor : debtor;
+            String info = remittance.length() > 0 ? remittance.toString() : additionalInfo;
+            String description = counterparty;
+            if (info != null && !info.isEmpty()) {
+                description = counterparty != null ? counterparty + " - " + info : info;
+            }
+            String signed = amount == null ? null : debit ? "-" + amount : amount;
+            StatementParser.record(fields, bookingDate != null ? bookingDate : valueDate, signed,
+                currency != null ? currency : accountCurrency, null, description);
+            records++;
+            return true;
+        }
+
+        private void clearEntry() {
+            amount = null;
+            currency = null;
+            indicator = null;
+            bookingDate = null;
+            valueDate = null;
+            status = null;
+            creditor = null;
+            debtor = null;
+            remittance.setLength(0);
+            additionalInfo = null;
+        }
+
+        /** 2024-01-15 或 2024-01-15T10:30:00[+01:00] 转为 yyyy-MM-dd[ HH:mm] */
+        private static String date(String v) {
+            if (v.length() >= 16 && v.charAt(10) == 'T') {
+                return v.substring(0, 10) + " " + v.substring(11, 16);
+            }
+            return v.length() >= 10 ? v.substring(0, 10) : v;
+        }
+
+        @Override
+        public List<String> fields() {
+            return fields;
+        }
+
+        @Override
+        public int line() {
+            return recordLine;
+        }
+
+        /** 已读取的记录数 */
+        @Override
+        public long offset() {
+            return records;
+        }
+
+        @Override
+        public int nextLine() {
+            return xml.getLocation().getLineNumber();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                xml.close();
+            } catch (XMLStreamException e) {
+                // 忽略，仍关闭底层流
+            }
+            in.close();
+        }
+    }
+}
@@ -14,6 +14,16 @@ public class CategoryService {
     @Autowired
     private UserCategoryRepository userCategoryRepository;
 
+    @Autowired
+    private DataVersionService dataVersionService;
+
+    @Autowired
+    private TransactionLabelService labelService;
+
+    @Autowired
+    private List<TransactionChangeListener> changeListeners;
+
+    @Transactional(readOnly = true)
     public List<UserCategory> listByUserId(Integer userId) {
         return userCategoryRepository.findByUserIdOrderByDisplayOrderAscIdAsc(userId);
     }
@@ -31,9 +41,15 @@ public class CategoryService {
         c.setUserId(userId);
         c.setName(name);
         c.setDisplayOrder(nextOrder);
-        return userCategoryRepository.save(c);
+        UserCategory saved = userCategoryRepository.save(c);
+        dataVersionService.bump(userId);
+        return saved;
     }
 
+    /**
+     * 改名同时作用于使用该分类的交易：交易只引用分类标签的 id，改名只更新标签这一行，
+     * 派生数据（全文索引、同步版本等）经 {@link TransactionChangeListener#onCategoryRenamed} 更新。
+     */
     @Transactional
     public UserCategory update(Integer userId, Integer id, String name) {
         if (name == null || (name = name.trim()).isEmpty()) {
@@ -44,8 +60,16 @@ public class CategoryService {
         if (!c.getName().equals(name) && userCategoryRepository.existsByUserIdAndName(userId, name)) {
             throw new RuntimeException("该分类名称已存在");
         }
+        int[] renamed = labelService.renameCategory(userId, c.getName(), name);
+        if (renamed != null) {
+            for (TransactionChangeListener listener : changeListeners) {
+                listener.onCategoryRenamed(userId, renamed[0], renamed[1]);
+            }
+        }
         c.setName(name);
-        return userCategoryRepository.save(c);
+        UserCategory saved = userCategoryRepository.save(c);
+        dataVersionService.bump(userId);
+        return saved;
     }
 
     @Transactional
@@ -54,5 +78,6 @@ public class CategoryService {
             throw new RuntimeException("分类不存在");
         }
         userCategoryRepository.deleteByIdAndUserId(id, userId);
+        dataVersionService.bump(userId);
     }
 }
@@ -0,0 +1,191 @@
+package com.countinghelper.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 流式 CSV 读取器：按字节的状态机逐条解析记录，支持引号包裹的字段（内含逗号、换行、"" 转义），
+ * 内存占用只与单条记录大小有关。
+ * <p>
+ * 分隔符与引号都是 ASCII，UTF-8 多字节字符的各字节都不会与之混淆，因此可以按字节切分、按字段解码。
+ * 每条记录结束后记下其后的字节偏移，用于断点续传（从该偏移重新打开流即可继续）。
+ */
+public class CsvRecordReader implements RecordReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+
+    /** 已消费的字节数（相对文件开头） */
+    private long offset;
+    private int line;
+
+    private byte[] field = new byte[256];
+    private int fieldLen;
+    private final List<String> fields = new ArrayList<>();
+    private int recordLine;
+    private long recordEndOffset;
+
+    /** 从文件开头读取，跳过 UTF-8 BOM */
+    public CsvRecordReader(InputStream in) throws IOException {
+        this(in, 0, 1);
+        skipBom();
+    }
+
+    /**
+     * 从 startOffset 处继续读取；in 必须已定位到该偏移。startLine 为该偏移处的行号，用于错误提示。
+     */
+    public CsvRecordReader(InputStream in, long startOffset, int startLine) {
+        this.in = in;
+        this.offset = startOffset;
+        this.recordEndOffset = startOffset;
+        this.line = startLine;
+    }
+
+    /**
+     * 读取下一条记录；返回 false 表示已到文件末尾。空行也作为一条记录返回（仅含一个空字段）。
+     */
+    @Override
+    public boolean next() throws IOException {
+        fields.clear();
+        fieldLen = 0;
+        int b = read();
+        if (b < 0) {
+            return false;
+        }
+        recordLine = line;
+        boolean inQuotes = false;
+        while (true) {
+            if (b < 0) {
+                endField();
+                break;
+            }
+            if (inQuotes) {
+                if (b == '"') {
+                    int n = peek();
+                    if (n == '"') {
+                        read();
+                        append(b);
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    if (b == '\n') {
+                        line++;
+                    }
+                    append(b);
+                }
+            } else if (b == '"') {
+                inQuotes = true;
+            } else if (b == ',') {
+                endField();
+            } else if (b == '\n') {
+                line++;
+                endField();
+                break;
+            } else if (b == '\r') {
+                if (peek() == '\n') {
+                    read();
+                }
+                line++;
+                endField();
+                break;
+            } else {
+                append(b);
+            }
+            b = read();
+        }
+        recordEndOffset = offset;
+        return true;
+    }
+
+    /** 当前记录的字段（未做 trim） */
+    @Override
+    public List<String> fields() {
+        return fields;
+    }
+
+    /** 当前记录起始的行号（从 1 开始） */
+    @Override
+    public int line() {
+        return recordLine;
+    }
+
+    /** 当前记录之后的字节偏移，从这里继续读取即从下一条记录开始 */
+    @Override
+    public long offset() {
+        return recordEndOffset;
+    }
+
+    /** 下一条记录起始的行号 */
+    @Override
+    public int nextLine() {
+        return line;
+    }
+
+    /** 关闭底层输入流 */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void skipBom() throws IOException {
+        if (fill() && limit - pos >= 3
+                && (buf[pos] & 0xFF) == 0xEF && (buf[pos + 1] & 0xFF) == 0xBB && (buf[pos + 2] & 0xFF) == 0xBF) {
+            pos += 3;
+            offset += 3;
+            recordEndOffset = offset;
+        }
+    }
+
+    private void endField() {
+        fields.add(new String(field, 0, fieldLen, StandardCharsets.UTF_8));
+        fieldLen = 0;
+    }
+
+    private void append(int b) {
+        if (fieldLen == field.length) {
+            field = Arrays.copyOf(field, field.length * 2);
+        }
+        field[fieldLen++] = (byte) b;
+    }
+
+    private int read() throws IOException {
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+        offset++;
+        return buf[pos++] & 0xFF;
+    }
+
+    private int peek() throws IOException {
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+        return buf[pos] & 0xFF;
+    }
+
+    /** 缓冲区读空时补充数据；保证 BOM 检测时至少尝试读满 3 个字节 */
+    private boolean fill() throws IOException {
+        if (pos < limit) {
+            return true;
+        }
+        pos = 0;
+        limit = 0;
+        while (limit < 3) {
+            int n = in.read(buf, limit, buf.length - limit);
+            if (n < 0) {
+                break;
+            }
+            limit += n;
+        }
+        return limit > 0;
+    }
+}
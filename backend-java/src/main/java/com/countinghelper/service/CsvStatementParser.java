@@ -0,0 +1,51 @@
+package com.countinghelper.service;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** CSV（与导出格式一致），续传位置为字节偏移。不含 NUL 字节的文本都按 CSV 处理，排在最后兜底 */
+@Service
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class CsvStatementParser implements StatementParser {
+
+    @Override
+    public String format() {
+        return "csv";
+    }
+
+    @Override
+    public boolean matches(byte[] head, int length) {
+        for (int i = 0; i < length; i++) {
+            if (head[i] == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public RecordReader open(Path file, long offset, int nextLine) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        try {
+            if (offset > 0) {
+                in.skipNBytes(offset);
+                return new CsvRecordReader(in, offset, nextLine);
+            }
+            return new CsvRecordReader(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean byteOffsets() {
+        return true;
+    }
+}
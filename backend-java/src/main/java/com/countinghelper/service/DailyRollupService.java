@@ -0,0 +1,230 @@
+package com.countinghelper.service;
+
+import com.countinghelper.entity.Transaction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 维护 transaction_daily_rollup：按 (用户, 本地日期, 类型, 分类, 支付方式, 货币) 汇总金额（最小货币单位）与笔数，
+ * 各维度为 transaction_labels 的 id（空为 0）。
+ * 作为 {@link TransactionChangeListener} 在每次写入的同一事务内做增量加减，笔数归零的行直接删除；
+ * 存量数据由迁移 V2 一次性回填（V11 改为按 id 重建）。分析、还款周期等按时间段统计的查询读取该表，
+ * 一个时间段最多读几百行汇总，而不是该用户的全部交易。
+ */
+@Service
+public class DailyRollupService implements TransactionChangeListener {
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ISO_LOCAL_DATE;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 一行日汇总；无日期为 ""，各维度为 transaction_labels 的 id，空维度为 0（名称见 {@link TransactionLabelService}）。
+     * amount 为该货币的最小单位，amountInGbp 为英镑便士
+     */
+    public static class Row {
+        public final String day;
+        public final int typeId;
+        public final int categoryId;
+        public final int paymentMethodId;
+        public final int currencyId;
+        public final long amount;
+        public final long amountInGbp;
+        public final int count;
+
+        public Row(String day, int typeId, int categoryId, int paymentMethodId, int currencyId,
+                   long amount, long amountInGbp, int count) {
+            this.day = day;
+            this.typeId = typeId;
+            this.categoryId = categoryId;
+            this.paymentMethodId = paymentMethodId;
+            this.currencyId = currencyId;
+            this.amount = amount;
+            this.amountInGbp = amountInGbp;
+            this.count = count;
+        }
+
+        public boolean isIncome() {
+            return typeId == TransactionLabelService.INCOME;
+        }
+    }
+
+    /** 某一天的收支合计（英镑便士） */
+    public static class DayTotals {
+        public final String day;
+        public long income;
+        public long expense;
+        public int incomeCount;
+        public int expenseCount;
+
+        public DayTotals(String day) {
+            this.day = day;
+        }
+    }
+
+    /**
+     * 读取 [fromDay, toDay] 内的汇总行（均含当天，yyyy-MM-dd，为 null 表示不限），按主键各列（日期、各维度）升序。
+     */
+    @Transactional(readOnly = true)
+    public List<Row> findRows(Integer userId, String fromDay, String toDay) {
+        StringBuilder sql = new StringBuilder(
+            "SELECT day, type_id, category_id, payment_method_id, currency_id, amount, amount_in_gbp, tx_count" +
+            " FROM transaction_daily_rollup WHERE user_id = ?");
+        List<Object> args = new ArrayList<>();
+        args.add(userId);
+        if (fromDay != null) {
+            sql.append(" AND day >= ?");
+            args.add(fromDay);
+        }
+        if (toDay != null) {
+            sql.append(" AND day <= ?");
+            args.add(toDay);
+        }
+        sql.append(" ORDER BY day, type_id, category_id, payment_method_id, currency_id");
+        return jdbcTemplate.query(sql.toString(),
+            (rs, i) -> new Row(rs.getString(1), rs.getInt(2), rs.getInt(3), rs.getInt(4), rs.getInt(5),
+                rs.getLong(6), rs.getLong(7), rs.getInt(8)),
+            args.toArray());
+    }
+
+    /**
+     * 交易表中 created_at_epoch 在 [startEpoch, endEpoch]（含两端）内的交易按汇总行的维度分组，与 findRows 同序。
+     * 用于不足一天的零头：走 (user_id, created_at_epoch) 索引，只读该区间内的交易。
+     */
+    @Transactional(readOnly = true)
+    public List<Row> findRowsBetween(Integer userId, long startEpoch, long endEpoch) {
+        return jdbcTemplate.query(
+            "SELECT date(created_at_epoch, 'unixepoch'), COALESCE(type_id, 0), COALESCE(category_id, 0)," +
+            " COALESCE(payment_method_id, 0), COALESCE(currency_id, 0)," +
+            " COALESCE(SUM(amount), 0), COALESCE(SUM(amount_in_gbp), 0), COUNT(*)" +
+            " FROM transactions WHERE user_id = ? AND created_at_epoch BETWEEN ? AND ?" +
+            " GROUP BY 1, 2, 3, 4, 5 ORDER BY 1, 2, 3, 4, 5",
+            (rs, i) -> new Row(rs.getString(1), rs.getInt(2), rs.getInt(3), rs.getInt(4), rs.getInt(5),
+                rs.getLong(6), rs.getLong(7), rs.getInt(8)),
+            userId, startEpoch, endEpoch);
+    }
+
+    /** [fromDay, toDay]（含当天）内按日期分组的收支合计，按日期升序；一次查询 */
+    @Transactional(readOnly = true)
+    public List<DayTotals> dailyTotals(Integer userId, String fromDay, String toDay) {
+        return jdbcTemplate.query(
+            "SELECT day," +
+            " COALESCE(SUM(CASE WHEN type_id = 1 THEN amount_in_gbp ELSE 0 END), 0)," +
+            " COALESCE(SUM(CASE WHEN type_id = 1 THEN 0 ELSE amount_in_gbp END), 0)," +
+            " COALESCE(SUM(CASE WHEN type_id = 1 THEN tx_count ELSE 0 END), 0)," +
+            " COALESCE(SUM(CASE WHEN type_id = 1 THEN 0 ELSE tx_count END), 0)" +
+            " FROM transaction_daily_rollup WHERE user_id = ? AND day >= ? AND day <= ?" +
+            " GROUP BY day ORDER BY day",
+            (rs, i) -> {
+                DayTotals t = new DayTotals(rs.getString(1));
+                t.income = rs.getLong(2);
+                t.expense = rs.getLong(3);
+                t.incomeCount = rs.getInt(4);
+                t.expenseCount = rs.getInt(5);
+                return t;
+            },
+            userId, fromDay, toDay);
+    }
+
+    @Override
+    public void onCreated(Transaction created) {
+        apply(created, 1);
+    }
+
+    /** 同一汇总行的增量先在内存中合并，每个 (日期, 维度) 只执行一条 upsert */
+    @Override
+    public void onCreatedAll(List<Transaction> created) {
+        Map<List<Object>, long[]> deltas = new LinkedHashMap<>();
+        for (Transaction t : created) {
+            List<Object> key = List.of(t.getUserId(), dayOf(t), nz(t.getTypeId()), nz(t.getCategoryId()),
+                nz(t.getPaymentMethodId()), nz(t.getCurrencyId()));
+            long[] d = deltas.computeIfAbsent(key, k -> new long[3]);
+            d[0] += t.getAmountMinor() != null ? t.getAmountMinor() : 0;
+            d[1] += t.getAmountInGbpMinor() != null ? t.getAmountInGbpMinor() : 0;
+            d[2]++;
+        }
+        deltas.forEach((k, d) -> upsert((Integer) k.get(0), (String) k.get(1), (Integer) k.get(2), (Integer) k.get(3),
+            (Integer) k.get(4), (Integer) k.get(5), d[0], d[1], (int) d[2]));
+    }
+
+    @Override
+    public void onUpdated(Transaction before, Transaction after) {
+        apply(before, -1);
+        apply(after, 1);
+    }
+
+    @Override
+    public void onDeleted(Transaction deleted) {
+        apply(deleted, -1);
+    }
+
+    @Override
+    public void onAllDeleted(Integer userId) {
+        jdbcTemplate.update("DELETE FROM transaction_daily_rollup WHERE user_id = ?", userId);
+    }
+
+    /** 仅改名时汇总行不变；并入已有标签时两个标签的行会落到同一主键，按交易表重算该用户 */
+    @Override
+    public void onCategoryRenamed(Integer userId, int fromLabelId, int toLabelId) {
+        if (fromLabelId == toLabelId) {
+            return;
+        }
+        jdbcTemplate.update("DELETE FROM transaction_daily_rollup WHERE user_id = ?", userId);
+        jdbcTemplate.update(
+            "INSERT INTO transaction_daily_rollup" +
+            " (user_id, day, type_id, category_id, payment_method_id, currency_id, amount, amount_in_gbp, tx_count)" +
+            " SELECT user_id, COALESCE(substr(created_at, 1, 10), ''), COALESCE(type_id, 0), COALESCE(category_id, 0)," +
+            "  COALESCE(payment_method_id, 0), COALESCE(currency_id, 0)," +
+            "  COALESCE(SUM(amount), 0), COALESCE(SUM(amount_in_gbp), 0), COUNT(*)" +
+            " FROM transactions WHERE user_id = ?" +
+            " GROUP BY 1, 2, 3, 4, 5, 6",
+            userId);
+    }
+
+    private void apply(Transaction t, int sign) {
+        String day = dayOf(t);
+        int type = nz(t.getTypeId());
+        int category = nz(t.getCategoryId());
+        int paymentMethod = nz(t.getPaymentMethodId());
+        int currency = nz(t.getCurrencyId());
+        long amount = t.getAmountMinor() != null ? t.getAmountMinor() : 0;
+        long gbp = t.getAmountInGbpMinor() != null ? t.getAmountInGbpMinor() : 0;
+        upsert(t.getUserId(), day, type, category, paymentMethod, currency, sign * amount, sign * gbp, sign);
+        if (sign < 0) {
+            jdbcTemplate.update(
+                "DELETE FROM transaction_daily_rollup WHERE user_id = ? AND day = ? AND type_id = ?" +
+                " AND category_id = ? AND payment_method_id = ? AND currency_id = ? AND tx_count <= 0",
+                t.getUserId(), day, type, category, paymentMethod, currency);
+        }
+    }
+
+    private void upsert(Integer userId, String day, int type, int category, int paymentMethod,
+                        int currency, long amount, long gbp, int count) {
+        jdbcTemplate.update(
+            "INSERT INTO transaction_daily_rollup" +
+            " (user_id, day, type_id, category_id, payment_method_id, currency_id, amount, amount_in_gbp, tx_count)" +
+            " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)" +
+            " ON CONFLICT(user_id, day, type_id, category_id, payment_method_id, currency_id) DO UPDATE SET" +
+            "  amount = amount + excluded.amount," +
+            "  amount_in_gbp = amount_in_gbp + excluded.amount_in_gbp," +
+            "  tx_count = tx_count + excluded.tx_count",
+            userId, day, type, category, paymentMethod, currency, amount, gbp, count);
+    }
+
+    private static String dayOf(Transaction t) {
+        return t.getCreatedAt() != null ? t.getCreatedAt().toLocalDate().format(DAY) : "";
+    }
+
+    private static int nz(Integer labelId) {
+        return labelId != null ? labelId : 0;
+    }
+}
@@ -0,0 +1,79 @@
+package com.countinghelper.service;
+
+import com.countinghelper.entity.Transaction;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 每个用户的数据版本号（仅在内存中），用于读接口的 ETag：交易、分类、账单周期预算与设置的每次写入都 +1。
+ * 版本号在事务提交之后才递增，读请求先取版本号再查数据，因此旧数据不会带上新版本号。
+ * ETag 中带有本进程的启动标识，重启后旧 ETag 全部失效，无需持久化。
+ */
+@Service
+public class DataVersionService implements TransactionChangeListener {
+
+    private final String bootId = Long.toString(System.currentTimeMillis(), 36);
+    private final ConcurrentHashMap<Integer, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    public long current(Integer userId) {
+        AtomicLong v = versions.get(userId);
+        return v != null ? v.get() : 0;
+    }
+
+    /** 当前处于事务中时在提交后递增，回滚则不变；否则立即递增 */
+    public void bump(Integer userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    increment(userId);
+                }
+            });
+        } else {
+            increment(userId);
+        }
+    }
+
+    private void increment(Integer userId) {
+        versions.computeIfAbsent(userId, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    /** 弱 ETag：启动标识 + 用户 + 版本号；variant 用于还依赖其他输入（如当天日期）的响应 */
+    public String etag(Integer userId, String variant) {
+        String tag = bootId + "-" + Integer.toString(userId, 36) + "-" + Long.toString(current(userId), 36);
+        if (variant != null) {
+            tag += "-" + variant;
+        }
+        return "W/\"" + tag + "\"";
+    }
+
+    @Override
+    public void onCreated(Transaction created) {
+        bump(created.getUserId());
+    }
+
+    @Override
+    public void onCreatedAll(List<Transaction> created) {
+        created.stream().map(Transaction::getUserId).distinct().forEach(this::bump);
+    }
+
+    @Override
+    public void onUpdated(Transaction before, Transaction after) {
+        bump(after.getUserId());
+    }
+
+    @Override
+    public void onDeleted(Transaction deleted) {
+        bump(deleted.getUserId());
+    }
+
+    @Override
+    public void onAllDeleted(Integer userId) {
+        bump(userId);
+    }
+}
@@ -0,0 +1,240 @@
+package com.countinghelper.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 单写线程的「组提交」队列：所有用户的新增/修改/删除先入队，写线程在 window-ms 毫秒内
+ * 或凑满 max-batch 个操作后，在同一个 SQLite 事务里依次执行并一次提交（一次 fsync），
+ * 提交成功后再逐个完成调用方的 Future。
+ * <p>
+ * 若整批中某个操作失败导致回滚，则退化为逐个单独事务重试，失败只影响该操作本身。
+ * 调用方已处于事务中时直接在当前事务内执行，避免与写连接池（仅 1 个连接）互相等待。
+ */
+@Service
+public class GroupCommitWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(GroupCommitWriter.class);
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.write-queue.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.write-queue.window-ms:5}")
+    private long windowMs;
+
+    @Value("${app.write-queue.max-batch:64}")
+    private int maxBatch;
+
+    private final BlockingQueue<Op<?>> queue = new LinkedBlockingQueue<>();
+    private TransactionTemplate txTemplate;
+    private volatile Thread worker;
+    private volatile boolean running;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder commitNanosTotal = new LongAdder();
+    private final AtomicLong commitNanosMax = new AtomicLong();
+    private final AtomicLong batchSizeMax = new AtomicLong();
+    private final LongAdder waitNanosTotal = new LongAdder();
+
+    private static final class Op<T> {
+        final Supplier<T> work;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final long enqueuedAt = System.nanoTime();
+
+        Op(Supplier<T> work) {
+            this.work = work;
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(Object result) {
+            future.complete((T) result);
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        txTemplate = new TransactionTemplate(transactionManager);
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        Thread t = new Thread(this::runLoop, "group-commit-writer");
+        t.setDaemon(true);
+        worker = t;
+        t.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        Thread t = worker;
+        if (t != null) {
+            t.interrupt();
+            try {
+                t.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // 关闭时仍在队列中的操作逐个执行完，不丢写
+        List<Op<?>> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        for (Op<?> op : rest) {
+            runSingle(op);
+        }
+    }
+
+    /**
+     * 在写事务中执行 work 并返回其结果；默认经由组提交队列，阻塞直到所在批次提交完成。
+     * work 抛出的 RuntimeException 会原样抛给调用方。
+     */
+    public <T> T execute(Supplier<T> work) {
+        if (!running || TransactionSynchronizationManager.isActualTransactionActive()
+                || Thread.currentThread() == worker) {
+            return txTemplate.execute(status -> work.get());
+        }
+        Op<T> op = new Op<>(work);
+        queue.add(op);
+        try {
+            return op.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("写入被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private void runLoop() {
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, windowMs));
+        int limit = Math.max(1, maxBatch);
+        while (running) {
+            List<Op<?>> batch = new ArrayList<>(limit);
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < limit) {
+                    long remaining = deadline - System.nanoTime();
+                    Op<?> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                if (!batch.isEmpty()) {
+                    commit(batch);
+                }
+                break;
+            }
+            commit(batch);
+        }
+    }
+
+    private void commit(List<Op<?>> batch) {
+        long start = System.nanoTime();
+        for (Op<?> op : batch) {
+            waitNanosTotal.add(start - op.enqueuedAt);
+        }
+        List<Object> results;
+        try {
+            results = txTemplate.execute(status -> {
+                List<Object> out = new ArrayList<>(batch.size());
+                for (Op<?> op : batch) {
+                    out.add(op.work.get());
+                }
+                return out;
+            });
+        } catch (RuntimeException | Error e) {
+            recordCommit(batch.size(), System.nanoTime() - start);
+            if (batch.size() == 1) {
+                failures.increment();
+                batch.get(0).future.completeExceptionally(e);
+            } else {
+                fallbacks.increment();
+                log.debug("[WriteQueue] batch of {} rolled back ({}), retrying one by one", batch.size(), e.getMessage());
+                for (Op<?> op : batch) {
+                    runSingle(op);
+                }
+            }
+            return;
+        }
+        recordCommit(batch.size(), System.nanoTime() - start);
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(results.get(i));
+        }
+    }
+
+    private void runSingle(Op<?> op) {
+        try {
+            Object result = txTemplate.execute(status -> op.work.get());
+            op.complete(result);
+        } catch (RuntimeException | Error e) {
+            failures.increment();
+            op.future.completeExceptionally(e);
+        }
+    }
+
+    private void recordCommit(int size, long nanos) {
+        batches.increment();
+        operations.add(size);
+        commitNanosTotal.add(nanos);
+        commitNanosMax.accumulateAndGet(nanos, Math::max);
+        batchSizeMax.accumulateAndGet(size, Math::max);
+    }
+
+    /** 组提交指标：批次数、平均/最大批大小、平均/最大提交耗时、平均排队等待、当前队列长度等 */
+    public Map<String, Object> snapshot() {
+        long b = batches.sum();
+        long ops = operations.sum();
+        Map<String, Object> m = new HashMap<>();
+        m.put("enabled", running);
+        m.put("windowMs", windowMs);
+        m.put("maxBatch", maxBatch);
+        m.put("queueDepth", queue.size());
+        m.put("batches", b);
+        m.put("operations", ops);
+        m.put("avgBatchSize", b > 0 ? (double) ops / b : 0.0);
+        m.put("maxBatchSize", batchSizeMax.get());
+        m.put("avgCommitMs", b > 0 ? commitNanosTotal.sum() / 1_000_000.0 / b : 0.0);
+        m.put("maxCommitMs", commitNanosMax.get() / 1_000_000.0);
+        m.put("avgQueueWaitMs", ops > 0 ? waitNanosTotal.sum() / 1_000_000.0 / ops : 0.0);
+        m.put("fallbacks", fallbacks.sum());
+        m.put("failures", failures.sum());
+        return m;
+    }
+}
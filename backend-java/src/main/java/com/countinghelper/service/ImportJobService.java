@@ -0,0 +1,458 @@
+package com.countinghelper.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 后台导入任务：上传文件先落盘到 app.import.spool-dir 并按内容识别格式（见 {@link StatementParsers}），
+ * 请求立即返回任务 id，由工作线程按块导入。
+ * 每块数据与断点（CSV / QIF 为字节偏移与行号，其他格式为已读记录数；以及累计结果）在同一写事务内提交，
+ * 服务重启后未完成的任务从断点继续，不会重复导入。
+ * <p>
+ * 每个用户同时运行的任务数不超过 app.import.max-running-per-user，多出的任务排队；
+ * 每块作为一个操作进入组提交写队列，其他用户的写入可以穿插执行，不会被一个大文件长期占住写连接。
+ */
+@Service
+@Lazy(false)
+public class ImportJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(ImportJobService.class);
+
+    static final String QUEUED = "queued";
+    static final String RUNNING = "running";
+    static final String DONE = "done";
+    static final String FAILED = "failed";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TransactionImportService importService;
+
+    @Autowired
+    private GroupCommitWriter groupCommitWriter;
+
+    @Autowired
+    private TransactionDedupeService dedupeService;
+
+    @Autowired
+    private StatementParsers parsers;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.import.spool-dir:${java.io.tmpdir}/counting-helper-imports}")
+    private String spoolDir;
+
+    @Value("${app.import.workers:2}")
+    private int workers;
+
+    @Value("${app.import.max-running-per-user:1}")
+    private int maxRunningPerUser;
+
+    @Value("${app.import.max-pending-per-user:5}")
+    private int maxPendingPerUser;
+
+    private ExecutorService executor;
+    private volatile boolean stopping;
+
+    /** 每个用户正在运行的任务数，以及因超过并发上限而等待的任务 */
+    private final Object lock = new Object();
+    private final Map<Integer, Integer> running = new HashMap<>();
+    private final Map<Integer, Deque<String>> waiting = new HashMap<>();
+
+    /** 本进程内运行中任务的 {开始时间 nanos, 开始时已处理行数}，用于计算吞吐 */
+    private final Map<String, long[]> runStarts = new ConcurrentHashMap<>();
+
+    /** 任务表中的一行 */
+    private static class Job {
+        String id;
+        int userId;
+        String status;
+        String fileName;
+        String filePath;
+        long totalBytes;
+        long byteOffset;
+        int nextLine;
+        int imported;
+        int failed;
+        String errors;
+        Double rowsPerSecond;
+        String message;
+        String duplicateMode;
+        Long dedupeMaxId;
+        int duplicates;
+        String duplicateRows;
+        String fileFormat;
+        Integer totalRows;
+    }
+
+    @PostConstruct
+    void start() {
+        AtomicInteger seq = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, workers), r -> {
+            Thread t = new Thread(r, "import-worker-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** 关闭时不再开始新的块；运行中的任务停在最近的断点，状态保持 running，下次启动时继续 */
+    @PreDestroy
+    void stop() {
+        stopping = true;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** 启动完成后继续上次未完成的任务，并清理 7 天前已结束的任务记录 */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePending() {
+        try {
+            List<Job> pending = readOnly().execute(status -> jdbcTemplate.query(
+                "SELECT * FROM import_jobs WHERE status IN ('queued', 'running') ORDER BY created_at",
+                (rs, i) -> mapJob(rs)));
+            for (Job job : pending) {
+                log.info("[Import] Resuming job {} for user {} at byte {}", job.id, job.userId, job.byteOffset);
+                dispatch(job.userId, job.id);
+            }
+            groupCommitWriter.execute(() -> jdbcTemplate.update(
+                "DELETE FROM import_jobs WHERE status IN ('done', 'failed') AND finished_at < datetime('now', '-7 days')"));
+        } catch (DataAccessException e) {
+            log.error("[Import] Could not resume import jobs: {}", e.getMostSpecificCause().getMessage());
+        }
+    }
+
+    /**
+     * 保存上传文件、识别格式并创建任务，返回任务 id。该用户未结束的任务已达上限或格式无法识别时拒绝。
+     * mode 为与已有交易重复的行的处理方式。
+     */
+    public String submit(int userId, MultipartFile file, TransactionImportService.DuplicateMode mode)
+            throws IOException {
+        Integer pending = readOnly().execute(status -> jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM import_jobs WHERE user_id = ? AND status IN ('queued', 'running')",
+            Integer.class, userId));
+        if (pending != null && pending >= maxPendingPerUser) {
+            throw new RuntimeException("导入任务过多，请等待当前任务完成");
+        }
+        String id = UUID.randomUUID().toString();
+        String name = file.getOriginalFilename();
+        Files.createDirectories(Paths.get(spoolDir));
+        Path path = Paths.get(spoolDir).resolve(id + ".upload");
+        try (InputStream in = file.getInputStream()) {
+            Files.copy(in, path);
+        }
+        String format;
+        try {
+            format = parsers.detect(path).format();
+        } catch (IOException | RuntimeException e) {
+            deleteSpoolFile(path);
+            throw e;
+        }
+        long size = Files.size(path);
+        groupCommitWriter.execute(() -> jdbcTemplate.update(
+            "INSERT INTO import_jobs (id, user_id, status, file_name, file_path, file_format, total_bytes, duplicate_mode," +
+            " created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, datetime('now'), datetime('now'))",
+            id, userId, QUEUED, name, path.toAbsolutePath().toString(), format, size,
+            mode.name().toLowerCase(Locale.ROOT)));
+        dispatch(userId, id);
+        return id;
+    }
+
+    /**
+     * 任务进度：status、格式、已处理/成功/失败行数、已读字节与总字节（按记录续传的格式为已读记录数与总行数）、
+     * 每秒行数、错误明细、重复行。
+     * 任务不属于该用户时视为不存在。
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getStatus(int userId, String jobId) {
+        Job job;
+        try {
+            job = jdbcTemplate.queryForObject("SELECT * FROM import_jobs WHERE id = ? AND user_id = ?",
+                (rs, i) -> mapJob(rs), jobId, userId);
+        } catch (EmptyResultDataAccessException e) {
+            throw new RuntimeException("导入任务不存在");
+        }
+        int processed = job.imported + job.failed;
+        Double rowsPerSecond = job.rowsPerSecond;
+        long[] runStart = runStarts.get(jobId);
+        if (runStart != null) {
+            double seconds = (System.nanoTime() - runStart[0]) / 1e9;
+            rowsPerSecond = seconds > 0 ? (processed - runStart[1]) / seconds : 0.0;
+        }
+        Map<String, Object> m = new HashMap<>();
+        m.put("jobId", job.id);
+        m.put("status", job.status);
+        m.put("fileName", job.fileName);
+        m.put("processed", processed);
+        m.put("imported", job.imported);
+        m.put("failed", job.failed);
+        m.put("errors", parseErrors(job.errors));
+        m.put("duplicateMode", job.duplicateMode);
+        m.put("duplicates", job.duplicates);
+        m.put("duplicateRows", parseErrors(job.duplicateRows));
+        m.put("format", job.fileFormat);
+        double progress;
+        if (!parsers.byteOffsets(job.fileFormat)) {
+            m.put("rowsRead", job.byteOffset);
+            m.put("totalRows", job.totalRows);
+            progress = job.totalRows != null && job.totalRows > 0 ? (double) job.byteOffset / job.totalRows : 0.0;
+        } else {
+            m.put("bytesRead", job.byteOffset);
+            m.put("totalBytes", job.totalBytes);
+            progress = job.totalBytes > 0 ? (double) job.byteOffset / job.totalBytes : 0.0;
+        }
+        m.put("progress", DONE.equals(job.status) ? 1.0 : Math.min(1.0, progress));
+        m.put("rowsPerSecond", rowsPerSecond != null ? rowsPerSecond : 0.0);
+        m.put("message", job.message);
+        return m;
+    }
+
+    private void dispatch(int userId, String jobId) {
+        synchronized (lock) {
+            if (running.getOrDefault(userId, 0) < Math.max(1, maxRunningPerUser)) {
+                running.merge(userId, 1, Integer::sum);
+                executor.execute(() -> run(userId, jobId));
+            } else {
+                waiting.computeIfAbsent(userId, k -> new ArrayDeque<>()).add(jobId);
+            }
+        }
+    }
+
+    private void run(int userId, String jobId) {
+        try {
+            process(jobId);
+        } catch (CancellationException e) {
+            log.info("[Import] Job {} paused for shutdown", jobId);
+        } catch (Exception e) {
+            log.warn("[Import] Job {} failed: {}", jobId, e.getMessage());
+            String message = "导入失败：" + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+            groupCommitWriter.execute(() -> {
+                jdbcTemplate.update(
+                    "UPDATE import_jobs SET status = ?, message = ?, finished_at = datetime('now'), updated_at = datetime('now')" +
+                    " WHERE id = ?", FAILED, message, jobId);
+                return jdbcTemplate.update("DELETE FROM import_job_matches WHERE job_id = ?", jobId);
+            });
+            String filePath = readOnly().execute(status -> jdbcTemplate.queryForObject(
+                "SELECT file_path FROM import_jobs WHERE id = ?", String.class, jobId));
+            deleteSpoolFile(Paths.get(filePath));
+        } finally {
+            runStarts.remove(jobId);
+            String next = null;
+            synchronized (lock) {
+                running.merge(userId, -1, (a, b) -> a + b > 0 ? a + b : null);
+                Deque<String> queue = waiting.get(userId);
+                if (queue != null) {
+                    next = queue.poll();
+                    if (queue.isEmpty()) {
+                        waiting.remove(userId);
+                    }
+                }
+            }
+            if (next != null && !stopping) {
+                dispatch(userId, next);
+            }
+        }
+    }
+
+    private void process(String jobId) throws IOException {
+        Job job = readOnly().execute(status -> jdbcTemplate.queryForObject(
+            "SELECT * FROM import_jobs WHERE id = ?", (rs, i) -> mapJob(rs), jobId));
+        Path path = Paths.get(job.filePath);
+        if (!Files.exists(path)) {
+            throw new IOException("上传文件已丢失，请重新导入");
+        }
+        // 重复检查的比对范围在首次开始时确定，续传时沿用，本任务已写入的行不会被当成重复
+        long dedupeMaxId = job.dedupeMaxId != null ? job.dedupeMaxId : dedupeService.maxTransactionId(job.userId);
+        groupCommitWriter.execute(() -> jdbcTemplate.update(
+            "UPDATE import_jobs SET status = ?, started_at = COALESCE(started_at, datetime('now')), dedupe_max_id = ?," +
+            " updated_at = datetime('now') WHERE id = ?", RUNNING, dedupeMaxId, jobId));
+
+        TransactionImportService.ImportResult result = new TransactionImportService.ImportResult();
+        result.imported = job.imported;
+        result.failed = job.failed;
+        result.errors = parseErrors(job.errors);
+        result.duplicates = job.duplicates;
+        result.duplicateRows = parseErrors(job.duplicateRows);
+        long startNanos = System.nanoTime();
+        int startProcessed = job.imported + job.failed;
+        runStarts.put(jobId, new long[] { startNanos, startProcessed });
+
+        try (RecordReader reader = parsers.get(job.fileFormat).open(path, job.byteOffset, job.nextLine)) {
+            long totalRows = reader.total();
+            if (job.totalRows == null && totalRows > 0) {
+                groupCommitWriter.execute(() -> jdbcTemplate.update(
+                    "UPDATE import_jobs SET total_rows = ? WHERE id = ?", totalRows, jobId));
+            }
+            int[] saved = { result.errors.size(), result.duplicateRows.size() };
+            TransactionImportService.DuplicateMode mode = TransactionImportService.DuplicateMode.parse(job.duplicateMode);
+            importService.importRecords(job.userId, reader, result, mode, dedupeMaxId, new TransactionImportService.Progress() {
+                @Override
+                public void checkpoint(long offset, int nextLine, TransactionImportService.ImportResult r) {
+                    // 错误与重复明细有变化时才重写，避免每块都写一遍
+                    if (r.errors.size() != saved[0] || r.duplicateRows.size() != saved[1]) {
+                        jdbcTemplate.update(
+                            "UPDATE import_jobs SET byte_offset = ?, next_line = ?, imported = ?, failed = ?, errors = ?," +
+                            " duplicates = ?, duplicate_rows = ?, updated_at = datetime('now') WHERE id = ?",
+                            offset, nextLine, r.imported, r.failed, toJson(r.errors), r.duplicates,
+                            toJson(r.duplicateRows), jobId);
+                        saved[0] = r.errors.size();
+                        saved[1] = r.duplicateRows.size();
+                    } else {
+                        jdbcTemplate.update(
+                            "UPDATE import_jobs SET byte_offset = ?, next_line = ?, imported = ?, failed = ?, duplicates = ?," +
+                            " updated_at = datetime('now') WHERE id = ?",
+                            offset, nextLine, r.imported, r.failed, r.duplicates, jobId);
+                    }
+                }
+
+                @Override
+                public Collection<Integer> matchedBefore() {
+                    return readOnly().execute(status -> jdbcTemplate.queryForList(
+                        "SELECT transaction_id FROM import_job_matches WHERE job_id = ?", Integer.class, jobId));
+                }
+
+                @Override
+                public void matched(List<Integer> transactionIds) {
+                    List<Object[]> rows = new ArrayList<>(transactionIds.size());
+                    for (Integer id : transactionIds) {
+                        rows.add(new Object[] { jobId, id });
+                    }
+                    jdbcTemplate.batchUpdate(
+                        "INSERT OR IGNORE INTO import_job_matches (job_id, transaction_id) VALUES (?, ?)", rows);
+                }
+
+                @Override
+                public boolean shouldStop() {
+                    return stopping;
+                }
+            });
+            result.finish();
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            double rowsPerSecond = seconds > 0 ? (result.imported + result.failed - startProcessed) / seconds : 0.0;
+            long endOffset = reader.offset();
+            int endLine = reader.nextLine();
+            groupCommitWriter.execute(() -> {
+                jdbcTemplate.update(
+                    "UPDATE import_jobs SET status = ?, byte_offset = ?, next_line = ?, imported = ?, failed = ?, errors = ?," +
+                    " duplicates = ?, duplicate_rows = ?, rows_per_second = ?, finished_at = datetime('now')," +
+                    " updated_at = datetime('now') WHERE id = ?",
+                    DONE, endOffset, endLine, result.imported, result.failed, toJson(result.errors), result.duplicates,
+                    toJson(result.duplicateRows), rowsPerSecond, jobId);
+                return jdbcTemplate.update("DELETE FROM import_job_matches WHERE job_id = ?", jobId);
+            });
+            log.info("[Import] Job {} done: {} imported, {} failed, {} duplicates, {} rows/s", jobId, result.imported,
+                result.failed, result.duplicates, String.format("%.0f", rowsPerSecond));
+        }
+        deleteSpoolFile(path);
+    }
+
+    /** 事务外的查询经只读事务走读池，不在写连接上排队 */
+    private TransactionTemplate readOnly() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        return tx;
+    }
+
+    private void deleteSpoolFile(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("[Import] Could not delete spool file {}: {}", path, e.getMessage());
+        }
+    }
+
+    private String toJson(List<String> errors) {
+        try {
+            return objectMapper.writeValueAsString(errors);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<String> parseErrors(String json) {
+        if (json == null || json.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try {
+            return objectMapper.readValue(json, new TypeReference<List<String>>() { });
+        } catch (JsonProcessingException e) {
+            return new ArrayList<>();
+        }
+    }
+
+    private static Job mapJob(ResultSet rs) throws SQLException {
+        Job job = new Job();
+        job.id = rs.getString("id");
+        job.userId = rs.getInt("user_id");
+        job.status = rs.getString("status");
+        job.fileName = rs.getString("file_name");
+        job.filePath = rs.getString("file_path");
+        job.totalBytes = rs.getLong("total_bytes");
+        job.byteOffset = rs.getLong("byte_offset");
+        job.nextLine = rs.getInt("next_line");
+        job.imported = rs.getInt("imported");
+        job.failed = rs.getInt("failed");
+        job.errors = rs.getString("errors");
+        double rps = rs.getDouble("rows_per_second");
+        job.rowsPerSecond = rs.wasNull() ? null : rps;
+        job.message = rs.getString("message");
+        job.duplicateMode = rs.getString("duplicate_mode");
+        long maxId = rs.getLong("dedupe_max_id");
+        job.dedupeMaxId = rs.wasNull() ? null : maxId;
+        job.duplicates = rs.getInt("duplicates");
+        job.duplicateRows = rs.getString("duplicate_rows");
+        job.fileFormat = rs.getString("file_format");
+        int totalRows = rs.getInt("total_rows");
+        job.totalRows = rs.wasNull() ? null : totalRows;
+        return job;
+    }
+}
@@ -0,0 +1,28 @@
+package com.countinghelper.service;
+
+import java.util.function.Consumer;
+
+/**
+ * 大模型对话补全客户端。实现为单例（见 {@link com.countinghelper.config.LlmClientConfig}）：
+ * {@link OpenAiLlmClient} 调用 OpenAI，{@link StubLlmClient} 在本地模拟输出供离线压测，
+ * 两者都包在 {@link ResilientLlmClient} 中，受并发上限与熔断保护。
+ */
+public interface LlmClient {
+
+    /** 是否可用（例如已配置 API Key）；不可用时调用方直接使用基础分析 */
+    boolean isConfigured();
+
+    /** 模型名称，记录在分析结果中并参与分析缓存的版本 */
+    String model();
+
+    /**
+     * 对话补全：生成的片段随到随交给 onToken，返回完整文本。
+     * onToken 抛出 {@link java.util.concurrent.CancellationException} 或线程被中断时停止生成；
+     * 上游失败、超时或被熔断、限流拒绝时抛出 RuntimeException。
+     */
+    String complete(String system, String prompt, Consumer<String> onToken);
+
+    /** 关闭时释放连接与线程 */
+    default void shutdown() {
+    }
+}
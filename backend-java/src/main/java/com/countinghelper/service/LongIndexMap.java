@@ -0,0 +1,93 @@
+package com.countinghelper.service;
+
+import java.util.Arrays;
+
+/**
+ * long 键到连续下标（0, 1, 2...）的开放寻址哈希表，用于按打包的维度键分组汇总：
+ * 查找与插入不装箱、不分配对象，分组的累加值由调用方按下标存放在自己的原始类型数组中。
+ */
+final class LongIndexMap {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] slots;
+    private int size;
+    private int mask;
+
+    LongIndexMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        keys = new long[capacity];
+        slots = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    /** 键的下标；新键分配下一个下标。键不能为 Long.MIN_VALUE */
+    int indexOf(long key) {
+        int i = mix(key) & mask;
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key) {
+                return slots[i];
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        slots[i] = size;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+        return size - 1;
+    }
+
+    /** 键的下标；不存在时返回 -1，不插入 */
+    int find(long key) {
+        int i = mix(key) & mask;
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key) {
+                return slots[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** 按下标顺序返回全部键 */
+    long[] keys() {
+        long[] out = new long[size];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                out[slots[i]] = keys[i];
+            }
+        }
+        return out;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldSlots = slots;
+        keys = new long[oldKeys.length * 2];
+        slots = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != EMPTY) {
+                int i = mix(oldKeys[j]) & mask;
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                slots[i] = oldSlots[j];
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
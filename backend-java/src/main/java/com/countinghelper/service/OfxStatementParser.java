@@ -0,0 +1,286 @@
+package com.countinghelper.service;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * OFX / QFX 对账单。1.x 为 SGML（叶子元素没有结束标签），2.x 为 XML，两者用同一个标签扫描器逐字符读取：
+ * 叶子元素的值是开始标签之后、下一个「<」之前的文本。每个 STMTTRN 产生一条记录，
+ * 货币取所在对账单的 CURDEF。续传位置为已读记录数。
+ */
+@Service
+@Order(3)
+public class OfxStatementParser implements StatementParser {
+
+    private static final Pattern XML_ENCODING = Pattern.compile("encoding=[\"']([A-Za-z0-9_\\-]+)[\"']");
+
+    @Override
+    public String format() {
+        return "ofx";
+    }
+
+    @Override
+    public boolean matches(byte[] head, int length) {
+        // 1.x 首行为 OFXHEADER:；2.x 为 XML，根元素为 OFX。只看文档开头，正文中出现的字样不算
+        if (StatementParser.startsWithIgnoreCase(head, length, StatementParser.skipBomAndWhitespace(head, length),
+                "OFXHEADER:")) {
+            return true;
+        }
+        String tag = StatementParser.rootTag(head, length);
+        return tag != null && StatementParser.elementName(tag).equalsIgnoreCase("OFX");
+    }
+
+    @Override
+    public RecordReader open(Path file, long offset, int nextLine) throws IOException {
+        byte[] head = new byte[4096];
+        int n;
+        try (InputStream in = Files.newInputStream(file)) {
+            n = in.readNBytes(head, 0, head.length);
+        }
+        Charset charset = charsetOf(new String(head, 0, n, StandardCharsets.ISO_8859_1));
+        OfxReader reader = new OfxReader(
+            new BufferedReader(new InputStreamReader(Files.newInputStream(file), charset), 64 * 1024));
+        try {
+            while (reader.offset() < offset && reader.next()) {
+                // 跳过已导入的记录
+            }
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    /** 1.x 头部 ENCODING/CHARSET 或 2.x 的 XML 声明决定编码，默认 UTF-8 */
+    static Charset charsetOf(String head) {
+        String upper = head.toUpperCase(Locale.ROOT);
+        if (upper.contains("ENCODING:UTF-8")) {
+            return StandardCharsets.UTF_8;
+        }
+        if (upper.contains("CHARSET:1252")) {
+            return Charset.forName("windows-1252");
+        }
+        if (upper.contains("CHARSET:ISO-8859-1") || upper.contains("CHARSET:8859-1")) {
+            return StandardCharsets.ISO_8859_1;
+        }
+        Matcher m = XML_ENCODING.matcher(head);
+        if (m.find()) {
+            try {
+                return Charset.forName(m.group(1));
+            } catch (IllegalArgumentException e) {
+                // 不认识的编码按默认处理
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static class OfxReader implements RecordReader {
+        private final Reader in;
+        private final List<String> fields = new ArrayList<>();
+        /** 当前 STMTTRN 内已读到的叶子元素值（标签名大写） */
+        private final Map<String, String> values = new HashMap<>();
+        private final StringBuilder text = new StringBuilder();
+        private String currency;
+        private int line = 1;
+        private int recordLine;
+        private long records;
+        private int pushback = -1;
+
+        OfxReader(Reader in) {
+            this.in = in;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            boolean inTransaction = false;
+            while (true) {
+                int c = read();
+                if (c < 0) {
+                    return false;
+                }
+                if (c != '<') {
+                    continue;
+                }
+                String tag = readTag();
+                if (tag.isEmpty() || tag.charAt(0) == '?' || tag.charAt(0) == '!') {
+                    continue;
+                }
+                if (tag.charAt(0) == '/') {
+                    if (inTransaction && "/STMTTRN".equals(tag)) {
+                        emit();
+                        return true;
+                    }
+                    continue;
+                }
+                if ("STMTTRN".equals(tag)) {
+                    inTransaction = true;
+                    values.clear();
+                    recordLine = line;
+                    continue;
+                }
+                String value = readValue();
+                if (value.isEmpty()) {
+                    continue;
+                }
+                if ("CURDEF".equals(tag)) {
+                    currency = value;
+                } else if (inTransaction) {
+                    values.putIfAbsent(tag, value);
+                }
+            }
+        }
+
+        private void emit() {
+            String name = values.get("NAME");
+            String memo = values.get("MEMO");
+            String description = name;
+            if (memo != null && !memo.equals(name)) {
+                description = name != null ? name + " - " + memo : memo;
+            }
+            StatementParser.record(fields, date(values.get("DTPOSTED")), values.get("TRNAMT"), currency, null,
+                description);
+            records++;
+        }
+
+        /** YYYYMMDD[HHMMSS[.XXX]][TZ] 转为 yyyy-MM-dd HH:mm（无时间时为 yyyy-MM-dd） */
+        private static String date(String v) {
+            if (v == null || v.length() < 8) {
+                return v;
+            }
+            String d = v.substring(0, 4) + "-" + v.substring(4, 6) + "-" + v.substring(6, 8);
+            if (v.length() >= 12 && Character.isDigit(v.charAt(8))) {
+                return d + " " + v.substring(8, 10) + ":" + v.substring(10, 12);
+            }
+            return d;
+        }
+
+        /** 读到「>」为止的标签名（大写，去掉属性） */
+        private String readTag() throws IOException {
+            text.setLength(0);
+            int c;
+            while ((c = read()) >= 0 && c != '>') {
+                text.append((char) c);
+            }
+            String tag = text.toString().trim();
+            int space = tag.indexOf(' ');
+            if (space > 0) {
+                tag = tag.substring(0, space);
+            }
+            return tag.toUpperCase(Locale.ROOT);
+        }
+
+        /** 开始标签之后、下一个「<」之前的文本（该「<」留给下次读取） */
+        private String readValue() throws IOException {
+            text.setLength(0);
+            int c;
+            while ((c = read()) >= 0 && c != '<') {
+                text.append((char) c);
+            }
+            if (c == '<') {
+                pushback = c;
+            }
+            return unescape(text.toString().trim());
+        }
+
+        private int read() throws IOException {
+            if (pushback >= 0) {
+                int c = pushback;
+                pushback = -1;
+                return c;
+            }
+            int c = in.read();
+            if (c == '\n') {
+                line++;
+            }
+            return c;
+        }
+
+        private static String unescape(String s) {
+            if (s.indexOf('&') < 0) {
+                return s;
+            }
+            StringBuilder out = new StringBuilder(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                int semi = c == '&' ? s.indexOf(';', i) : -1;
+                if (semi < 0 || semi - i > 10) {
+                    out.append(c);
+                    continue;
+                }
+                String entity = s.substring(i + 1, semi);
+                String replacement = switch (entity) {
+                    case "amp" -> "&";
+                    case "lt" -> "<";
+                    case "gt" -> ">";
+                    case "quot" -> "\"";
+                    case "apos" -> "'";
+                    default -> numericEntity(entity);
+                };
+                if (replacement == null) {
+                    out.append(c);
+                    continue;
+                }
+                out.append(replacement);
+                i = semi;
+            }
+            return out.toString();
+        }
+
+        private static String numericEntity(String entity) {
+            try {
+                if (entity.startsWith("#x") || entity.startsWith("#X")) {
+                    return new String(Character.toChars(Integer.parseInt(entity.substring(2), 16)));
+                }
+                if (entity.startsWith("#")) {
+                    return new String(Character.toChars(Integer.parseInt(entity.substring(1))));
+                }
+            } catch (IllegalArgumentException e) {
+                // 不是合法的字符引用，原样保留
+            }
+            return null;
+        }
+
+        @Override
+        public List<String> fields() {
+            return fields;
+        }
+
+        @Override
+        public int line() {
+            return recordLine;
+        }
+
+        /** 已读取的记录数 */
+        @Override
+        public long offset() {
+            return records;
+        }
+
+        @Override
+        public int nextLine() {
+            return line;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
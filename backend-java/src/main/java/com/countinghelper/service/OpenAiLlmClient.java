@@ -0,0 +1,93 @@
+package com.countinghelper.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.theokanning.openai.client.OpenAiApi;
+import com.theokanning.openai.completion.chat.ChatCompletionChoice;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.completion.chat.ChatMessageRole;
+import com.theokanning.openai.service.OpenAiService;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 调用 OpenAI 的客户端：整个进程共用一个 OpenAiService 及其 OkHttp 连接池，
+ * 连接超时、读取超时（流式输出时为两个片段之间的最长间隔）与整次调用超时均可配置。
+ */
+public class OpenAiLlmClient implements LlmClient {
+
+    private final String model;
+    private final int maxTokens;
+    private final double temperature;
+    private final OpenAiService service;
+
+    public OpenAiLlmClient(String apiKey, String model, int maxTokens, double temperature, Duration connectTimeout,
+                           Duration readTimeout, Duration callTimeout, int maxIdleConnections) {
+        this.model = model;
+        this.maxTokens = maxTokens;
+        this.temperature = temperature;
+        if (apiKey == null || apiKey.isEmpty()) {
+            this.service = null;
+            return;
+        }
+        OkHttpClient client = OpenAiService.defaultClient(apiKey, readTimeout).newBuilder()
+            .connectTimeout(connectTimeout)
+            .callTimeout(callTimeout)
+            .connectionPool(new ConnectionPool(Math.max(1, maxIdleConnections), 5, TimeUnit.MINUTES))
+            .build();
+        ObjectMapper mapper = OpenAiService.defaultObjectMapper();
+        OpenAiApi api = OpenAiService.defaultRetrofit(client, mapper).create(OpenAiApi.class);
+        this.service = new OpenAiService(api, client.dispatcher().executorService());
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return service != null;
+    }
+
+    @Override
+    public String model() {
+        return model;
+    }
+
+    @Override
+    public String complete(String system, String prompt, Consumer<String> onToken) {
+        if (service == null) {
+            throw new RuntimeException("未配置 OpenAI API Key");
+        }
+        ChatCompletionRequest request = ChatCompletionRequest.builder()
+            .model(model)
+            .messages(List.of(
+                new ChatMessage(ChatMessageRole.SYSTEM.value(), system),
+                new ChatMessage(ChatMessageRole.USER.value(), prompt)
+            ))
+            .maxTokens(maxTokens)
+            .temperature(temperature)
+            .stream(true)
+            .build();
+        StringBuilder text = new StringBuilder();
+        service.streamChatCompletion(request).blockingForEach(chunk -> {
+            for (ChatCompletionChoice choice : chunk.getChoices()) {
+                String token = choice.getMessage() != null ? choice.getMessage().getContent() : null;
+                if (token != null && !token.isEmpty()) {
+                    text.append(token);
+                    onToken.accept(token);
+                }
+            }
+        });
+        return text.toString();
+    }
+
+    /** 关闭 OkHttp 的调度线程 */
+    @Override
+    public void shutdown() {
+        if (service != null) {
+            service.shutdownExecutor();
+        }
+    }
+}
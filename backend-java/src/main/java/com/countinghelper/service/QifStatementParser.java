@@ -0,0 +1,246 @@
+package com.countinghelper.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * QIF 对账单：按行读取，首字母为字段代码（D 日期、T/U 金额、P 收付款方、M 备注、L 分类），「^」结束一笔交易。
+ * !Account 块中的 N/T 是账户信息而非交易，跳过；拆分明细（S/E/$）只取整笔金额。
+ * 文本按 UTF-8 解码。日期的月、日顺序由 app.import.qif-date-order（MDY 或 DMY）决定，年份在前时不受影响。
+ * 续传位置为字节偏移，与 CSV 相同。
+ */
+@Service
+@Order(4)
+public class QifStatementParser implements StatementParser {
+
+    @Value("${app.import.qif-date-order:MDY}")
+    private String dateOrder;
+
+    @Override
+    public String format() {
+        return "qif";
+    }
+
+    @Override
+    public boolean matches(byte[] head, int length) {
+        int i = StatementParser.skipBomAndWhitespace(head, length);
+        String start = new String(head, i, Math.min(length - i, 16), StandardCharsets.ISO_8859_1).toUpperCase(Locale.ROOT);
+        return start.startsWith("!TYPE:") || start.startsWith("!ACCOUNT") || start.startsWith("!OPTION");
+    }
+
+    @Override
+    public RecordReader open(Path file, long offset, int nextLine) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        try {
+            in.skipNBytes(offset);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new QifReader(in, offset, Math.max(1, nextLine), "DMY".equalsIgnoreCase(dateOrder));
+    }
+
+    @Override
+    public boolean byteOffsets() {
+        return true;
+    }
+
+    /** 把 QIF 日期（1/15/2024、1/15'24、15.01.24、2024-01-15 等）转为 yyyy-MM-dd；无法识别时原样返回 */
+    static String date(String v, boolean dayFirst) {
+        String[] parts = v.trim().replace('\'', '/').split("\\s*[/.\\-]\\s*");
+        if (parts.length != 3) {
+            return v;
+        }
+        try {
+            int a = Integer.parseInt(parts[0].trim());
+            int b = Integer.parseInt(parts[1].trim());
+            int c = Integer.parseInt(parts[2].trim());
+            int year;
+            int month;
+            int day;
+            if (parts[0].trim().length() == 4) {
+                year = a;
+                month = b;
+                day = c;
+            } else {
+                year = parts[2].trim().length() <= 2 ? (c < 70 ? 2000 + c : 1900 + c) : c;
+                month = dayFirst ? b : a;
+                day = dayFirst ? a : b;
+            }
+            return String.format("%04d-%02d-%02d", year, month, day);
+        } catch (NumberFormatException e) {
+            return v;
+        }
+    }
+
+    private static class QifReader implements RecordReader {
+        private final InputStream in;
+        private final boolean dayFirst;
+        private final byte[] buf = new byte[64 * 1024];
+        private int pos;
+        private int limit;
+        private byte[] lineBuf = new byte[256];
+        private int lineLen;
+
+        private long offset;
+        private long recordEndOffset;
+        private int line;
+        private int recordLine;
+        private boolean inAccount;
+        /** 从文件开头读取时，第一行需要去掉 BOM */
+        private boolean atStart;
+        private final List<String> fields = new ArrayList<>();
+
+        QifReader(InputStream in, long startOffset, int startLine, boolean dayFirst) {
+            this.in = in;
+            this.offset = startOffset;
+            this.recordEndOffset = startOffset;
+            this.line = startLine;
+            this.dayFirst = dayFirst;
+            this.atStart = startOffset == 0;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            String date = null;
+            String amount = null;
+            String payee = null;
+            String memo = null;
+            String category = null;
+            boolean any = false;
+            String s;
+            while ((s = readLine()) != null) {
+                if (s.isEmpty()) {
+                    continue;
+                }
+                char code = s.charAt(0);
+                String value = s.substring(1).trim();
+                if (code == '!') {
+                    String header = value.toUpperCase(Locale.ROOT);
+                    inAccount = header.startsWith("ACCOUNT");
+                    continue;
+                }
+                if (code == '^') {
+                    if (inAccount) {
+                        inAccount = false;
+                        continue;
+                    }
+                    if (!any) {
+                        continue;
+                    }
+                    recordEndOffset = offset;
+                    String description = payee;
+                    if (memo != null && !memo.isEmpty()) {
+                        description = payee != null && !payee.isEmpty() ? payee + " - " + memo : memo;
+                    }
+                    StatementParser.record(fields, date != null ? date(date, dayFirst) : null, amount, null,
+                        category, description);
+                    return true;
+                }
+                if (inAccount) {
+                    continue;
+                }
+                if (!any) {
+                    recordLine = line - 1;
+                    any = true;
+                }
+                switch (code) {
+                    case 'D' -> date = value;
+                    case 'T' -> amount = value;
+                    case 'U' -> {
+                        if (amount == null) {
+                            amount = value;
+                        }
+                    }
+                    case 'P' -> payee = value;
+                    case 'M' -> memo = value;
+                    // [账户名] 表示转账，不是分类
+                    case 'L' -> category = value.startsWith("[") ? null : value;
+                    default -> {
+                        // 其余代码（N 编号、C 核对状态、S/E/$ 拆分等）不导入
+                    }
+                }
+            }
+            return false;
+        }
+
+        /** 读一行（不含换行符，UTF-8 解码）；到末尾返回 null */
+        private String readLine() throws IOException {
+            lineLen = 0;
+            boolean read = false;
+            while (true) {
+                if (pos >= limit) {
+                    limit = in.read(buf, 0, buf.length);
+                    pos = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        break;
+                    }
+                }
+                byte b = buf[pos++];
+                offset++;
+                read = true;
+                if (b == '\n') {
+                    line++;
+                    break;
+                }
+                if (lineLen == lineBuf.length) {
+                    lineBuf = Arrays.copyOf(lineBuf, lineBuf.length * 2);
+                }
+                lineBuf[lineLen++] = b;
+            }
+            if (!read) {
+                return null;
+            }
+            int start = 0;
+            if (atStart) {
+                atStart = false;
+                if (lineLen >= 3 && (lineBuf[0] & 0xFF) == 0xEF && (lineBuf[1] & 0xFF) == 0xBB && (lineBuf[2] & 0xFF) == 0xBF) {
+                    start = 3;
+                }
+            }
+            int end = lineLen;
+            if (end > start && lineBuf[end - 1] == '\r') {
+                end--;
+            }
+            return new String(lineBuf, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public List<String> fields() {
+            return fields;
+        }
+
+        @Override
+        public int line() {
+            return recordLine;
+        }
+
+        /** 当前交易「^」行之后的字节偏移 */
+        @Override
+        public long offset() {
+            return recordEndOffset;
+        }
+
+        @Override
+        public int nextLine() {
+            return line;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.countinghelper.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 导入文件的逐条记录读取器（CSV、XLSX 等），每条记录为一行字段。
+ * {@link #offset()} 是续传位置：重新打开文件并定位到该位置即从下一条记录继续，具体含义由实现决定。
+ */
+public interface RecordReader extends Closeable {
+
+    /** 读取下一条记录；返回 false 表示已到末尾 */
+    boolean next() throws IOException;
+
+    /** 当前记录的字段（未做 trim） */
+    List<String> fields();
+
+    /** 当前记录的行号（从 1 开始），用于错误提示 */
+    int line();
+
+    /** 当前记录之后的续传位置 */
+    long offset();
+
+    /** 下一条记录的行号 */
+    int nextLine();
+
+    /** 续传位置的终点（如总行数），用于计算进度；未知时为 -1 */
+    default long total() {
+        return -1;
+    }
+}
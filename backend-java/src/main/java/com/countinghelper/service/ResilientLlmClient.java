@@ -0,0 +1,171 @@
+package com.countinghelper.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 给 {@link LlmClient} 加上并发上限（bulkhead）与熔断：
+ * <ul>
+ *   <li>同时进行的调用最多 maxConcurrent 个，等待超过 acquireTimeoutMs 的调用直接失败；</li>
+ *   <li>连续失败 failureThreshold 次后熔断 openMillis 毫秒，期间的调用立即失败，不再等待上游超时；
+ *       到期后放行一个试探调用，成功则恢复，失败则继续熔断。</li>
+ * </ul>
+ * 调用方在失败时改用基础分析。取消（客户端断开）不计为失败；被限流拒绝也不计入熔断。
+ */
+public class ResilientLlmClient implements LlmClient {
+
+    private static final Logger log = LoggerFactory.getLogger(ResilientLlmClient.class);
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final LlmClient delegate;
+    private final Semaphore bulkhead;
+    private final int maxConcurrent;
+    private final long acquireTimeoutMs;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    /** 熔断状态，由 this 保护 */
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder shortCircuited = new LongAdder();
+
+    public ResilientLlmClient(LlmClient delegate, int maxConcurrent, long acquireTimeoutMs, int failureThreshold,
+                              long openMillis) {
+        this.delegate = delegate;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.bulkhead = new Semaphore(this.maxConcurrent);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return delegate.isConfigured();
+    }
+
+    @Override
+    public String model() {
+        return delegate.model();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public String complete(String system, String prompt, Consumer<String> onToken) {
+        if (!allow()) {
+            shortCircuited.increment();
+            throw new RuntimeException("AI服务暂时不可用（熔断中）");
+        }
+        boolean acquired;
+        try {
+            acquired = bulkhead.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandonTrial();
+            throw new CancellationException("生成已取消");
+        }
+        if (!acquired) {
+            rejected.increment();
+            abandonTrial();
+            throw new RuntimeException("AI服务繁忙");
+        }
+        calls.increment();
+        try {
+            String text = delegate.complete(system, prompt, onToken);
+            onSuccess();
+            return text;
+        } catch (RuntimeException e) {
+            if (isCancellation(e)) {
+                abandonTrial();
+            } else {
+                failures.increment();
+                onFailure(e);
+            }
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    /** 运行指标：熔断状态、进行中的调用数与调用、失败、限流拒绝、熔断拒绝次数 */
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("model", delegate.model());
+        m.put("configured", delegate.isConfigured());
+        m.put("state", state.name().toLowerCase(Locale.ROOT));
+        m.put("inFlight", maxConcurrent - bulkhead.availablePermits());
+        m.put("maxConcurrent", maxConcurrent);
+        m.put("calls", calls.sum());
+        m.put("failures", failures.sum());
+        m.put("rejected", rejected.sum());
+        m.put("shortCircuited", shortCircuited.sum());
+        return m;
+    }
+
+    /** 熔断期间拒绝；到期后只放行一个试探调用 */
+    private synchronized boolean allow() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                return false;
+            }
+            trialInFlight = true;
+        }
+        return true;
+    }
+
+    private synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("[LLM] Circuit closed");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    private synchronized void onFailure(RuntimeException e) {
+        trialInFlight = false;
+        if (state == State.HALF_OPEN || ++consecutiveFailures >= failureThreshold) {
+            log.warn("[LLM] Circuit opened for {} ms after failure: {}", openMillis, e.getMessage());
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            consecutiveFailures = 0;
+        }
+    }
+
+    /** 调用没有得出结果（取消、被限流）时让出试探名额，不改变熔断状态 */
+    private synchronized void abandonTrial() {
+        trialInFlight = false;
+    }
+
+    private static boolean isCancellation(RuntimeException e) {
+        return e instanceof CancellationException || e.getCause() instanceof InterruptedException
+            || Thread.currentThread().isInterrupted();
+    }
+}
@@ -0,0 +1,131 @@
+package com.countinghelper.service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 导入文件格式的解析器（CSV、XLSX、银行对账单 OFX / QIF / CAMT.053 等）。
+ * 各实现以流的方式逐条读取，把每笔交易转成导入列顺序的一条记录（日期,类型,金额,货币,支付方式,分类,描述），
+ * 由 {@link TransactionImportService} 统一校验为 TransactionRequest 并分块写入。
+ * 实现为 Spring Bean，{@link StatementParsers} 按 @Order 顺序用文件开头的内容识别格式。
+ */
+public interface StatementParser {
+
+    /** 格式名（小写），记录在导入任务中，续传时据此选回解析器 */
+    String format();
+
+    /** 根据文件开头的 length 个字节判断是否为该格式 */
+    boolean matches(byte[] head, int length);
+
+    /**
+     * 打开文件并定位到续传位置 offset（0 为从头读取）；nextLine 为该位置对应的行号。
+     * offset 的含义与 {@link RecordReader#offset()} 一致。
+     */
+    RecordReader open(Path file, long offset, int nextLine) throws IOException;
+
+    /** 续传位置是否为字节偏移（可与文件大小比较得出进度）；否则为已读记录数 */
+    default boolean byteOffsets() {
+        return false;
+    }
+
+    /**
+     * 按导入列顺序组装一条对账单记录：金额带符号，负数为支出；支付方式取「银行卡转账」。
+     * 金额无法解析时原样保留，由导入校验报告错误。
+     */
+    static void record(List<String> out, String date, String signedAmount, String currency, String category,
+                       String description) {
+        String amount = signedAmount != null ? signedAmount.trim().replace(" ", "") : "";
+        boolean negative = amount.startsWith("-");
+        if (negative || amount.startsWith("+")) {
+            amount = amount.substring(1);
+        }
+        try {
+            amount = new BigDecimal(amount.replace(",", "")).toPlainString();
+        } catch (NumberFormatException e) {
+            // 保留原值
+        }
+        out.clear();
+        out.add(date != null ? date : "");
+        out.add(negative ? "支出" : "收入");
+        out.add(amount);
+        out.add(currency != null ? currency : "");
+        out.add("银行卡转账");
+        out.add(category != null ? category : "");
+        out.add(description != null ? description : "");
+    }
+
+    /** 跳过开头的 UTF-8 BOM 与空白，返回第一个有效字节的位置 */
+    static int skipBomAndWhitespace(byte[] head, int length) {
+        int i = 0;
+        if (length >= 3 && (head[0] & 0xFF) == 0xEF && (head[1] & 0xFF) == 0xBB && (head[2] & 0xFF) == 0xBF) {
+            i = 3;
+        }
+        while (i < length && Character.isWhitespace(head[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    /** head 从 at 起是否为 ASCII 文本 text（忽略大小写） */
+    static boolean startsWithIgnoreCase(byte[] head, int length, int at, String text) {
+        if (at < 0 || at + text.length() > length) {
+            return false;
+        }
+        for (int j = 0; j < text.length(); j++) {
+            if (Character.toLowerCase(head[at + j] & 0xFF) != Character.toLowerCase(text.charAt(j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * XML 文档根元素的开始标签（「<」起至「>」，超出 length 时截至末尾）：跳过 BOM、空白、
+     * XML 声明与其他处理指令、注释和 DOCTYPE。开头不是 XML 或前 length 个字节内没有根元素时返回 null
+     */
+    static String rootTag(byte[] head, int length) {
+        int i = skipBomAndWhitespace(head, length);
+        while (i < length && head[i] == '<') {
+            String close;
+            if (startsWithIgnoreCase(head, length, i, "<?")) {
+                close = "?>";
+            } else if (startsWithIgnoreCase(head, length, i, "<!--")) {
+                close = "-->";
+            } else if (startsWithIgnoreCase(head, length, i, "<!")) {
+                close = ">";
+            } else {
+                int end = i + 1;
+                while (end < length && head[end] != '>') {
+                    end++;
+                }
+                return new String(head, i, Math.min(end + 1, length) - i, StandardCharsets.ISO_8859_1);
+            }
+            int end = i + 2;
+            while (end < length && !startsWithIgnoreCase(head, length, end, close)) {
+                end++;
+            }
+            if (end >= length) {
+                return null;
+            }
+            i = end + close.length();
+            while (i < length && Character.isWhitespace(head[i])) {
+                i++;
+            }
+        }
+        return null;
+    }
+
+    /** 开始标签中的元素名，不含命名空间前缀 */
+    static String elementName(String tag) {
+        int end = 1;
+        while (end < tag.length() && !Character.isWhitespace(tag.charAt(end))
+                && tag.charAt(end) != '>' && tag.charAt(end) != '/') {
+            end++;
+        }
+        String name = tag.substring(1, end);
+        return name.substring(name.indexOf(':') + 1);
+    }
+}
@@ -0,0 +1,58 @@
+package com.countinghelper.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 导入格式注册表：按 @Order 顺序依次用文件开头的内容识别格式，CSV 兜底（任意文本）。
+ */
+@Service
+public class StatementParsers {
+
+    /** 用于识别格式的文件开头字节数 */
+    private static final int HEAD_SIZE = 8192;
+
+    @Autowired
+    private List<StatementParser> parsers;
+
+    /** 识别文件格式；无法识别时抛出异常 */
+    public StatementParser detect(Path file) throws IOException {
+        byte[] head = new byte[HEAD_SIZE];
+        int n;
+        try (InputStream in = Files.newInputStream(file)) {
+            n = in.readNBytes(head, 0, head.length);
+        }
+        for (StatementParser parser : parsers) {
+            if (parser.matches(head, n)) {
+                return parser;
+            }
+        }
+        throw new RuntimeException("无法识别的文件格式，支持 CSV、XLSX、OFX、QIF、CAMT.053");
+    }
+
+    /** 按格式名取解析器 */
+    public StatementParser get(String format) {
+        for (StatementParser parser : parsers) {
+            if (parser.format().equals(format)) {
+                return parser;
+            }
+        }
+        throw new RuntimeException("不支持的导入格式：" + format);
+    }
+
+    /** 该格式的续传位置是否为字节偏移；未知格式按字节处理 */
+    public boolean byteOffsets(String format) {
+        for (StatementParser parser : parsers) {
+            if (parser.format().equals(format)) {
+                return parser.byteOffsets();
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,68 @@
+package com.countinghelper.service;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * 本地模拟的客户端（app.llm.provider=stub）：不访问网络，按配置的首片段延迟与片段间隔逐段输出固定文本，
+ * 并按 failure-rate 的概率模拟上游失败，用于在离线环境下压测分析任务、并发上限与熔断。
+ */
+public class StubLlmClient implements LlmClient {
+
+    private static final String TEXT =
+        "【模拟分析】这是本地模拟的大模型输出，不代表真实的财务建议。\n\n" +
+        "1. 收支概况：请参考上方的汇总统计。\n" +
+        "2. 支出结构：请关注支出最多的分类。\n" +
+        "3. 建议：保持记账习惯，定期回顾预算。";
+
+    /** 每个片段的字符数 */
+    private static final int TOKEN_CHARS = 4;
+
+    private final long firstTokenDelayMs;
+    private final long tokenDelayMs;
+    private final double failureRate;
+
+    public StubLlmClient(long firstTokenDelayMs, long tokenDelayMs, double failureRate) {
+        this.firstTokenDelayMs = firstTokenDelayMs;
+        this.tokenDelayMs = tokenDelayMs;
+        this.failureRate = failureRate;
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return true;
+    }
+
+    @Override
+    public String model() {
+        return "stub";
+    }
+
+    @Override
+    public String complete(String system, String prompt, Consumer<String> onToken) {
+        sleep(firstTokenDelayMs);
+        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            throw new RuntimeException("模拟的上游错误");
+        }
+        for (int i = 0; i < TEXT.length(); i += TOKEN_CHARS) {
+            if (i > 0) {
+                sleep(tokenDelayMs);
+            }
+            onToken.accept(TEXT.substring(i, Math.min(TEXT.length(), i + TOKEN_CHARS)));
+        }
+        return TEXT;
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("生成已取消");
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.countinghelper.service;
+
+import com.countinghelper.config.LocalDateTimeSqliteConverter;
+import com.countinghelper.entity.Money;
+import com.countinghelper.entity.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 客户端增量同步。每个用户在 user_sync 中有一个单调递增的版本号，每次写入（一次回调）+1，
+ * 并把新版本写到受影响交易的 change_version 上；删除记为 transaction_tombstones 中的墓碑。
+ * 这些都经 {@link TransactionChangeListener} 在写入所在的事务内完成。
+ * <p>
+ * {@link #changesSince} 按 (change_version, id) 顺序分页返回某版本之后变更的交易与被删除的 id，
+ * 代价与变更条数成正比，与历史总量无关。墓碑保留 app.sync.tombstone-retention-days 天，
+ * 同步点早于已清理的墓碑时返回 reset，客户端需清空本地数据后全量同步。
+ */
+@Service
+@Lazy(false) // 墓碑清理任务需要在启动时注册
+public class SyncService implements TransactionChangeListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SyncService.class);
+    private static final DateTimeFormatter DB_DATETIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final LocalDateTimeSqliteConverter CREATED_AT = new LocalDateTimeSqliteConverter();
+    private static final int MAX_PAGE_SIZE = 2000;
+
+    /** changes 中每行数组的列顺序 */
+    public static final List<String> FIELDS = List.of(
+        "id", "amount", "currency", "amountInGbp", "description", "category",
+        "paymentMethod", "transactionType", "createdAt");
+
+    private static final String PAGE_SQL =
+        "SELECT change_version, id, 0, amount, currency_id, amount_in_gbp, description, category_id," +
+        " payment_method_id, type_id, created_at FROM transactions" +
+        " WHERE user_id = ? AND change_version >= ? AND (change_version > ? OR id > ?)" +
+        " UNION ALL" +
+        " SELECT change_version, transaction_id, 1, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL" +
+        " FROM transaction_tombstones" +
+        " WHERE user_id = ? AND change_version >= ? AND (change_version > ? OR transaction_id > ?)" +
+        " ORDER BY 1, 2 LIMIT ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionLabelService labelService;
+
+    @Value("${app.sync.page-size:500}")
+    private int defaultPageSize;
+
+    @Value("${app.sync.tombstone-retention-days:90}")
+    private int tombstoneRetentionDays;
+
+    /**
+     * 一页变更。hasMore 为 true 时带 cursor 继续请求（since 不变）；读完最后一页后把 version 存为下次的 since。
+     * reset 只在第一页给出。
+     */
+    public static class Changes {
+        public final long version;
+        public final boolean reset;
+        public final boolean hasMore;
+        public final String cursor;
+        public final List<String> fields = FIELDS;
+        public final List<Object[]> changes;
+        public final List<Integer> deleted;
+
+        Changes(long version, boolean reset, boolean hasMore, String cursor, List<Object[]> changes, List<Integer> deleted) {
+            this.version = version;
+            this.reset = reset;
+            this.hasMore = hasMore;
+            this.cursor = cursor;
+            this.changes = changes;
+            this.deleted = deleted;
+        }
+    }
+
+    @Override
+    public void onCreated(Transaction created) {
+        stamp(created.getUserId(), List.of(created.getId()));
+    }
+
+    /** 同一用户的一批新增共用一个版本号 */
+    @Override
+    public void onCreatedAll(List<Transaction> created) {
+        Map<Integer, List<Integer>> byUser = new LinkedHashMap<>();
+        for (Transaction t : created) {
+            byUser.computeIfAbsent(t.getUserId(), k -> new ArrayList<>()).add(t.getId());
+        }
+        byUser.forEach(this::stamp);
+    }
+
+    @Override
+    public void onUpdated(Transaction before, Transaction after) {
+        stamp(after.getUserId(), List.of(after.getId()));
+    }
+
+    @Override
+    public void onDeleted(Transaction deleted) {
+        long version = nextVersion(deleted.getUserId());
+        jdbcTemplate.update(
+            "INSERT INTO transaction_tombstones (user_id, transaction_id, change_version, deleted_at) VALUES (?, ?, ?, ?)",
+            deleted.getUserId(), deleted.getId(), version, LocalDateTime.now().format(DB_DATETIME));
+    }
+
+    /** 用户被删除：版本从头开始，旧客户端的同步点会大于新版本号，从而触发 reset */
+    @Override
+    public void onAllDeleted(Integer userId) {
+        jdbcTemplate.update("DELETE FROM transaction_tombstones WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM user_sync WHERE user_id = ?", userId);
+    }
+
+    /** 改名后该分类下的交易在客户端显示的名称变了，整体记一个新版本 */
+    @Override
+    public void onCategoryRenamed(Integer userId, int fromLabelId, int toLabelId) {
+        jdbcTemplate.update("UPDATE transactions SET change_version = ? WHERE user_id = ? AND category_id = ?",
+            nextVersion(userId), userId, toLabelId);
+    }
+
+    private void stamp(Integer userId, List<Integer> ids) {
+        long version = nextVersion(userId);
+        List<Object[]> args = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            args.add(new Object[] { version, id });
+        }
+        jdbcTemplate.batchUpdate("UPDATE transactions SET change_version = ? WHERE id = ?", args);
+    }
+
+    private long nextVersion(Integer userId) {
+        jdbcTemplate.update(
+            "INSERT INTO user_sync (user_id, version) VALUES (?, 1)" +
+            " ON CONFLICT(user_id) DO UPDATE SET version = version + 1",
+            userId);
+        return jdbcTemplate.queryForObject("SELECT version FROM user_sync WHERE user_id = ?", Long.class, userId);
+    }
+
+    /**
+     * since 之后的变更（since 为 0 表示全量）。同一个只读事务内读取版本号与数据，返回的 version 与数据一致；
+     * 翻页期间发生的写入会以更大的版本号出现在后续页或下一次同步中。
+     */
+    @Transactional(readOnly = true)
+    public Changes changesSince(Integer userId, long since, String cursor, Integer limit) {
+        long[] state = jdbcTemplate.query(
+            "SELECT version, reset_version FROM user_sync WHERE user_id = ?",
+            rs -> rs.next() ? new long[] { rs.getLong(1), rs.getLong(2) } : new long[] { 0, 0 },
+            userId);
+        long version = state[0];
+        long from = Math.max(0, since);
+        boolean reset = false;
+        if (from > 0 && (from < state[1] || from > version)) {
+            reset = true;
+            from = 0;
+        }
+        long afterVersion = from;
+        long afterId = Long.MAX_VALUE;
+        if (cursor != null && !cursor.isEmpty()) {
+            long[] c = decodeCursor(cursor);
+            afterVersion = c[0];
+            afterId = c[1];
+            reset = false;
+        }
+        int size = Math.min(MAX_PAGE_SIZE, Math.max(1, limit != null ? limit : defaultPageSize));
+
+        List<Object[]> rows = jdbcTemplate.query(PAGE_SQL, (rs, i) -> {
+            Object[] row = null;
+            if (rs.getInt(3) == 0) {
+                LocalDateTime createdAt = CREATED_AT.convertToEntityAttribute(rs.getString(11));
+                String currency = labelService.nameOf(userId, rs.getInt(5));
+                row = new Object[] {
+                    rs.getInt(2), Money.toDouble(rs.getLong(4), currency), currency,
+                    Money.toDouble(rs.getLong(6), Money.GBP_SCALE), rs.getString(7),
+                    labelService.nameOf(userId, rs.getInt(8)), labelService.nameOf(userId, rs.getInt(9)),
+                    labelService.nameOf(userId, rs.getInt(10)),
+                    createdAt != null ? createdAt.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) : null
+                };
+            }
+            // {版本, id, 行内容（墓碑为 null）}
+            return new Object[] { rs.getLong(1), rs.getInt(2), row };
+        }, userId, afterVersion, afterVersion, afterId, userId, afterVersion, afterVersion, afterId, size + 1);
+
+        // 多读的一行只用来判断是否还有下一页
+        boolean hasMore = rows.size() > size;
+        if (hasMore) {
+            rows = rows.subList(0, size);
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            Object[] last = rows.get(rows.size() - 1);
+            nextCursor = encodeCursor((Long) last[0], (Integer) last[1]);
+        }
+        // 同一 id 在一页内出现多次（删除后 id 被复用）时以版本较新者为准
+        Map<Integer, Object[]> latest = new LinkedHashMap<>();
+        for (Object[] r : rows) {
+            latest.remove((Integer) r[1]);
+            latest.put((Integer) r[1], (Object[]) r[2]);
+        }
+        List<Object[]> changes = new ArrayList<>();
+        List<Integer> deleted = new ArrayList<>();
+        latest.forEach((id, row) -> {
+            if (row == null) {
+                deleted.add(id);
+            } else {
+                changes.add(row);
+            }
+        });
+        return new Changes(version, reset, hasMore, nextCursor, changes, deleted);
+    }
+
+    /**
+     * 清理超过保留期的墓碑，并把各用户的 reset_version 提到被清理的最大版本：
+     * 同步点早于它的客户端已无法得知这些删除，只能全量同步。
+     */
+    @Scheduled(cron = "${app.sync.tombstone-prune-cron:0 45 4 * * *}")
+    @Transactional
+    public int pruneTombstones() {
+        String cutoff = LocalDateTime.now().minusDays(Math.max(1, tombstoneRetentionDays)).format(DB_DATETIME);
+        jdbcTemplate.update(
+            "UPDATE user_sync SET reset_version = MAX(reset_version," +
+            " (SELECT MAX(change_version) FROM transaction_tombstones t" +
+            "  WHERE t.user_id = user_sync.user_id AND t.deleted_at < ?))" +
+            " WHERE user_id IN (SELECT user_id FROM transaction_tombstones WHERE deleted_at < ?)",
+            cutoff, cutoff);
+        int removed = jdbcTemplate.update("DELETE FROM transaction_tombstones WHERE deleted_at < ?", cutoff);
+        if (removed > 0) {
+            log.info("[Sync] Pruned {} tombstones older than {}", removed, cutoff);
+        }
+        return removed;
+    }
+
+    /** 游标内容：本页最后一行的 (change_version, id)，以 base64url 编码后对客户端不透明 */
+    private static String encodeCursor(long version, int id) {
+        String raw = version + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf('|');
+            return new long[] { Long.parseLong(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)) };
+        } catch (RuntimeException e) {
+            throw new RuntimeException("无效的同步游标");
+        }
+    }
+}
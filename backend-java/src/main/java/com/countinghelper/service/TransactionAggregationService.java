@@ -0,0 +1,187 @@
+package com.countinghelper.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 收支汇总引擎：一次遍历日汇总行，同时得到总计、按日、按支付方式、按分类的收支。
+ * 分组键为整数（日期为 yyyyMMdd，维度为标签 id），经 {@link LongIndexMap} 定位到下标，
+ * 累加值存放在原始类型数组中，遍历过程中不装箱、不为每行分配对象；名称只在输出各分组时解析一次。
+ * 供 AnalysisService 使用；总览统计读 user_stats 计数器，还款周期按日合计累加，都不需要分组。
+ */
+@Service
+public class TransactionAggregationService {
+
+    /** 无日期的行的日期键 */
+    private static final int NO_DAY = -1;
+
+    @Autowired
+    private TransactionLabelService labelService;
+
+    /** 收支合计，金额为英镑便士 */
+    public static final class Totals {
+        public long income;
+        public long expense;
+        public int incomeCount;
+        public int expenseCount;
+
+        public long balance() {
+            return income - expense;
+        }
+    }
+
+    /** 一次汇总的结果；各分组按首次出现的顺序，按日分组按日期升序且不含无日期的行 */
+    public static final class Breakdown {
+        public final Totals total;
+        /** 出现过的日期数（无日期的行算作一天，与逐条统计时一致） */
+        public final int dayCount;
+        public final Map<String, Totals> byDay;
+        public final Map<String, Totals> byPaymentMethod;
+        public final Map<String, Totals> byCategory;
+
+        Breakdown(Totals total, int dayCount, Map<String, Totals> byDay, Map<String, Totals> byPaymentMethod,
+                  Map<String, Totals> byCategory) {
+            this.total = total;
+            this.dayCount = dayCount;
+            this.byDay = byDay;
+            this.byPaymentMethod = byPaymentMethod;
+            this.byCategory = byCategory;
+        }
+
+        /** 平均每日支出（便士，四舍五入） */
+        public long avgDailyExpense() {
+            return dayCount > 0 ? Math.round((double) total.expense / dayCount) : 0;
+        }
+    }
+
+    /** 按下标存放的一组收支累加值 */
+    private static final class Accumulator {
+        final LongIndexMap keys = new LongIndexMap(32);
+        long[] income = new long[32];
+        long[] expense = new long[32];
+        int[] incomeCount = new int[32];
+        int[] expenseCount = new int[32];
+
+        void add(long key, boolean isIncome, long amount, int count) {
+            int i = keys.indexOf(key);
+            if (i == income.length) {
+                income = Arrays.copyOf(income, i * 2);
+                expense = Arrays.copyOf(expense, i * 2);
+                incomeCount = Arrays.copyOf(incomeCount, i * 2);
+                expenseCount = Arrays.copyOf(expenseCount, i * 2);
+            }
+            if (isIncome) {
+                income[i] += amount;
+                incomeCount[i] += count;
+            } else {
+                expense[i] += amount;
+                expenseCount[i] += count;
+            }
+        }
+
+        Totals totals(int i) {
+            Totals t = new Totals();
+            t.income = income[i];
+            t.expense = expense[i];
+            t.incomeCount = incomeCount[i];
+            t.expenseCount = expenseCount[i];
+            return t;
+        }
+    }
+
+    /**
+     * 汇总某用户的日汇总行（可混有由单条交易转换的行）。空的支付方式、分类分别记为 emptyPaymentMethod、emptyCategory。
+     */
+    public Breakdown aggregate(Integer userId, Iterable<DailyRollupService.Row> rows,
+                               String emptyPaymentMethod, String emptyCategory) {
+        Totals total = new Totals();
+        Accumulator days = new Accumulator();
+        Accumulator methods = new Accumulator();
+        Accumulator categories = new Accumulator();
+        for (DailyRollupService.Row r : rows) {
+            boolean income = r.isIncome();
+            if (income) {
+                total.income += r.amountInGbp;
+                total.incomeCount += r.count;
+            } else {
+                total.expense += r.amountInGbp;
+                total.expenseCount += r.count;
+            }
+            days.add(dayKey(r.day), income, r.amountInGbp, r.count);
+            methods.add(r.paymentMethodId, income, r.amountInGbp, r.count);
+            categories.add(r.categoryId, income, r.amountInGbp, r.count);
+        }
+
+        long[] dayKeys = days.keys.keys();
+        Integer[] order = new Integer[dayKeys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(dayKeys[a], dayKeys[b]));
+        Map<String, Totals> byDay = new LinkedHashMap<>();
+        for (int i : order) {
+            if (dayKeys[i] != NO_DAY) {
+                byDay.put(formatDay((int) dayKeys[i]), days.totals(i));
+            }
+        }
+        return new Breakdown(total, dayKeys.length, byDay,
+            byLabel(userId, methods, emptyPaymentMethod), byLabel(userId, categories, emptyCategory));
+    }
+
+    private Map<String, Totals> byLabel(Integer userId, Accumulator acc, String empty) {
+        long[] ids = acc.keys.keys();
+        Map<String, Totals> out = new LinkedHashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            String name = labelService.nameOf(userId, (int) ids[i]);
+            Totals t = acc.totals(i);
+            // 标签已删除等情况下名称为空，与空维度合并
+            out.merge(name != null && !name.isEmpty() ? name : empty, t, (a, b) -> {
+                a.income += b.income;
+                a.expense += b.expense;
+                a.incomeCount += b.incomeCount;
+                a.expenseCount += b.expenseCount;
+                return a;
+            });
+        }
+        return out;
+    }
+
+    /** "yyyy-MM-dd" 转为 yyyyMMdd 整数，不分配对象；格式不符（含空串）为 NO_DAY */
+    static int dayKey(String day) {
+        if (day == null || day.length() != 10 || day.charAt(4) != '-' || day.charAt(7) != '-') {
+            return NO_DAY;
+        }
+        int key = 0;
+        for (int i = 0; i < 10; i++) {
+            if (i == 4 || i == 7) {
+                continue;
+            }
+            int d = day.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                return NO_DAY;
+            }
+            key = key * 10 + d;
+        }
+        return key;
+    }
+
+    static String formatDay(int key) {
+        int y = key / 10000;
+        int m = key / 100 % 100;
+        int d = key % 100;
+        StringBuilder sb = new StringBuilder(10);
+        sb.append(y).append('-');
+        if (m < 10) {
+            sb.append('0');
+        }
+        sb.append(m).append('-');
+        if (d < 10) {
+            sb.append('0');
+        }
+        return sb.append(d).toString();
+    }
+}
@@ -0,0 +1,336 @@
+package com.countinghelper.service;
+
+import com.countinghelper.config.LocalDateTimeSqliteConverter;
+import com.countinghelper.dto.request.TransactionBatchRequest;
+import com.countinghelper.dto.request.TransactionRequest;
+import com.countinghelper.entity.Transaction;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 批量新增 / 修改 / 删除交易。整批在一个写事务（经 {@link GroupCommitWriter}）中执行：
+ * 先按请求顺序逐项校验（字段、目标交易是否存在，同批内先删后改视为不存在），
+ * 再把新增、修改、删除各自合并为一次 batchUpdate。派生数据的变更回调不按请求顺序：新增在插入时合并为一次
+ * {@link TransactionChangeListener#onCreatedAll}，先于全部修改与删除；修改与删除的回调在写入后按请求顺序调用。
+ * <p>
+ * atomic 模式下任一项校验失败则整批不写入，也不新建标签；best-effort 模式下只跳过失败项。
+ * 写入阶段的数据库错误会使整批回滚，两种模式相同。
+ */
+@Service
+public class TransactionBatchService {
+
+    private static final DateTimeFormatter DB_DATETIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final LocalDateTimeSqliteConverter CREATED_AT = new LocalDateTimeSqliteConverter();
+    /** 低于 SQLite 默认的 999 个绑定参数上限 */
+    private static final int IN_CHUNK = 500;
+    private static final String UPDATE_SQL =
+        "UPDATE transactions SET amount = ?, amount_in_gbp = ?, currency_id = ?, description = ?, category_id = ?," +
+        " payment_method_id = ?, type_id = ?, created_at = ?, created_at_epoch = ?, created_day = ?, fingerprint = ?" +
+        " WHERE id = ? AND user_id = ?";
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private GroupCommitWriter groupCommitWriter;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionLabelService labelService;
+
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private List<TransactionChangeListener> changeListeners;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${app.batch.max-operations:500}")
+    private int maxOperations;
+
+    public enum Mode {
+        ATOMIC, BEST_EFFORT;
+
+        public static Mode parse(String value) {
+            if (value == null || value.isBlank()) {
+                return ATOMIC;
+            }
+            try {
+                return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("批量模式无效，可选 atomic、best-effort");
+            }
+        }
+    }
+
+    /** 单项结果：status 为 ok | error | skipped（atomic 模式下因其他项失败而未执行） */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class ItemResult {
+        public final String clientId;
+        public final String op;
+        public String status;
+        public Integer id;
+        public String error;
+
+        ItemResult(String clientId, String op, Integer id) {
+            this.clientId = clientId;
+            this.op = op;
+            this.id = id;
+        }
+    }
+
+    public static class BatchResult {
+        public final String mode;
+        /** 是否有写入（atomic 模式校验失败时为 false） */
+        public final boolean applied;
+        public final int succeeded;
+        public final int failed;
+        public final List<ItemResult> results;
+
+        BatchResult(Mode mode, boolean applied, List<ItemResult> results) {
+            this.mode = mode == Mode.ATOMIC ? "atomic" : "best-effort";
+            this.applied = applied;
+            this.results = results;
+            int ok = 0;
+            int bad = 0;
+            for (ItemResult r : results) {
+                if ("ok".equals(r.status)) {
+                    ok++;
+                } else if ("error".equals(r.status)) {
+                    bad++;
+                }
+            }
+            this.succeeded = ok;
+            this.failed = bad;
+        }
+    }
+
+    public BatchResult apply(Integer userId, TransactionBatchRequest request) {
+        Mode mode = Mode.parse(request.getMode());
+        List<TransactionBatchRequest.Operation> ops = request.getOperations();
+        if (ops == null || ops.isEmpty()) {
+            throw new RuntimeException("批量操作不能为空");
+        }
+        if (ops.size() > maxOperations) {
+            throw new RuntimeException("批量操作最多 " + maxOperations + " 条");
+        }
+        List<String> errors = new ArrayList<>(ops.size());
+        for (TransactionBatchRequest.Operation op : ops) {
+            errors.add(check(op));
+        }
+        return groupCommitWriter.execute(() -> applyInTransaction(userId, mode, ops, errors));
+    }
+
+    /** 不访问数据库的检查，返回错误信息，通过时为 null */
+    private String check(TransactionBatchRequest.Operation op) {
+        String kind = op.getOp() != null ? op.getOp().trim().toLowerCase(Locale.ROOT) : "";
+        if (!kind.equals("create") && !kind.equals("update") && !kind.equals("delete")) {
+            return "操作类型无效，可选 create、update、delete";
+        }
+        if (!kind.equals("create") && op.getId() == null) {
+            return "缺少交易 id";
+        }
+        if (kind.equals("delete")) {
+            return null;
+        }
+        if (op.getData() == null) {
+            return "缺少交易数据";
+        }
+        Set<ConstraintViolation<TransactionRequest>> violations = validator.validate(op.getData());
+        if (violations.isEmpty()) {
+            return null;
+        }
+        Set<String> messages = new TreeSet<>();
+        for (ConstraintViolation<TransactionRequest> v : violations) {
+            messages.add(v.getMessage());
+        }
+        return String.join("；", messages);
+    }
+
+    /** 组提交回滚后会重试，这里不修改入参，每次从头构造结果 */
+    private BatchResult applyInTransaction(Integer userId, Mode mode, List<TransactionBatchRequest.Operation> ops,
+                                           List<String> errors) {
+        // 同一组提交中前面的操作可能还有未刷出的 JPA 修改；先刷出并清空，以下改用 JDBC 读写
+        entityManager.flush();
+        entityManager.clear();
+
+        Map<Integer, Transaction> current = load(userId, ops, errors);
+        List<ItemResult> results = new ArrayList<>(ops.size());
+        Map<Integer, Transaction> updated = new LinkedHashMap<>();
+        List<Integer> deleted = new ArrayList<>();
+        List<TransactionRequest> creates = new ArrayList<>();
+        List<ItemResult> createResults = new ArrayList<>();
+        List<Runnable> events = new ArrayList<>();
+        boolean anyError = false;
+
+        // 先只校验、不写库（包括不新建标签）：atomic 模式下有失败项时直接返回，本事务不留下任何写入
+        Set<Integer> live = new HashSet<>(current.keySet());
+        for (int i = 0; i < ops.size(); i++) {
+            TransactionBatchRequest.Operation op = ops.get(i);
+            ItemResult r = new ItemResult(op.getClientId(), op.getOp(), op.getId());
+            r.error = errors.get(i);
+            results.add(r);
+            if (r.error == null) {
+                String kind = op.getOp().trim().toLowerCase(Locale.ROOT);
+                if (!kind.equals("create") && !live.contains(op.getId())) {
+                    r.error = "交易不存在";
+                } else if (kind.equals("delete")) {
+                    live.remove(op.getId());
+                }
+            }
+            if (r.error != null) {
+                r.status = "error";
+                anyError = true;
+            }
+        }
+
+        if (mode == Mode.ATOMIC && anyError) {
+            for (ItemResult r : results) {
+                if (r.status == null) {
+                    r.status = "skipped";
+                }
+            }
+            return new BatchResult(mode, false, results);
+        }
+
+        for (int i = 0; i < ops.size(); i++) {
+            TransactionBatchRequest.Operation op = ops.get(i);
+            ItemResult r = results.get(i);
+            if (r.error != null) {
+                continue;
+            }
+            String kind = op.getOp().trim().toLowerCase(Locale.ROOT);
+            if (kind.equals("create")) {
+                creates.add(op.getData());
+                createResults.add(r);
+                continue;
+            }
+            Transaction t = current.get(op.getId());
+            if (kind.equals("update")) {
+                Transaction before = TransactionService.copyOf(t);
+                TransactionService.applyRequest(t, op.getData());
+                labelService.bind(t);
+                Transaction after = TransactionService.copyOf(t);
+                updated.put(t.getId(), t);
+                events.add(() -> changeListeners.forEach(l -> l.onUpdated(before, after)));
+            } else {
+                Transaction removed = TransactionService.copyOf(t);
+                current.remove(t.getId());
+                updated.remove(t.getId());
+                deleted.add(t.getId());
+                events.add(() -> changeListeners.forEach(l -> l.onDeleted(removed)));
+            }
+        }
+
+        if (!creates.isEmpty()) {
+            List<Transaction> created = transactionService.insertAll(userId, creates);
+            for (int i = 0; i < created.size(); i++) {
+                createResults.get(i).id = created.get(i).getId();
+            }
+        }
+        if (!updated.isEmpty()) {
+            List<Object[]> args = new ArrayList<>(updated.size());
+            for (Transaction t : updated.values()) {
+                args.add(updateArgs(t));
+            }
+            jdbcTemplate.batchUpdate(UPDATE_SQL, args);
+        }
+        if (!deleted.isEmpty()) {
+            List<Object[]> args = new ArrayList<>(deleted.size());
+            for (Integer id : deleted) {
+                args.add(new Object[] { id, userId });
+            }
+            jdbcTemplate.batchUpdate("DELETE FROM transactions WHERE id = ? AND user_id = ?", args);
+        }
+        for (Runnable event : events) {
+            event.run();
+        }
+        for (ItemResult r : results) {
+            if (r.status == null) {
+                r.status = "ok";
+            }
+        }
+        return new BatchResult(mode, true, results);
+    }
+
+    /** 一次性读出本批修改 / 删除涉及的、属于该用户的交易 */
+    private Map<Integer, Transaction> load(Integer userId, List<TransactionBatchRequest.Operation> ops,
+                                           List<String> errors) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < ops.size(); i++) {
+            Integer id = ops.get(i).getId();
+            if (errors.get(i) == null && id != null && !"create".equalsIgnoreCase(ops.get(i).getOp().trim())) {
+                ids.add(id);
+            }
+        }
+        if (ids.isEmpty()) {
+            return new HashMap<>();
+        }
+        Map<Integer, Transaction> out = new HashMap<>();
+        List<Integer> distinct = new ArrayList<>(new TreeSet<>(ids));
+        for (int from = 0; from < distinct.size(); from += IN_CHUNK) {
+            List<Integer> chunk = distinct.subList(from, Math.min(from + IN_CHUNK, distinct.size()));
+            List<Object> args = new ArrayList<>(chunk.size() + 1);
+            args.add(userId);
+            args.addAll(chunk);
+            jdbcTemplate.query(
+                "SELECT id, user_id, amount, currency_id, amount_in_gbp, description, category_id, payment_method_id," +
+                " type_id, created_at FROM transactions WHERE user_id = ? AND id IN (" +
+                String.join(",", Collections.nCopies(chunk.size(), "?")) + ")",
+                rs -> {
+                    Transaction t = new Transaction(rs.getInt(1), rs.getInt(2), rs.getLong(3), null,
+                        rs.getLong(5), rs.getString(6), null, null, null,
+                        CREATED_AT.convertToEntityAttribute(rs.getString(10)));
+                    t.setCurrencyId(rs.getObject(4, Integer.class));
+                    t.setCategoryId(rs.getObject(7, Integer.class));
+                    t.setPaymentMethodId(rs.getObject(8, Integer.class));
+                    t.setTypeId(rs.getObject(9, Integer.class));
+                    labelService.resolve(t);
+                    out.put(t.getId(), t);
+                },
+                args.toArray());
+        }
+        return out;
+    }
+
+    private static Object[] updateArgs(Transaction t) {
+        return new Object[] {
+            t.getAmountMinor(),
+            t.getAmountInGbpMinor(),
+            t.getCurrencyId(),
+            t.getDescription(),
+            t.getCategoryId(),
+            t.getPaymentMethodId(),
+            t.getTypeId(),
+            t.getCreatedAt() != null ? t.getCreatedAt().format(DB_DATETIME) : null,
+            t.getCreatedAtEpoch(),
+            t.getCreatedDay(),
+            TransactionFingerprint.of(t),
+            t.getId(),
+            t.getUserId()
+        };
+    }
+}
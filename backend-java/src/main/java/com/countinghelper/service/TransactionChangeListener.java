@@ -0,0 +1,43 @@
+package com.countinghelper.service;
+
+import com.countinghelper.entity.Transaction;
+
+import java.util.List;
+
+/**
+ * 交易写入的同步回调：在写入所在的同一事务内调用，用于维护汇总表、索引等派生数据。
+ * 实现类注册为 Spring Bean 即可被 {@link TransactionService} 等写入路径自动调用；
+ * 回调抛出异常会使整个写入回滚。
+ */
+public interface TransactionChangeListener {
+
+    /** 新增一条交易之后（已有 id） */
+    default void onCreated(Transaction created) {
+    }
+
+    /** 批量新增之后（例如导入）；默认逐条调用 onCreated，实现类可合并成更少的语句 */
+    default void onCreatedAll(List<Transaction> created) {
+        for (Transaction t : created) {
+            onCreated(t);
+        }
+    }
+
+    /** 修改一条交易之后；before 为修改前的快照 */
+    default void onUpdated(Transaction before, Transaction after) {
+    }
+
+    /** 删除一条交易之后；deleted 为删除前的内容 */
+    default void onDeleted(Transaction deleted) {
+    }
+
+    /** 某用户的全部交易被删除之后（例如管理员删除用户） */
+    default void onAllDeleted(Integer userId) {
+    }
+
+    /**
+     * 某用户的分类标签改名之后（见 {@link TransactionLabelService#renameCategory}）。toLabelId 与 fromLabelId 不同时
+     * 表示并入了已有的同名标签，原先引用 fromLabelId 的交易已改为引用 toLabelId。
+     */
+    default void onCategoryRenamed(Integer userId, int fromLabelId, int toLabelId) {
+    }
+}
@@ -0,0 +1,670 @@
+package com.countinghelper.service;
+
+import com.countinghelper.entity.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 按用户的列式交易缓存（app.column-cache.enabled）：每个用户的交易按 (时间, id) 升序存成平行的原始类型数组——
+ * 时间为本地时间的 epoch 秒 long[]，金额与英镑金额为最小货币单位 long[]，类型、分类、支付方式、货币为 transaction_labels 的 id
+ * 在该用户内的紧凑编码 int[]，分类改名不影响缓存；描述按该用户内的字典编码存为 int[]，供导出使用。
+ * <p>
+ * 首次使用时从数据库加载；写入经 {@link TransactionChangeListener} 在事务提交后按 id 幂等地应用到已加载的用户，
+ * 回滚的写入不会进入缓存，批量导入则直接让该用户失效、下次重新加载。所有用户合计按估算字节数受 app.column-cache.max-mb
+ * 限制，超出时淘汰最久未使用的用户，单个用户超过上限时不缓存。区间过滤用二分查找定位，汇总在数组上循环，每行不分配对象。
+ * 分析（{@link #rollup}）、还款周期（{@link #dailyTotals}）、导出（{@link #slice}）与交易概况（{@link #summary}）读取该缓存；
+ * 缓存关闭或不可用时各方法返回 null，调用方回退到数据库查询。
+ */
+@Service
+public class TransactionColumnCache implements TransactionChangeListener {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionColumnCache.class);
+    /** 每行占用：id 4 + 时间 8 + 金额 8 + 英镑金额 8 + 四个标签编码 16 + 描述编码 4 */
+    private static final int BYTES_PER_ROW = 48;
+    /** 描述字典每项除字符外的占用：字符串对象、列表槽位与哈希表节点 */
+    private static final int BYTES_PER_TEXT = 96;
+    private static final int SECONDS_PER_DAY = 86400;
+    /** created_at 为空的行，排在最前 */
+    private static final long NO_TIME = Long.MIN_VALUE;
+    /** 一次写入超过该条数时让该用户失效而不是逐条插入数组中间 */
+    private static final int BULK_INVALIDATE = 64;
+    /** 分组键中每个字典编码与日期序号占用的位数 */
+    private static final int CODE_BITS = 12;
+    private static final int DAY_BITS = 16;
+    /** 与 transaction_daily_rollup 主键一致的行顺序 */
+    private static final Comparator<DailyRollupService.Row> ROLLUP_ORDER =
+        Comparator.comparing((DailyRollupService.Row r) -> r.day)
+            .thenComparingInt(r -> r.typeId)
+            .thenComparingInt(r -> r.categoryId)
+            .thenComparingInt(r -> r.paymentMethodId)
+            .thenComparingInt(r -> r.currencyId);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.column-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.column-cache.max-mb:64}")
+    private long maxMb;
+
+    /** 按访问顺序的 LRU；与 writeSeq、totalBytes 一起由 this 保护 */
+    private final LinkedHashMap<Integer, Columns> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /** 每个用户已提交的写入次数；加载期间有写入提交时不安装加载结果 */
+    private final Map<Integer, Long> writeSeq = new HashMap<>();
+    private long totalBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder oversized = new LongAdder();
+
+    /** 一个用户的列式数据；读取持读锁，应用写入持写锁 */
+    static final class Columns {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        /** (维度 << 32 | 标签 id) 到编码的映射，编码即下标 */
+        final LongIndexMap codes = new LongIndexMap(64);
+        /** 描述字典：编码即 texts 的下标，空描述也占一个编码 */
+        final List<String> texts = new ArrayList<>();
+        final Map<String, Integer> textCodes = new HashMap<>();
+        long textBytes;
+        int size;
+        int[] ids;
+        long[] epochs;
+        long[] amounts;
+        long[] amountsGbp;
+        int[] types;
+        int[] categories;
+        int[] methods;
+        int[] currencies;
+        int[] descriptions;
+
+        Columns(int capacity) {
+            allocate(Math.max(16, capacity));
+        }
+
+        private void allocate(int capacity) {
+            ids = ids == null ? new int[capacity] : Arrays.copyOf(ids, capacity);
+            epochs = epochs == null ? new long[capacity] : Arrays.copyOf(epochs, capacity);
+            amounts = amounts == null ? new long[capacity] : Arrays.copyOf(amounts, capacity);
+            amountsGbp = amountsGbp == null ? new long[capacity] : Arrays.copyOf(amountsGbp, capacity);
+            types = types == null ? new int[capacity] : Arrays.copyOf(types, capacity);
+            categories = categories == null ? new int[capacity] : Arrays.copyOf(categories, capacity);
+            methods = methods == null ? new int[capacity] : Arrays.copyOf(methods, capacity);
+            currencies = currencies == null ? new int[capacity] : Arrays.copyOf(currencies, capacity);
+            descriptions = descriptions == null ? new int[capacity] : Arrays.copyOf(descriptions, capacity);
+        }
+
+        /** 标签 id 的编码；空值按 id 0 */
+        int code(int kind, Integer labelId) {
+            return codes.indexOf((long) kind << 32 | (labelId != null ? labelId : 0));
+        }
+
+        /** 描述的字典编码；字典只增不减，改写留下的旧描述随该用户失效或淘汰一起释放 */
+        int text(String description) {
+            Integer code = textCodes.get(description);
+            if (code == null) {
+                code = texts.size();
+                texts.add(description);
+                textCodes.put(description, code);
+                textBytes += BYTES_PER_TEXT + (description != null ? 2L * description.length() : 0);
+            }
+            return code;
+        }
+
+        long bytes() {
+            return (long) ids.length * BYTES_PER_ROW + 24L * codes.size() + textBytes;
+        }
+
+        /** 第一个 (时间, id) 不小于给定值的位置 */
+        int lowerBound(long epoch, int id) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (epochs[mid] < epoch || (epochs[mid] == epoch && ids[mid] < id)) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /** 末尾追加（加载时按顺序读入） */
+        void append(int id, long epoch, long amount, long gbp, int type, int category, int method, int currency,
+                    int description) {
+            if (size == ids.length) {
+                allocate(size + (size >> 1) + 16);
+            }
+            set(size++, id, epoch, amount, gbp, type, category, method, currency, description);
+        }
+
+        /** 按 (时间, id) 插入；同一 id 已存在时先删除（previousEpoch 为其原时间），重复应用同一写入结果不变 */
+        void put(Transaction t, long previousEpoch) {
+            long epoch = epochOf(t.getCreatedAt());
+            remove(t.getId(), previousEpoch);
+            int at = lowerBound(epoch, t.getId());
+            if (size == ids.length) {
+                allocate(size + (size >> 1) + 16);
+            }
+            int tail = size - at;
+            System.arraycopy(ids, at, ids, at + 1, tail);
+            System.arraycopy(epochs, at, epochs, at + 1, tail);
+            System.arraycopy(amounts, at, amounts, at + 1, tail);
+            System.arraycopy(amountsGbp, at, amountsGbp, at + 1, tail);
+            System.arraycopy(types, at, types, at + 1, tail);
+            System.arraycopy(categories, at, categories, at + 1, tail);
+            System.arraycopy(methods, at, methods, at + 1, tail);
+            System.arraycopy(currencies, at, currencies, at + 1, tail);
+            System.arraycopy(descriptions, at, descriptions, at + 1, tail);
+            size++;
+            set(at, t.getId(), epoch, nz(t.getAmountMinor()), nz(t.getAmountInGbpMinor()),
+                code(TransactionLabelService.TYPE, t.getTypeId()), code(TransactionLabelService.CATEGORY, t.getCategoryId()),
+                code(TransactionLabelService.PAYMENT_METHOD, t.getPaymentMethodId()),
+                code(TransactionLabelService.CURRENCY, t.getCurrencyId()), text(t.getDescription()));
+        }
+
+        /** 删除 id；先按时间二分定位，不在预期位置时（时间已变）退回线性查找，不存在则忽略 */
+        void remove(int id, long epochHint) {
+            int at = lowerBound(epochHint, id);
+            if (at >= size || ids[at] != id) {
+                at = -1;
+                for (int i = 0; i < size; i++) {
+                    if (ids[i] == id) {
+                        at = i;
+                        break;
+                    }
+                }
+                if (at < 0) {
+                    return;
+                }
+            }
+            int tail = size - at - 1;
+            System.arraycopy(ids, at + 1, ids, at, tail);
+            System.arraycopy(epochs, at + 1, epochs, at, tail);
+            System.arraycopy(amounts, at + 1, amounts, at, tail);
+            System.arraycopy(amountsGbp, at + 1, amountsGbp, at, tail);
+            System.arraycopy(types, at + 1, types, at, tail);
+            System.arraycopy(categories, at + 1, categories, at, tail);
+            System.arraycopy(methods, at + 1, methods, at, tail);
+            System.arraycopy(currencies, at + 1, currencies, at, tail);
+            System.arraycopy(descriptions, at + 1, descriptions, at, tail);
+            size--;
+        }
+
+        private void set(int i, int id, long epoch, long amount, long gbp, int type, int category, int method,
+                         int currency, int description) {
+            ids[i] = id;
+            epochs[i] = epoch;
+            amounts[i] = amount;
+            amountsGbp[i] = gbp;
+            types[i] = type;
+            categories[i] = category;
+            methods[i] = method;
+            currencies[i] = currency;
+            descriptions[i] = description;
+        }
+    }
+
+    /** 用户交易概况：笔数与最新一条（按时间、id）的 id 与时间 */
+    public static final class Summary {
+        public final int count;
+        public final Integer latestId;
+        public final LocalDateTime latestCreatedAt;
+
+        Summary(int count, Integer latestId, LocalDateTime latestCreatedAt) {
+            this.count = count;
+            this.latestId = latestId;
+            this.latestCreatedAt = latestCreatedAt;
+        }
+    }
+
+    public Summary summary(Integer userId) {
+        Columns c = columns(userId);
+        if (c == null) {
+            return null;
+        }
+        c.lock.readLock().lock();
+        try {
+            if (c.size == 0) {
+                return new Summary(0, null, null);
+            }
+            int last = c.size - 1;
+            long epoch = c.epochs[last];
+            return new Summary(c.size, c.ids[last],
+                epoch == NO_TIME ? null : LocalDateTime.ofEpochSecond(epoch, 0, ZoneOffset.UTC));
+        } finally {
+            c.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * [from, to]（本地时间，含两端，null 表示不限）内的交易按 (日期, 类型, 分类, 支付方式, 货币) 分组，
+     * 与 transaction_daily_rollup 的行同构，顺序与 {@link DailyRollupService#findRows} 相同（按主键各列升序）。
+     * 每行只做数组读取、整数累加与一次哈希定位。
+     */
+    public List<DailyRollupService.Row> rollup(Integer userId, LocalDateTime from, LocalDateTime to) {
+        Columns c = columns(userId);
+        if (c == null) {
+            return null;
+        }
+        long[] keys;
+        long[] labelKeys;
+        long baseDay;
+        long noDay = (1L << DAY_BITS) - 1;
+        long[] amount = new long[64];
+        long[] gbp = new long[64];
+        int[] count = new int[64];
+        c.lock.readLock().lock();
+        try {
+            if (c.codes.size() >= (1 << CODE_BITS)) {
+                return null;
+            }
+            int start = from != null ? c.lowerBound(epochOf(from), Integer.MIN_VALUE) : 0;
+            int end = to != null ? c.lowerBound(epochOf(to) + 1, Integer.MIN_VALUE) : c.size;
+            int firstTimed = start;
+            while (firstTimed < end && c.epochs[firstTimed] == NO_TIME) {
+                firstTimed++;
+            }
+            baseDay = firstTimed < end ? Math.floorDiv(c.epochs[firstTimed], SECONDS_PER_DAY) : 0;
+
+            LongIndexMap groups = new LongIndexMap(64);
+            for (int i = start; i < end; i++) {
+                long epoch = c.epochs[i];
+                long day = epoch == NO_TIME ? noDay : Math.floorDiv(epoch, SECONDS_PER_DAY) - baseDay;
+                if (day >= noDay && epoch != NO_TIME) {
+                    return null;
+                }
+                long key = day << (4 * CODE_BITS)
+                    | (long) c.types[i] << (3 * CODE_BITS)
+                    | (long) c.categories[i] << (2 * CODE_BITS)
+                    | (long) c.methods[i] << CODE_BITS
+                    | c.currencies[i];
+                int g = groups.indexOf(key);
+                if (g == amount.length) {
+                    amount = Arrays.copyOf(amount, g * 2);
+                    gbp = Arrays.copyOf(gbp, g * 2);
+                    count = Arrays.copyOf(count, g * 2);
+                }
+                amount[g] += c.amounts[i];
+                gbp[g] += c.amountsGbp[i];
+                count[g]++;
+            }
+            keys = groups.keys();
+            labelKeys = c.codes.keys();
+        } finally {
+            c.lock.readLock().unlock();
+        }
+
+        long mask = (1L << CODE_BITS) - 1;
+        List<DailyRollupService.Row> rows = new ArrayList<>(keys.length);
+        for (int g = 0; g < keys.length; g++) {
+            long key = keys[g];
+            long day = key >>> (4 * CODE_BITS);
+            rows.add(new DailyRollupService.Row(
+                day == noDay ? "" : LocalDate.ofEpochDay(baseDay + day).toString(),
+                (int) labelKeys[(int) ((key >>> (3 * CODE_BITS)) & mask)],
+                (int) labelKeys[(int) ((key >>> (2 * CODE_BITS)) & mask)],
+                (int) labelKeys[(int) ((key >>> CODE_BITS) & mask)],
+                (int) labelKeys[(int) (key & mask)],
+                amount[g], gbp[g], count[g]));
+        }
+        rows.sort(ROLLUP_ORDER);
+        return rows;
+    }
+
+    /**
+     * [fromDay, toDay]（yyyy-MM-dd，含当天）内按日期分组的收支合计（英镑便士），按日期升序，
+     * 与 {@link DailyRollupService#dailyTotals} 相同。数组按时间有序，同一天的行相邻，顺序扫描一遍即可，只为每天分配一个结果。
+     */
+    public List<DailyRollupService.DayTotals> dailyTotals(Integer userId, String fromDay, String toDay) {
+        Columns c = columns(userId);
+        if (c == null) {
+            return null;
+        }
+        long fromEpoch = LocalDate.parse(fromDay).toEpochDay() * SECONDS_PER_DAY;
+        long toEpoch = (LocalDate.parse(toDay).toEpochDay() + 1) * SECONDS_PER_DAY;
+        List<DailyRollupService.DayTotals> days = new ArrayList<>();
+        c.lock.readLock().lock();
+        try {
+            int end = c.lowerBound(toEpoch, Integer.MIN_VALUE);
+            int income = c.codes.find((long) TransactionLabelService.TYPE << 32 | TransactionLabelService.INCOME);
+            DailyRollupService.DayTotals current = null;
+            long currentDay = Long.MIN_VALUE;
+            for (int i = c.lowerBound(fromEpoch, Integer.MIN_VALUE); i < end; i++) {
+                long day = Math.floorDiv(c.epochs[i], SECONDS_PER_DAY);
+                if (day != currentDay) {
+                    current = new DailyRollupService.DayTotals(LocalDate.ofEpochDay(day).toString());
+                    days.add(current);
+                    currentDay = day;
+                }
+                if (c.types[i] == income) {
+                    current.income += c.amountsGbp[i];
+                    current.incomeCount++;
+                } else {
+                    current.expense += c.amountsGbp[i];
+                    current.expenseCount++;
+                }
+            }
+        } finally {
+            c.lock.readLock().unlock();
+        }
+        return days;
+    }
+
+    /** 导出用的区间快照：按 (时间, id) 升序，与缓存后续的写入无关 */
+    public static final class Slice {
+        public final int size;
+        private final long[] epochs;
+        private final long[] amounts;
+        private final int[] types;
+        private final int[] categories;
+        private final int[] methods;
+        private final int[] currencies;
+        private final int[] descriptions;
+        private final long[] labelKeys;
+        private final String[] texts;
+
+        Slice(Columns c, int start, int end, long[] labelKeys, String[] texts) {
+            this.size = end - start;
+            this.epochs = Arrays.copyOfRange(c.epochs, start, end);
+            this.amounts = Arrays.copyOfRange(c.amounts, start, end);
+            this.types = Arrays.copyOfRange(c.types, start, end);
+            this.categories = Arrays.copyOfRange(c.categories, start, end);
+            this.methods = Arrays.copyOfRange(c.methods, start, end);
+            this.currencies = Arrays.copyOfRange(c.currencies, start, end);
+            this.descriptions = Arrays.copyOfRange(c.descriptions, start, end);
+            this.labelKeys = labelKeys;
+            this.texts = texts;
+        }
+
+        /** 无时间为 null */
+        public LocalDateTime createdAt(int i) {
+            return epochs[i] == NO_TIME ? null : LocalDateTime.ofEpochSecond(epochs[i], 0, ZoneOffset.UTC);
+        }
+
+        /** 最小货币单位 */
+        public long amount(int i) {
+            return amounts[i];
+        }
+
+        /** 以下为 transaction_labels 的 id，空为 0 */
+        public int typeId(int i) {
+            return (int) labelKeys[types[i]];
+        }
+
+        public int categoryId(int i) {
+            return (int) labelKeys[categories[i]];
+        }
+
+        public int paymentMethodId(int i) {
+            return (int) labelKeys[methods[i]];
+        }
+
+        public int currencyId(int i) {
+            return (int) labelKeys[currencies[i]];
+        }
+
+        public String description(int i) {
+            return texts[descriptions[i]];
+        }
+    }
+
+    /**
+     * [from, to]（本地时间，含两端，null 表示不限）内交易的快照。只在读锁内复制该区间的数组，
+     * 调用方之后按需慢慢消费（例如写入客户端），不会拖住提交后应用写入的线程。
+     */
+    public Slice slice(Integer userId, LocalDateTime from, LocalDateTime to) {
+        Columns c = columns(userId);
+        if (c == null) {
+            return null;
+        }
+        c.lock.readLock().lock();
+        try {
+            int start = from != null ? c.lowerBound(epochOf(from), Integer.MIN_VALUE) : 0;
+            int end = to != null ? c.lowerBound(epochOf(to) + 1, Integer.MIN_VALUE) : c.size;
+            return new Slice(c, start, Math.max(start, end), c.codes.keys(), c.texts.toArray(new String[0]));
+        } finally {
+            c.lock.readLock().unlock();
+        }
+    }
+
+    /** 运行指标：已缓存用户数、估算占用与命中、淘汰次数 */
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", enabled);
+        m.put("users", entries.size());
+        m.put("bytes", totalBytes);
+        m.put("maxBytes", maxBytes());
+        m.put("hits", hits.sum());
+        m.put("misses", misses.sum());
+        m.put("evictions", evictions.sum());
+        m.put("oversized", oversized.sum());
+        return m;
+    }
+
+    private long maxBytes() {
+        return Math.max(1, maxMb) * 1024 * 1024;
+    }
+
+    /** 取已缓存的用户数据，没有则加载；加载期间有写入提交或超出上限时只用于本次调用，不放入缓存 */
+    private Columns columns(Integer userId) {
+        if (!enabled) {
+            return null;
+        }
+        long seq;
+        synchronized (this) {
+            Columns cached = entries.get(userId);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            seq = writeSeq.getOrDefault(userId, 0L);
+        }
+        misses.increment();
+        Columns loaded = load(userId);
+        synchronized (this) {
+            Columns cached = entries.get(userId);
+            if (cached != null) {
+                return cached;
+            }
+            if (writeSeq.getOrDefault(userId, 0L) != seq) {
+                return loaded;
+            }
+            long bytes = loaded.bytes();
+            if (bytes > maxBytes()) {
+                oversized.increment();
+                return loaded;
+            }
+            entries.put(userId, loaded);
+            totalBytes += bytes;
+            evictOverBudget();
+            return loaded;
+        }
+    }
+
+    private Columns load(Integer userId) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        return tx.execute(status -> {
+            Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM transactions WHERE user_id = ?", Integer.class, userId);
+            Columns c = new Columns(count != null ? count : 0);
+            // created_at_epoch 为 NULL 的行按 SQLite 规则排在最前，与 NO_TIME 的位置一致
+            jdbcTemplate.query(
+                "SELECT id, created_at_epoch, amount, amount_in_gbp, type_id, category_id, payment_method_id, currency_id," +
+                " description FROM transactions WHERE user_id = ? ORDER BY created_at_epoch, id",
+                rs -> {
+                    long epoch = rs.getLong(2);
+                    if (rs.wasNull()) {
+                        epoch = NO_TIME;
+                    }
+                    c.append(rs.getInt(1), epoch,
+                        rs.getLong(3), rs.getLong(4),
+                        c.code(TransactionLabelService.TYPE, rs.getInt(5)),
+                        c.code(TransactionLabelService.CATEGORY, rs.getInt(6)),
+                        c.code(TransactionLabelService.PAYMENT_METHOD, rs.getInt(7)),
+                        c.code(TransactionLabelService.CURRENCY, rs.getInt(8)),
+                        c.text(rs.getString(9)));
+                },
+                userId);
+            return c;
+        });
+    }
+
+    private void evictOverBudget() {
+        long max = maxBytes();
+        Iterator<Map.Entry<Integer, Columns>> it = entries.entrySet().iterator();
+        while (totalBytes > max && it.hasNext()) {
+            Map.Entry<Integer, Columns> eldest = it.next();
+            totalBytes -= eldest.getValue().bytes();
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    @Override
+    public void onCreated(Transaction created) {
+        Transaction t = TransactionService.copyOf(created);
+        long epoch = epochOf(t.getCreatedAt());
+        afterCommit(t.getUserId(), c -> c.put(t, epoch));
+    }
+
+    @Override
+    public void onCreatedAll(List<Transaction> created) {
+        if (created.size() > BULK_INVALIDATE) {
+            created.stream().map(Transaction::getUserId).distinct().forEach(userId -> afterCommit(userId, null));
+            return;
+        }
+        for (Transaction t : created) {
+            onCreated(t);
+        }
+    }
+
+    @Override
+    public void onUpdated(Transaction before, Transaction after) {
+        Transaction a = TransactionService.copyOf(after);
+        long previous = epochOf(before.getCreatedAt());
+        afterCommit(a.getUserId(), c -> c.put(a, previous));
+    }
+
+    @Override
+    public void onDeleted(Transaction deleted) {
+        int id = deleted.getId();
+        long epoch = epochOf(deleted.getCreatedAt());
+        afterCommit(deleted.getUserId(), c -> c.remove(id, epoch));
+    }
+
+    @Override
+    public void onAllDeleted(Integer userId) {
+        afterCommit(userId, null);
+    }
+
+    /** 仅改名时缓存的 id 不变；并入已有标签时交易的 id 变了，让该用户失效 */
+    @Override
+    public void onCategoryRenamed(Integer userId, int fromLabelId, int toLabelId) {
+        if (fromLabelId != toLabelId) {
+            afterCommit(userId, null);
+        }
+    }
+
+    private interface Change {
+        void apply(Columns c);
+    }
+
+    /** 提交后把写入应用到已缓存的用户；change 为 null 表示让该用户失效 */
+    private void afterCommit(Integer userId, Change change) {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(userId, change);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                apply(userId, change);
+            }
+        });
+    }
+
+    private void apply(Integer userId, Change change) {
+        Columns c;
+        synchronized (this) {
+            writeSeq.merge(userId, 1L, Long::sum);
+            c = entries.get(userId);
+            if (c == null) {
+                return;
+            }
+            if (change == null) {
+                entries.remove(userId);
+                totalBytes -= c.bytes();
+                return;
+            }
+        }
+        long before;
+        long after;
+        c.lock.writeLock().lock();
+        try {
+            before = c.bytes();
+            change.apply(c);
+            after = c.bytes();
+        } catch (RuntimeException e) {
+            log.warn("[ColumnCache] Failed to apply change for user {}, invalidating: {}", userId, e.getMessage());
+            invalidate(userId, c);
+            return;
+        } finally {
+            c.lock.writeLock().unlock();
+        }
+        synchronized (this) {
+            if (entries.get(userId) == c) {
+                totalBytes += after - before;
+                evictOverBudget();
+            }
+        }
+    }
+
+    private synchronized void invalidate(Integer userId, Columns c) {
+        if (entries.get(userId) == c) {
+            entries.remove(userId);
+            totalBytes -= c.bytes();
+        }
+    }
+
+    /** 与 created_at_epoch 列一致（见 {@link Transaction#epochOf}），空时间为 NO_TIME */
+    static long epochOf(LocalDateTime t) {
+        Long epoch = Transaction.epochOf(t);
+        return epoch != null ? epoch : NO_TIME;
+    }
+
+    private static long nz(Long amount) {
+        return amount != null ? amount : 0;
+    }
+}
@@ -0,0 +1,177 @@
+package com.countinghelper.service;
+
+import com.countinghelper.config.LocalDateTimeSqliteConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 导入去重：维护 transactions.fingerprint（迁移 V6，新增与修改时由 {@link TransactionService} 写入，
+ * 存量行启动时回填），并为一次导入构建 {@link Detector}。
+ * <p>
+ * Detector 先把该用户已有的指纹装入内存布隆过滤器，绝大多数新行在内存中即可判定不重复；
+ * 只有「可能重复」时才按 (user_id, fingerprint) 索引回表取出已有交易 id 确认。
+ */
+@Service
+@Lazy(false)
+@DependsOn("schemaMigrator")
+public class TransactionDedupeService implements InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionDedupeService.class);
+    private static final LocalDateTimeSqliteConverter CREATED_AT = new LocalDateTimeSqliteConverter();
+    private static final int BACKFILL_BATCH = 1000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TransactionLabelService labelService;
+
+    /**
+     * 一次导入的重复判定。只与 id 不超过 maxId 的已有交易比较，本次导入写入的行不参与；
+     * 每条已有交易最多与一行匹配，文件中有两笔相同交易而库里只有一笔时，第二笔不算重复；
+     * 续传时上次已匹配过的交易（used）也不再参与匹配。非线程安全，一个导入任务一个实例。
+     */
+    public class Detector {
+        private final Integer userId;
+        private final long maxId;
+        private final BloomFilter bloom;
+        private final Set<Integer> used;
+        private final Map<Long, Deque<Integer>> candidates = new HashMap<>();
+        private int lookups;
+
+        private Detector(Integer userId, long maxId, BloomFilter bloom, Set<Integer> used) {
+            this.userId = userId;
+            this.maxId = maxId;
+            this.bloom = bloom;
+            this.used = used;
+        }
+
+        /** 返回与该指纹重复、且尚未被匹配过的已有交易 id；不重复时返回 null */
+        public Integer match(long fingerprint) {
+            if (!bloom.mightContain(fingerprint)) {
+                return null;
+            }
+            Deque<Integer> ids = candidates.get(fingerprint);
+            if (ids == null) {
+                lookups++;
+                ids = new ArrayDeque<>(readOnly().execute(status -> jdbcTemplate.queryForList(
+                    "SELECT id FROM transactions WHERE user_id = ? AND fingerprint = ? AND id <= ? ORDER BY id",
+                    Integer.class, userId, fingerprint, maxId)));
+                ids.removeIf(used::contains);
+                candidates.put(fingerprint, ids);
+            }
+            return ids.poll();
+        }
+
+        /** 布隆过滤器判定可能重复、实际回表查询的次数 */
+        public int lookups() {
+            return lookups;
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        try {
+            backfill();
+        } catch (DataAccessException e) {
+            log.warn("[Dedupe] Fingerprint backfill failed, existing rows are not checked for duplicates: {}",
+                e.getMostSpecificCause().getMessage());
+        }
+    }
+
+    /** 为 fingerprint 为空的存量交易补算指纹，按 id 分批，每批一个写事务 */
+    private void backfill() {
+        long start = System.currentTimeMillis();
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        int done = 0;
+        int[] lastId = { 0 };
+        while (true) {
+            Integer n = tx.execute(status -> {
+                List<Object[]> batch = jdbcTemplate.query(
+                    "SELECT id, created_at, type_id, amount, currency_id, payment_method_id, description, user_id" +
+                    " FROM transactions WHERE id > ? AND fingerprint IS NULL ORDER BY id LIMIT ?",
+                    (rs, i) -> {
+                        long amount = rs.getLong(4);
+                        Long amountMinor = rs.wasNull() ? null : amount;
+                        Integer userId = rs.getInt(8);
+                        long fp = TransactionFingerprint.of(CREATED_AT.convertToEntityAttribute(rs.getString(2)),
+                            labelService.nameOf(userId, rs.getInt(3)), amountMinor,
+                            labelService.nameOf(userId, rs.getInt(5)), labelService.nameOf(userId, rs.getInt(6)),
+                            rs.getString(7));
+                        return new Object[] { fp, rs.getInt(1) };
+                    },
+                    lastId[0], BACKFILL_BATCH);
+                if (!batch.isEmpty()) {
+                    jdbcTemplate.batchUpdate("UPDATE transactions SET fingerprint = ? WHERE id = ?", batch);
+                    lastId[0] = (Integer) batch.get(batch.size() - 1)[1];
+                }
+                return batch.size();
+            });
+            if (n == null || n == 0) {
+                break;
+            }
+            done += n;
+        }
+        if (done > 0) {
+            log.info("[Dedupe] Backfilled fingerprints: {} rows in {} ms", done, System.currentTimeMillis() - start);
+        }
+    }
+
+    /** 当前该用户最大的交易 id，作为一次导入的比对范围 */
+    public long maxTransactionId(Integer userId) {
+        Long max = readOnly().execute(status -> jdbcTemplate.queryForObject(
+            "SELECT COALESCE(MAX(id), 0) FROM transactions WHERE user_id = ?", Long.class, userId));
+        return max != null ? max : 0;
+    }
+
+    /**
+     * 用该用户 id 不超过 maxId 的交易指纹构建 Detector：先计数确定过滤器大小，再沿 (user_id, fingerprint)
+     * 索引顺序读出全部指纹，不回表。used 为续传前已匹配过的交易 id，首次开始时为空。
+     */
+    public Detector detector(Integer userId, long maxId, Collection<Integer> used) {
+        long start = System.currentTimeMillis();
+        BloomFilter bloom = readOnly().execute(status -> {
+            Long count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM transactions WHERE user_id = ? AND fingerprint IS NOT NULL AND id <= ?",
+                Long.class, userId, maxId);
+            BloomFilter filter = new BloomFilter(count != null ? count : 0, FALSE_POSITIVE_RATE);
+            jdbcTemplate.query(
+                "SELECT fingerprint FROM transactions WHERE user_id = ? AND fingerprint IS NOT NULL AND id <= ?",
+                rs -> {
+                    filter.add(rs.getLong(1));
+                },
+                userId, maxId);
+            return filter;
+        });
+        log.debug("[Dedupe] Built filter for user {} in {} ms", userId, System.currentTimeMillis() - start);
+        return new Detector(userId, maxId, bloom, new HashSet<>(used));
+    }
+
+    private TransactionTemplate readOnly() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        return tx;
+    }
+}
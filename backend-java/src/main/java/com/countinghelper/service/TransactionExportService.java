@@ -1,41 +1,179 @@
 package com.countinghelper.service;
 
+import com.countinghelper.config.LocalDateTimeSqliteConverter;
+import com.countinghelper.entity.Money;
 import com.countinghelper.entity.Transaction;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CreationHelper;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
+import java.time.format.DateTimeParseException;
 
 @Service
 public class TransactionExportService {
 
     private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final LocalDateTimeSqliteConverter CREATED_AT = new LocalDateTimeSqliteConverter();
+    private static final int FETCH_SIZE = 500;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** SXSSF 内存中保留的行数，超出部分写入临时文件 */
+    private static final int EXCEL_WINDOW = 100;
+    private static final int WIDTH_SAMPLE_ROWS = 1000;
+    private static final int MAX_COLUMN_CHARS = 80;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TransactionLabelService labelService;
+
+    @Autowired
+    private TransactionColumnCache columnCache;
+
+    /** 导出的一行；扫描时复用同一个实例，不为每行创建实体 */
+    static final class ExportRow {
+        LocalDateTime createdAt;
+        String transactionType;
+        /** 最小货币单位；hasAmount 为 false 表示库中为 NULL */
+        long amount;
+        boolean hasAmount;
+        String currency;
+        String paymentMethod;
+        String category;
+        String description;
+    }
+
+    interface RowHandler {
+        void accept(ExportRow row) throws IOException;
+    }
 
     /**
-     * Export transactions to CSV (UTF-8 with BOM for Excel compatibility).
+     * 按时间倒序逐行读取该用户的交易，复用同一个行对象处理每一行。
+     * from/to 同时给出时只读该日期范围（含两端），日期不合法时不读任何行，与列表查询行为一致。
+     * 优先取列式缓存中该区间的快照；缓存不可用时在只读事务内用只进游标读数据库，读一行处理一行，内存占用与行数无关。
      */
-    public byte[] exportToCsv(List<Transaction> transactions) {
-        StringBuilder sb = new StringBuilder();
-        // UTF-8 BOM so Excel recognizes encoding
-        sb.append('\uFEFF');
-        sb.append("日期,类型,金额,货币,支付方式,分类,描述\n");
-        for (Transaction t : transactions) {
-            String date = t.getCreatedAt() != null ? t.getCreatedAt().format(DATE_TIME_FORMAT) : "";
-            sb.append(escapeCsv(date)).append(",");
-            sb.append(escapeCsv(t.getTransactionType())).append(",");
-            sb.append(t.getAmount() != null ? t.getAmount() : "").append(",");
-            sb.append(escapeCsv(t.getCurrency())).append(",");
-            sb.append(escapeCsv(t.getPaymentMethod())).append(",");
-            sb.append(escapeCsv(t.getCategory())).append(",");
-            sb.append(escapeCsv(t.getDescription())).append("\n");
+    void scan(Integer userId, String from, String to, RowHandler handler) throws IOException {
+        String sql = "SELECT created_at, type_id, amount, currency_id, payment_method_id, category_id, description" +
+            " FROM transactions WHERE user_id = ?";
+        LocalDateTime rangeFrom = null;
+        LocalDateTime rangeTo = null;
+        if (from != null && !from.isEmpty() && to != null && !to.isEmpty()) {
+            try {
+                rangeFrom = LocalDateTime.parse(from + "T00:00:00");
+                rangeTo = LocalDateTime.parse(to + "T23:59:59");
+            } catch (DateTimeParseException e) {
+                return;
+            }
+            sql += " AND created_at_epoch BETWEEN ? AND ?";
+        }
+        TransactionColumnCache.Slice slice = columnCache.slice(userId, rangeFrom, rangeTo);
+        if (slice != null) {
+            scan(userId, slice, handler);
+            return;
+        }
+        String query = sql + " ORDER BY created_at_epoch DESC, id DESC";
+        Long rangeStart = Transaction.epochOf(rangeFrom);
+        Long rangeEnd = Transaction.epochOf(rangeTo);
+        ExportRow row = new ExportRow();
+        RowCallbackHandler callback = rs -> {
+            row.createdAt = CREATED_AT.convertToEntityAttribute(rs.getString(1));
+            row.transactionType = labelService.nameOf(userId, rs.getInt(2));
+            row.amount = rs.getLong(3);
+            row.hasAmount = !rs.wasNull();
+            row.currency = labelService.nameOf(userId, rs.getInt(4));
+            row.paymentMethod = labelService.nameOf(userId, rs.getInt(5));
+            row.category = labelService.nameOf(userId, rs.getInt(6));
+            row.description = rs.getString(7);
+            try {
+                handler.accept(row);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        try {
+            tx.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(FETCH_SIZE);
+                ps.setInt(1, userId);
+                if (rangeStart != null) {
+                    ps.setLong(2, rangeStart);
+                    ps.setLong(3, rangeEnd);
+                }
+                return ps;
+            }, callback));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /** 缓存快照按 (时间, id) 升序，倒序遍历即与数据库路径的 ORDER BY created_at_epoch DESC, id DESC 相同 */
+    private void scan(Integer userId, TransactionColumnCache.Slice slice, RowHandler handler) throws IOException {
+        ExportRow row = new ExportRow();
+        // amount 列为 NOT NULL，缓存中没有空金额
+        row.hasAmount = true;
+        for (int i = slice.size - 1; i >= 0; i--) {
+            row.createdAt = slice.createdAt(i);
+            row.transactionType = labelService.nameOf(userId, slice.typeId(i));
+            row.amount = slice.amount(i);
+            row.currency = labelService.nameOf(userId, slice.currencyId(i));
+            row.paymentMethod = labelService.nameOf(userId, slice.paymentMethodId(i));
+            row.category = labelService.nameOf(userId, slice.categoryId(i));
+            row.description = slice.description(i);
+            handler.accept(row);
         }
-        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 流式导出 CSV（UTF-8 带 BOM 便于 Excel 识别编码），边读边写到 out，复用同一个行缓冲区。
+     * 不关闭 out，由调用方负责。
+     */
+    public void writeCsv(Integer userId, String from, String to, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        // UTF-8 BOM so Excel recognizes encoding
+        writer.write('\uFEFF');
+        writer.write("日期,类型,金额,货币,支付方式,分类,描述\n");
+        StringBuilder line = new StringBuilder(256);
+        scan(userId, from, to, row -> {
+            line.setLength(0);
+            String date = row.createdAt != null ? row.createdAt.format(DATE_TIME_FORMAT) : "";
+            line.append(escapeCsv(date)).append(",");
+            line.append(escapeCsv(row.transactionType)).append(",");
+            if (row.hasAmount) {
+                line.append(Money.format(row.amount, row.currency));
+            }
+            line.append(",");
+            line.append(escapeCsv(row.currency)).append(",");
+            line.append(escapeCsv(row.paymentMethod)).append(",");
+            line.append(escapeCsv(row.category)).append(",");
+            line.append(escapeCsv(row.description)).append("\n");
+            writer.append(line);
+        });
+        writer.flush();
     }
 
     private static String escapeCsv(String value) {
@@ -47,33 +185,77 @@ public class TransactionExportService {
     }
 
     /**
-     * Export transactions to Excel (.xlsx).
+     * 流式导出 Excel（.xlsx）：SXSSF 只在内存中保留最近 EXCEL_WINDOW 行，其余行写入压缩临时文件，
+     * 日期、金额为带格式的日期/数值单元格。列宽按表头与前 WIDTH_SAMPLE_ROWS 行的字符宽度估算，
+     * 不再逐列 autoSizeColumn。直接写入 out，不关闭 out。
      */
-    public byte[] exportToExcel(List<Transaction> transactions) throws Exception {
-        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+    public void writeExcel(Integer userId, String from, String to, OutputStream out) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(EXCEL_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try {
             Sheet sheet = workbook.createSheet("交易记录");
-            Row headerRow = sheet.createRow(0);
+            CreationHelper helper = workbook.getCreationHelper();
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(helper.createDataFormat().getFormat("yyyy-mm-dd hh:mm"));
+            CellStyle amountStyle = workbook.createCellStyle();
+            amountStyle.setDataFormat(helper.createDataFormat().getFormat("0.00"));
+
             String[] headers = {"日期", "类型", "金额", "货币", "支付方式", "分类", "描述"};
+            int[] widths = new int[headers.length];
+            Row headerRow = sheet.createRow(0);
             for (int i = 0; i < headers.length; i++) {
                 headerRow.createCell(i).setCellValue(headers[i]);
+                widths[i] = displayWidth(headers[i]);
             }
-            int rowNum = 1;
-            for (Transaction t : transactions) {
-                Row row = sheet.createRow(rowNum++);
-                row.createCell(0).setCellValue(t.getCreatedAt() != null ? t.getCreatedAt().format(DATE_TIME_FORMAT) : "");
-                row.createCell(1).setCellValue(t.getTransactionType() != null ? t.getTransactionType() : "");
-                row.createCell(2).setCellValue(t.getAmount() != null ? t.getAmount() : 0);
-                row.createCell(3).setCellValue(t.getCurrency() != null ? t.getCurrency() : "");
-                row.createCell(4).setCellValue(t.getPaymentMethod() != null ? t.getPaymentMethod() : "");
-                row.createCell(5).setCellValue(t.getCategory() != null ? t.getCategory() : "");
-                row.createCell(6).setCellValue(t.getDescription() != null ? t.getDescription() : "");
-            }
-            // Auto-size columns (optional, can be slow for large data)
-            for (int i = 0; i < headers.length; i++) {
-                sheet.autoSizeColumn(i);
+            // 日期、金额按格式化后的长度计
+            widths[0] = Math.max(widths[0], "yyyy-mm-dd hh:mm".length());
+            int[] rowNum = {1};
+            scan(userId, from, to, t -> {
+                int r = rowNum[0]++;
+                Row row = sheet.createRow(r);
+                Cell date = row.createCell(0);
+                if (t.createdAt != null) {
+                    date.setCellValue(t.createdAt);
+                    date.setCellStyle(dateStyle);
+                }
+                row.createCell(1).setCellValue(t.transactionType != null ? t.transactionType : "");
+                Cell amount = row.createCell(2);
+                amount.setCellValue(t.hasAmount ? Money.toDouble(t.amount, t.currency) : 0);
+                amount.setCellStyle(amountStyle);
+                row.createCell(3).setCellValue(t.currency != null ? t.currency : "");
+                row.createCell(4).setCellValue(t.paymentMethod != null ? t.paymentMethod : "");
+                row.createCell(5).setCellValue(t.category != null ? t.category : "");
+                row.createCell(6).setCellValue(t.description != null ? t.description : "");
+                if (r <= WIDTH_SAMPLE_ROWS) {
+                    widths[1] = Math.max(widths[1], displayWidth(t.transactionType));
+                    widths[2] = Math.max(widths[2], (t.hasAmount ? Money.format(t.amount, t.currency) : "0.00").length());
+                    widths[3] = Math.max(widths[3], displayWidth(t.currency));
+                    widths[4] = Math.max(widths[4], displayWidth(t.paymentMethod));
+                    widths[5] = Math.max(widths[5], displayWidth(t.category));
+                    widths[6] = Math.max(widths[6], displayWidth(t.description));
+                }
+            });
+            for (int i = 0; i < widths.length; i++) {
+                sheet.setColumnWidth(i, Math.min(MAX_COLUMN_CHARS, widths[i] + 2) * 256);
             }
             workbook.write(out);
-            return out.toByteArray();
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    /** 估算显示宽度（字符数）：中日韩等全角字符按 2 个字符计 */
+    private static int displayWidth(String s) {
+        if (s == null) {
+            return 0;
+        }
+        int width = 0;
+        for (int i = 0; i < s.length(); ) {
+            int cp = s.codePointAt(i);
+            i += Character.charCount(cp);
+            width += Character.isIdeographic(cp) || (cp >= 0xFF00 && cp <= 0xFFEF) || (cp >= 0x3000 && cp <= 0x30FF) ? 2 : 1;
         }
+        return width;
     }
 }
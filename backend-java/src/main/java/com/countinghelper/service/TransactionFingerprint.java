@@ -0,0 +1,63 @@
+package com.countinghelper.service;
+
+import com.countinghelper.entity.Transaction;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * 交易内容指纹：对 (时间到分钟, 类型, 金额的最小货币单位, 货币, 支付方式, 描述) 归一化后计算 64 位哈希，
+ * 存在 transactions.fingerprint 列，用于导入时识别重复行。
+ * <p>
+ * 时间只取到分钟，因为导出的 CSV 不含秒，重新导入后秒数会丢失；分类不参与，用户常在导入后改分类。
+ */
+public final class TransactionFingerprint {
+
+    private static final DateTimeFormatter MINUTE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private TransactionFingerprint() {
+    }
+
+    public static long of(Transaction t) {
+        return of(t.getCreatedAt(), t.getTransactionType(), t.getAmountMinor(), t.getCurrency(),
+            t.getPaymentMethod(), t.getDescription());
+    }
+
+    public static long of(LocalDateTime createdAt, String transactionType, Long amountMinor, String currency,
+                          String paymentMethod, String description) {
+        long h = FNV_OFFSET;
+        h = mix(h, createdAt != null ? createdAt.format(MINUTE) : "");
+        h = mix(h, norm(transactionType));
+        h = mix(h, amountMinor != null ? Long.toString(amountMinor) : "");
+        h = mix(h, norm(currency).toUpperCase(Locale.ROOT));
+        h = mix(h, norm(paymentMethod));
+        h = mix(h, norm(description));
+        return finish(h);
+    }
+
+    /** FNV-1a 累加一个字段，字段之间以 0x1F 分隔 */
+    private static long mix(long h, String field) {
+        for (byte b : field.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= FNV_PRIME;
+        }
+        h ^= 0x1F;
+        h *= FNV_PRIME;
+        return h;
+    }
+
+    /** splitmix64 收尾，使各比特分布均匀（布隆过滤器直接取其比特位） */
+    static long finish(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static String norm(String s) {
+        return s != null ? s.trim() : "";
+    }
+}
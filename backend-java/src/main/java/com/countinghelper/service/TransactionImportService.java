@@ -1,97 +1,359 @@
 package com.countinghelper.service;
 
 import com.countinghelper.dto.request.TransactionRequest;
+import com.countinghelper.entity.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
 
 /**
- * 解析 CSV（与导出格式一致：日期,类型,金额,货币,支付方式,分类,描述）并导入为交易。
+ * 把导入文件（CSV、XLSX 与银行对账单，见 {@link StatementParser}）逐条转成导入列
+ * （日期,类型,金额,货币,支付方式,分类,描述）的记录，校验后导入为交易。
+ * 通过 {@link RecordReader} 以流的方式逐条读取记录，各格式共用同一套校验与写入流程；校验通过的行按 app.import.batch-size 分块，每块一个写事务批量插入。
+ * 与已有交易内容相同（见 {@link TransactionFingerprint}）的行按 {@link DuplicateMode} 跳过、标记或照常导入。
  */
 @Service
 public class TransactionImportService {
 
+    private static final Logger log = LoggerFactory.getLogger(TransactionImportService.class);
+
     private static final DateTimeFormatter IMPORT_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
-    private static final DateTimeFormatter IMPORT_DATE_ONLY = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-    private static final Pattern HEADER_PATTERN = Pattern.compile("^[\uFEFF]?日期,类型,金额,货币,支付方式,分类,描述");
+    private static final List<String> HEADER = List.of("日期", "类型", "金额", "货币", "支付方式", "分类", "描述");
+    /** 错误明细最多保留的条数，其余只计数 */
+    static final int MAX_ERRORS = 1000;
 
     @Autowired
     private TransactionService transactionService;
 
+    @Autowired
+    private TransactionDedupeService dedupeService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.import.batch-size:1000}")
+    private int batchSize;
+
+    /** 与已有交易重复的行如何处理 */
+    public enum DuplicateMode {
+        /** 不导入，记入 duplicates */
+        SKIP,
+        /** 照常导入，并在 duplicate_of 记下与之重复的已有交易 id */
+        FLAG,
+        /** 不做重复检查 */
+        FORCE;
+
+        /** 解析 skip / flag / force（忽略大小写），为空时取 SKIP */
+        public static DuplicateMode parse(String value) {
+            if (value == null || value.isBlank()) {
+                return SKIP;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("重复处理方式无效，可选 skip、flag、force");
+            }
+        }
+    }
+
     public static class ImportResult {
         public int imported;
         public int failed;
         public List<String> errors = new ArrayList<>();
+        /** 与已有交易重复的行数（skip 为跳过的行，flag 为已导入并标记的行） */
+        public int duplicates;
+        public List<String> duplicateRows = new ArrayList<>();
+
+        void error(String message) {
+            failed++;
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(message);
+            }
+        }
+
+        void duplicate(String message) {
+            duplicates++;
+            if (duplicateRows.size() < MAX_ERRORS) {
+                duplicateRows.add(message);
+            }
+        }
+
+        void finish() {
+            int omitted = failed - errors.size();
+            if (omitted > 0) {
+                errors.add("另有 " + omitted + " 条错误未列出");
+            }
+            int omittedDuplicates = duplicates - duplicateRows.size();
+            if (omittedDuplicates > 0) {
+                duplicateRows.add("另有 " + omittedDuplicates + " 条重复未列出");
+            }
+        }
+    }
+
+    /** 导入断点：每块数据写入时在同一写事务内调用 */
+    public interface Progress {
+        /** offset/nextLine 为已处理到的位置（下一条记录的起点），result 为截至该位置的累计结果 */
+        void checkpoint(long offset, int nextLine, ImportResult result);
+
+        /** 续传前已匹配为重复的已有交易 id，重建的 Detector 不再用它们匹配 */
+        default Collection<Integer> matchedBefore() {
+            return List.of();
+        }
+
+        /** 在 checkpoint 之前、同一写事务内调用：截至该断点新匹配为重复的已有交易 id（不为空） */
+        default void matched(List<Integer> transactionIds) {
+        }
+
+        /** 返回 true 时在下一条记录前停止（抛出 CancellationException），未写入的行会在续传时重新读取 */
+        default boolean shouldStop() {
+            return false;
+        }
     }
 
     /**
-     * 解析 CSV 并为当前用户创建交易。CSV 首行为表头（可带 BOM），与导出格式一致。
+     * 待写入的一块：请求与其行号、结束位置、标记的重复 id（无则为 null）一一对应。
+     * matched 为匹配到的已有交易 id（跳过与标记的都算），matchedAt 为其后第一条待写入行的下标，
+     * 随覆盖该行的断点一起写入；前 saved 个已写入。
      */
-    public ImportResult importCsvForUser(int userId, byte[] csvBytes) {
-        ImportResult result = new ImportResult();
-        String content = new String(csvBytes, StandardCharsets.UTF_8);
-        String[] lines = content.split("\\r?\\n");
-        int lineNum = 0;
-        for (String line : lines) {
-            lineNum++;
-            line = line.trim();
-            if (line.isEmpty()) continue;
-            if (HEADER_PATTERN.matcher(line).matches()) continue;
-            String[] fields = parseCsvLine(line);
-            if (fields.length < 5) {
-                result.failed++;
-                result.errors.add("第" + lineNum + "行：列数不足");
-                continue;
+    private static class Chunk {
+        final List<TransactionRequest> requests = new ArrayList<>();
+        final List<Integer> lines = new ArrayList<>();
+        final List<Long> endOffsets = new ArrayList<>();
+        final List<Integer> nextLines = new ArrayList<>();
+        final List<Integer> duplicateOf = new ArrayList<>();
+        final List<Integer> matched = new ArrayList<>();
+        final List<Integer> matchedAt = new ArrayList<>();
+        int saved;
+
+        void add(TransactionRequest request, int line, long endOffset, int nextLine, Integer duplicate) {
+            requests.add(request);
+            lines.add(line);
+            endOffsets.add(endOffset);
+            nextLines.add(nextLine);
+            duplicateOf.add(duplicate);
+        }
+
+        /** 在该行 add 之前调用（跳过的行不 add，归到下一条待写入行） */
+        void match(Integer transactionId) {
+            matched.add(transactionId);
+            matchedAt.add(requests.size());
+        }
+
+        /** 下标不超过 i 的行之前（含该行）匹配到的交易数 */
+        int matchedThrough(int i) {
+            int end = saved;
+            while (end < matched.size() && matchedAt.get(end) <= i) {
+                end++;
             }
-            String dateStr = fields.length > 0 ? fields[0].trim() : "";
-            String typeStr = fields.length > 1 ? fields[1].trim() : "";
-            String amountStr = fields.length > 2 ? fields[2].trim() : "";
-            String currencyStr = fields.length > 3 ? fields[3].trim() : "";
-            String paymentStr = fields.length > 4 ? fields[4].trim() : "";
-            String categoryStr = fields.length > 5 ? fields[5].trim() : "";
-            String descStr = fields.length > 6 ? fields[6].trim() : "";
-
-            if (!"收入".equals(typeStr) && !"支出".equals(typeStr)) {
-                result.failed++;
-                result.errors.add("第" + lineNum + "行：类型须为「收入」或「支出」");
-                continue;
+            return end;
+        }
+
+        int size() {
+            return requests.size();
+        }
+
+        /** 末尾被跳过、或所在行写入失败而尚未写入的匹配留到下一块，随其第一个断点写入 */
+        void clear() {
+            requests.clear();
+            lines.clear();
+            endOffsets.clear();
+            nextLines.clear();
+            duplicateOf.clear();
+            matched.subList(0, saved).clear();
+            matchedAt.clear();
+            matchedAt.addAll(Collections.nCopies(matched.size(), 0));
+            saved = 0;
+        }
+    }
+
+    /**
+     * 从 reader 的当前位置继续导入，结果累加到 result（续传时为上次断点的累计值），不追加汇总行。
+     * 重复检查只与 id 不超过 dedupeMaxId 的已有交易比较（续传时沿用首次开始时的值，本任务已写入的行不算重复）。
+     * progress 不为 null 时每块数据与其断点在同一事务内提交，中断后从断点续传不会重复导入。
+     */
+    public ImportResult importRecords(int userId, RecordReader reader, ImportResult result, DuplicateMode mode,
+                                      long dedupeMaxId, Progress progress) throws IOException {
+        TransactionDedupeService.Detector detector =
+            mode != DuplicateMode.FORCE
+                ? dedupeService.detector(userId, dedupeMaxId, progress != null ? progress.matchedBefore() : List.of())
+                : null;
+        Chunk chunk = new Chunk();
+        int size = Math.max(1, batchSize);
+        int duplicatesBefore = result.duplicates;
+        while (true) {
+            if (progress != null && progress.shouldStop()) {
+                throw new CancellationException("导入已暂停");
             }
-            double amount;
-            try {
-                amount = Double.parseDouble(amountStr.replace(",", ""));
-            } catch (NumberFormatException e) {
-                result.failed++;
-                result.errors.add("第" + lineNum + "行：金额无效");
+            if (!reader.next()) {
+                break;
+            }
+            TransactionRequest req = toRequest(reader.fields(), reader.line(), result);
+            if (req == null) {
                 continue;
             }
-            if (currencyStr.isEmpty()) currencyStr = "GBP";
-            if (paymentStr.isEmpty()) paymentStr = "银行卡转账";
+            Integer duplicate = null;
+            if (detector != null) {
+                duplicate = detector.match(TransactionFingerprint.of(TransactionService.newTransaction(userId, req)));
+                if (duplicate != null) {
+                    chunk.match(duplicate);
+                }
+                if (duplicate != null && mode == DuplicateMode.SKIP) {
+                    result.duplicate("第" + reader.line() + "行：与已有交易 #" + duplicate + " 重复，已跳过");
+                    continue;
+                }
+                if (duplicate != null) {
+                    result.duplicate("第" + reader.line() + "行：疑似与已有交易 #" + duplicate + " 重复，已导入并标记");
+                }
+            }
+            chunk.add(req, reader.line(), reader.offset(), reader.nextLine(), duplicate);
+            if (chunk.size() >= size) {
+                flush(userId, chunk, result, progress);
+            }
+        }
+        flush(userId, chunk, result, progress);
+        if (detector != null) {
+            log.debug("[Import] user={} mode={} duplicates={} index lookups={}", userId, mode,
+                result.duplicates - duplicatesBefore, detector.lookups());
+        }
+        return result;
+    }
+
+    /**
+     * 校验一条记录并转为请求；空行与表头返回 null，校验失败时记入 result 并返回 null。
+     */
+    private static TransactionRequest toRequest(List<String> fields, int lineNum, ImportResult result) {
+        if (isBlank(fields) || isHeader(fields)) {
+            return null;
+        }
+        if (fields.size() < 5) {
+            result.error("第" + lineNum + "行：列数不足");
+            return null;
+        }
+        String dateStr = fields.get(0).trim();
+        String typeStr = fields.get(1).trim();
+        String amountStr = fields.get(2).trim();
+        String currencyStr = fields.get(3).trim();
+        String paymentStr = fields.get(4).trim();
+        String categoryStr = fields.size() > 5 ? fields.get(5).trim() : "";
+        String descStr = fields.size() > 6 ? fields.get(6).trim() : "";
 
-            TransactionRequest req = new TransactionRequest();
-            req.setAmount(amount);
-            req.setCurrency(currencyStr);
-            req.setPaymentMethod(paymentStr);
-            req.setTransactionType(typeStr);
-            req.setCategory(categoryStr.isEmpty() ? null : categoryStr);
-            req.setDescription(descStr.isEmpty() ? null : descStr);
-            String createdAt = parseDateForRequest(dateStr);
-            req.setCreatedAt(createdAt);
+        if (!"收入".equals(typeStr) && !"支出".equals(typeStr)) {
+            result.error("第" + lineNum + "行：类型须为「收入」或「支出」");
+            return null;
+        }
+        double amount;
+        try {
+            amount = Double.parseDouble(amountStr.replace(",", ""));
+        } catch (NumberFormatException e) {
+            result.error("第" + lineNum + "行：金额无效");
+            return null;
+        }
+        if (currencyStr.isEmpty()) currencyStr = "GBP";
+        if (paymentStr.isEmpty()) paymentStr = "银行卡转账";
 
-            try {
-                transactionService.createTransaction(userId, req);
+        TransactionRequest req = new TransactionRequest();
+        req.setAmount(amount);
+        req.setCurrency(currencyStr);
+        req.setPaymentMethod(paymentStr);
+        req.setTransactionType(typeStr);
+        req.setCategory(categoryStr.isEmpty() ? null : categoryStr);
+        req.setDescription(descStr.isEmpty() ? null : descStr);
+        req.setCreatedAt(parseDateForRequest(dateStr));
+        return req;
+    }
+
+    /**
+     * 整块写入；失败时逐条重试，把错误定位到具体行。计数先加后写，使断点记录的是提交后的值，失败时再扣回。
+     * 已匹配的交易 id 随覆盖其所在行的断点写入，提交后才算已写入。
+     */
+    private void flush(int userId, Chunk chunk, ImportResult result, Progress progress) {
+        int n = chunk.size();
+        if (n == 0) {
+            return;
+        }
+        result.imported += n;
+        try {
+            int through = chunk.matchedThrough(n - 1);
+            transactionService.createTransactions(userId, chunk.requests, inTransaction(chunk.duplicateOf,
+                chunk.matched.subList(chunk.saved, through), progress, chunk.endOffsets.get(n - 1),
+                chunk.nextLines.get(n - 1), result));
+            chunk.saved = through;
+        } catch (RuntimeException e) {
+            result.imported -= n;
+            for (int i = 0; i < n; i++) {
                 result.imported++;
-            } catch (Exception e) {
-                result.failed++;
-                result.errors.add("第" + lineNum + "行：" + (e.getMessage() != null ? e.getMessage() : "导入失败"));
+                try {
+                    int through = chunk.matchedThrough(i);
+                    transactionService.createTransactions(userId, List.of(chunk.requests.get(i)),
+                        inTransaction(Collections.singletonList(chunk.duplicateOf.get(i)),
+                            chunk.matched.subList(chunk.saved, through), progress, chunk.endOffsets.get(i),
+                            chunk.nextLines.get(i), result));
+                    chunk.saved = through;
+                } catch (RuntimeException ex) {
+                    result.imported--;
+                    result.error("第" + chunk.lines.get(i) + "行：" + (ex.getMessage() != null ? ex.getMessage() : "导入失败"));
+                }
             }
         }
-        return result;
+        chunk.clear();
+    }
+
+    /** 插入后、提交前执行：为标记的疑似重复行写入 duplicate_of，再记录新匹配的交易与断点 */
+    private Consumer<List<Transaction>> inTransaction(List<Integer> duplicateOf, List<Integer> matched,
+                                                      Progress progress, long offset, int nextLine,
+                                                      ImportResult result) {
+        return created -> {
+            List<Object[]> flags = new ArrayList<>();
+            for (int i = 0; i < created.size(); i++) {
+                if (duplicateOf.get(i) != null) {
+                    flags.add(new Object[] { duplicateOf.get(i), created.get(i).getId() });
+                }
+            }
+            if (!flags.isEmpty()) {
+                jdbcTemplate.batchUpdate("UPDATE transactions SET duplicate_of = ? WHERE id = ?", flags);
+            }
+            if (progress != null) {
+                if (!matched.isEmpty()) {
+                    progress.matched(matched);
+                }
+                progress.checkpoint(offset, nextLine, result);
+            }
+        };
+    }
+
+    private static boolean isBlank(List<String> fields) {
+        for (String f : fields) {
+            if (!f.trim().isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHeader(List<String> fields) {
+        if (fields.size() != HEADER.size()) {
+            return false;
+        }
+        for (int i = 0; i < HEADER.size(); i++) {
+            if (!HEADER.get(i).equals(fields.get(i).trim())) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /** 解析日期字符串为 API 接受的格式 yyyy-MM-dd 或 yyyy-MM-ddTHH:mm:ss */
@@ -113,37 +375,4 @@ public class TransactionImportService {
             }
         }
     }
-
-    /** 简单 CSV 行解析：支持引号包裹的字段（内含逗号、换行、双引号转义） */
-    private static String[] parseCsvLine(String line) {
-        List<String> out = new ArrayList<>();
-        StringBuilder cur = new StringBuilder();
-        boolean inQuotes = false;
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-            if (inQuotes) {
-                if (c == '"') {
-                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
-                        cur.append('"');
-                        i++;
-                    } else {
-                        inQuotes = false;
-                    }
-                } else {
-                    cur.append(c);
-                }
-            } else {
-                if (c == '"') {
-                    inQuotes = true;
-                } else if (c == ',') {
-                    out.add(cur.toString());
-                    cur.setLength(0);
-                } else {
-                    cur.append(c);
-                }
-            }
-        }
-        out.add(cur.toString());
-        return out.toArray(new String[0]);
-    }
 }
@@ -0,0 +1,23 @@
+package com.countinghelper.service;
+
+import com.countinghelper.entity.Transaction;
+import jakarta.persistence.PostLoad;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+
+/**
+ * Transaction 的 JPA 回调：加载后按 id 填入类型、货币、分类、支付方式的名称。
+ * 由 Hibernate 经 Spring 的 bean 容器创建，可注入依赖。监听器在 EntityManagerFactory 构建期间创建，
+ * 而 TransactionLabelService 经事务管理器依赖它，因此延迟注入；否则创建失败，Hibernate 退回无依赖的实例。
+ */
+public class TransactionLabelListener {
+
+    @Autowired
+    @Lazy
+    private TransactionLabelService labelService;
+
+    @PostLoad
+    void resolve(Transaction t) {
+        labelService.resolve(t);
+    }
+}
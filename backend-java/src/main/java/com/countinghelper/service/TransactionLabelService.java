@@ -0,0 +1,296 @@
+package com.countinghelper.service;
+
+import com.countinghelper.entity.Transaction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 交易的类型、货币、分类、支付方式以 transaction_labels 的整数 id 存储（迁移 V11）：类型与货币为全局字典（user_id = 0），
+ * 分类与支付方式按用户。名称与 id 的映射按用户缓存在内存中，最近使用的 app.labels.cache-users 个用户常驻。
+ * <p>
+ * 写入时查不到的名称在当前写事务内新建，提交后才进入缓存，回滚不会在缓存中留下不存在的 id。
+ * 缓存未命中时回查数据库，缓存只影响速度、不影响结果。
+ */
+@Service
+public class TransactionLabelService implements TransactionChangeListener {
+
+    public static final int TYPE = 1;
+    public static final int CURRENCY = 2;
+    public static final int CATEGORY = 3;
+    public static final int PAYMENT_METHOD = 4;
+
+    /** 迁移 V11 固定的类型 id */
+    public static final int INCOME = 1;
+    public static final int EXPENSE = 2;
+
+    /** 全局字典（类型、货币）的 user_id */
+    private static final int GLOBAL = 0;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.labels.cache-users:1000}")
+    private int cacheUsers;
+
+    /** 按访问顺序的 LRU，由 this 保护；全局字典单独常驻 */
+    private final LinkedHashMap<Integer, Labels> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private volatile Labels global;
+
+    /** 一个标签；kind 与名称放在同一个不可变对象中，并发读到的总是同一个标签的两项 */
+    static final class Label {
+        final int kind;
+        final String name;
+
+        Label(int kind, String name) {
+            this.kind = kind;
+            this.name = name;
+        }
+    }
+
+    /** 一个用户（或全局）的字典；名称按 kind 区分，id 全表唯一。missing 为重新加载后仍查不到名称的 id */
+    static final class Labels {
+        final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        final Map<Integer, Label> byId = new ConcurrentHashMap<>();
+        final Set<Integer> missing = ConcurrentHashMap.newKeySet();
+
+        void add(int id, int kind, String name) {
+            byId.put(id, new Label(kind, name));
+            ids.put(key(kind, name), id);
+            missing.remove(id);
+        }
+
+        String nameOf(int id) {
+            Label label = byId.get(id);
+            return label != null ? label.name : null;
+        }
+    }
+
+    /** 名称对应的 id，不存在时在当前写事务内新建；名称为空返回 null */
+    public Integer idOf(Integer userId, int kind, String name) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        int owner = ownerOf(userId, kind);
+        Labels labels = labels(owner);
+        Integer id = labels.ids.get(key(kind, name));
+        if (id != null) {
+            return id;
+        }
+        jdbcTemplate.update("INSERT OR IGNORE INTO transaction_labels (user_id, kind, name) VALUES (?, ?, ?)",
+            owner, kind, name);
+        int created = jdbcTemplate.queryForObject(
+            "SELECT id FROM transaction_labels WHERE user_id = ? AND kind = ? AND name = ?",
+            Integer.class, owner, kind, name);
+        afterCommit(() -> labels.add(created, kind, name));
+        return created;
+    }
+
+    /** 已有名称的 id，不新建；不存在或名称为空返回 null（用于筛选） */
+    public Integer find(Integer userId, int kind, String name) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        int owner = ownerOf(userId, kind);
+        Integer id = labels(owner).ids.get(key(kind, name));
+        if (id != null) {
+            return id;
+        }
+        List<Integer> found = readOnly(() -> jdbcTemplate.queryForList(
+            "SELECT id FROM transaction_labels WHERE user_id = ? AND kind = ? AND name = ?",
+            Integer.class, owner, kind, name));
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /** 名称中包含 text（忽略大小写）的该类标签 id */
+    public List<Integer> matching(Integer userId, int kind, String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        Labels labels = labels(ownerOf(userId, kind));
+        List<Integer> out = new ArrayList<>();
+        labels.byId.forEach((id, label) -> {
+            if (label.kind == kind && label.name.toLowerCase(Locale.ROOT).contains(lower)) {
+                out.add(id);
+            }
+        });
+        return out;
+    }
+
+    /**
+     * id 对应的名称。缓存中没有时重新加载该用户与全局字典一次，仍没有（标签已删除）则记在该用户的字典上并返回 null，
+     * 之后同一 id 不再触发加载；导出、同步等逐行调用时，悬空的 id 最多各加载一次。
+     */
+    public String nameOf(Integer userId, Integer id) {
+        if (id == null || id == 0) {
+            return null;
+        }
+        String name = global().nameOf(id);
+        if (name != null) {
+            return name;
+        }
+        Labels labels = labels(userId);
+        name = labels.nameOf(id);
+        if (name != null || labels.missing.contains(id)) {
+            return name;
+        }
+        evict(userId);
+        global = null;
+        name = global().nameOf(id);
+        if (name != null) {
+            return name;
+        }
+        Labels reloaded = labels(userId);
+        name = reloaded.nameOf(id);
+        if (name == null) {
+            reloaded.missing.add(id);
+        }
+        return name;
+    }
+
+    /** 按交易上的名称填入 id，需要时新建标签；调用方负责写事务 */
+    public void bind(Transaction t) {
+        Integer userId = t.getUserId();
+        t.setTypeId(idOf(userId, TYPE, t.getTransactionType()));
+        t.setCurrencyId(idOf(userId, CURRENCY, t.getCurrency()));
+        t.setCategoryId(idOf(userId, CATEGORY, t.getCategory()));
+        t.setPaymentMethodId(idOf(userId, PAYMENT_METHOD, t.getPaymentMethod()));
+    }
+
+    /** 按交易上的 id 填入名称 */
+    public void resolve(Transaction t) {
+        Integer userId = t.getUserId();
+        t.setTransactionType(nameOf(userId, t.getTypeId()));
+        t.setCurrency(nameOf(userId, t.getCurrencyId()));
+        t.setCategory(nameOf(userId, t.getCategoryId()));
+        t.setPaymentMethod(nameOf(userId, t.getPaymentMethodId()));
+    }
+
+    /**
+     * 分类改名：该用户已有同名分类标签时把引用旧标签的交易并入已有标签，否则只改标签这一行。
+     * 在调用方的写事务内执行，返回 {原标签 id, 改名后的标签 id}；没有交易用过旧名称时返回 null。
+     */
+    public int[] renameCategory(Integer userId, String from, String to) {
+        Integer fromId = findInDb(userId, CATEGORY, from);
+        if (fromId == null || from.equals(to)) {
+            return null;
+        }
+        Integer toId = findInDb(userId, CATEGORY, to);
+        if (toId == null) {
+            jdbcTemplate.update("UPDATE transaction_labels SET name = ? WHERE id = ?", to, fromId);
+            toId = fromId;
+        } else {
+            jdbcTemplate.update("UPDATE transactions SET category_id = ? WHERE user_id = ? AND category_id = ?",
+                toId, userId, fromId);
+            jdbcTemplate.update("DELETE FROM transaction_labels WHERE id = ?", fromId);
+        }
+        afterCommit(() -> evict(userId));
+        return new int[] { fromId, toId };
+    }
+
+    /** 用户被删除：分类、支付方式标签一并删除 */
+    @Override
+    public void onAllDeleted(Integer userId) {
+        jdbcTemplate.update("DELETE FROM transaction_labels WHERE user_id = ?", userId);
+        afterCommit(() -> evict(userId));
+    }
+
+    private Integer findInDb(Integer userId, int kind, String name) {
+        List<Integer> found = jdbcTemplate.queryForList(
+            "SELECT id FROM transaction_labels WHERE user_id = ? AND kind = ? AND name = ?",
+            Integer.class, ownerOf(userId, kind), kind, name);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    private Labels labels(int owner) {
+        if (owner == GLOBAL) {
+            return global();
+        }
+        synchronized (this) {
+            Labels cached = cache.get(owner);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Labels loaded = load(owner);
+        synchronized (this) {
+            Labels cached = cache.putIfAbsent(owner, loaded);
+            if (cache.size() > Math.max(1, cacheUsers)) {
+                cache.remove(cache.keySet().iterator().next());
+            }
+            return cached != null ? cached : loaded;
+        }
+    }
+
+    private Labels global() {
+        Labels g = global;
+        if (g == null) {
+            g = load(GLOBAL);
+            global = g;
+        }
+        return g;
+    }
+
+    private synchronized void evict(Integer userId) {
+        cache.remove(userId);
+    }
+
+    private Labels load(int owner) {
+        Labels labels = new Labels();
+        readOnly(() -> {
+            jdbcTemplate.query("SELECT id, kind, name FROM transaction_labels WHERE user_id = ?",
+                rs -> {
+                    labels.add(rs.getInt(1), rs.getInt(2), rs.getString(3));
+                },
+                owner);
+            return null;
+        });
+        return labels;
+    }
+
+    /** 已在事务内时沿用当前连接（可见本事务新建的标签），否则走只读连接 */
+    private <T> T readOnly(Supplier<T> query) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return query.get();
+        }
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        return tx.execute(status -> query.get());
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static int ownerOf(Integer userId, int kind) {
+        return kind == TYPE || kind == CURRENCY ? GLOBAL : userId;
+    }
+
+    private static String key(int kind, String name) {
+        return kind + ":" + name;
+    }
+}
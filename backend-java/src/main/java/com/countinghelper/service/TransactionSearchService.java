@@ -0,0 +1,320 @@
+package com.countinghelper.service;
+
+import com.countinghelper.entity.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 交易关键字搜索：维护 FTS5 表 transactions_fts（迁移 V4，V13 改为 trigram 分词），作为 {@link TransactionChangeListener}
+ * 在写事务内同步增删改。
+ * <p>
+ * trigram 分词器按连续三个字符建索引，检索词按子串匹配（忽略大小写），与 LIKE 条件的结果一致。
+ * 写入前去掉字母的变音符号，并在相邻的中日韩字符之间加一个空格，两个汉字的检索词（"午 餐"）即可走索引。
+ * 不足三个字符的检索词（单个汉字、一两个字母）无法走索引；索引不可用、有这样的检索词或命中过多时
+ * {@link #search} 返回 null，调用方退回原来的 LIKE 条件。
+ */
+@Service
+@Lazy(false)
+@DependsOn("schemaMigrator")
+public class TransactionSearchService implements TransactionChangeListener, InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionSearchService.class);
+
+    /** 命中超过该数量时不再走 id IN (...)，由调用方退回 LIKE */
+    static final int MAX_MATCHES = 10_000;
+    /** trigram 分词器能匹配的最短检索词（字符数，含汉字之间的空格） */
+    private static final int MIN_TERM_LENGTH = 3;
+    private static final int REBUILD_BATCH = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private volatile boolean available;
+
+    /** 关键字中的一个检索词：连续的中日韩字符，或连续的字母数字 */
+    public static class Term {
+        public final String text;
+        public final boolean cjk;
+
+        Term(String text, boolean cjk) {
+            this.text = text;
+            this.cjk = cjk;
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        try {
+            long indexed = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM transactions_fts", Long.class);
+            long total = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM transactions", Long.class);
+            if (indexed != total) {
+                rebuild();
+            }
+            available = true;
+        } catch (DataAccessException e) {
+            log.warn("[Search] Full-text index unavailable, keyword search falls back to LIKE: {}",
+                e.getMostSpecificCause().getMessage());
+        }
+    }
+
+    /** 清空并按 id 分批重建全文索引，整个过程在一个写事务内 */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        Integer count = new TransactionTemplate(transactionManager).execute(status -> {
+            jdbcTemplate.update("DELETE FROM transactions_fts");
+            int done = 0;
+            int lastId = 0;
+            while (true) {
+                List<Object[]> batch = jdbcTemplate.query(
+                    "SELECT t.id, t.user_id, t.description, l.name FROM transactions t" +
+                    " LEFT JOIN transaction_labels l ON l.id = t.category_id WHERE t.id > ? ORDER BY t.id LIMIT ?",
+                    (rs, i) -> new Object[] {
+                        rs.getInt(1), owner(rs.getInt(2)), segment(rs.getString(3)), segment(rs.getString(4))
+                    },
+                    lastId, REBUILD_BATCH);
+                if (batch.isEmpty()) {
+                    return done;
+                }
+                jdbcTemplate.batchUpdate(
+                    "INSERT INTO transactions_fts (rowid, owner, description, category) VALUES (?, ?, ?, ?)", batch);
+                done += batch.size();
+                lastId = (Integer) batch.get(batch.size() - 1)[0];
+            }
+        });
+        log.info("[Search] Rebuilt full-text index: {} rows in {} ms", count, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 返回该用户描述或分类匹配关键字的交易 id，按相关度（bm25，描述权重高于分类）排序。
+     * 关键字中的各检索词需全部命中。索引不可用、关键字不含可检索字符、含不足三个字符的检索词或命中超过上限时返回 null。
+     */
+    @Transactional(readOnly = true)
+    public List<Integer> search(Integer userId, String keyword) {
+        if (!available || keyword == null) {
+            return null;
+        }
+        String match = toMatchQuery(keyword);
+        if (match == null) {
+            return null;
+        }
+        List<Integer> ids = jdbcTemplate.queryForList(
+            "SELECT rowid FROM transactions_fts WHERE transactions_fts MATCH ?" +
+            " ORDER BY bm25(transactions_fts, 0.0, 2.0, 1.0) LIMIT ?",
+            Integer.class, "owner:\"" + owner(userId) + "\" AND {description category}:(" + match + ")", MAX_MATCHES + 1);
+        return ids.size() > MAX_MATCHES ? null : ids;
+    }
+
+    /**
+     * text 中与关键字各检索词匹配的位置 [start, end)，按 UTF-16 下标（与前端字符串下标一致），用于高亮。
+     * 各检索词按子串匹配（忽略大小写）；重叠区间会合并。
+     */
+    public static List<int[]> highlight(String text, String keyword) {
+        List<int[]> ranges = new ArrayList<>();
+        if (text == null || text.isEmpty() || keyword == null) {
+            return ranges;
+        }
+        for (Term term : terms(keyword)) {
+            int len = term.text.length();
+            for (int at = 0; at + len <= text.length(); at++) {
+                if (text.regionMatches(true, at, term.text, 0, len)) {
+                    ranges.add(new int[] { at, at + len });
+                }
+            }
+        }
+        ranges.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+        List<int[]> merged = new ArrayList<>();
+        for (int[] r : ranges) {
+            int[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && r[0] <= last[1]) {
+                last[1] = Math.max(last[1], r[1]);
+            } else {
+                merged.add(r);
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    public void onCreated(Transaction created) {
+        if (available) {
+            insert(created);
+        }
+    }
+
+    @Override
+    public void onCreatedAll(List<Transaction> created) {
+        if (!available) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(created.size());
+        for (Transaction t : created) {
+            rows.add(new Object[] { t.getId(), owner(t.getUserId()), segment(t.getDescription()), segment(t.getCategory()) });
+        }
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO transactions_fts (rowid, owner, description, category) VALUES (?, ?, ?, ?)", rows);
+    }
+
+    @Override
+    public void onUpdated(Transaction before, Transaction after) {
+        if (available) {
+            jdbcTemplate.update("DELETE FROM transactions_fts WHERE rowid = ?", before.getId());
+            insert(after);
+        }
+    }
+
+    @Override
+    public void onDeleted(Transaction deleted) {
+        if (available) {
+            jdbcTemplate.update("DELETE FROM transactions_fts WHERE rowid = ?", deleted.getId());
+        }
+    }
+
+    @Override
+    public void onAllDeleted(Integer userId) {
+        if (available) {
+            jdbcTemplate.update(
+                "DELETE FROM transactions_fts WHERE rowid IN" +
+                " (SELECT rowid FROM transactions_fts WHERE transactions_fts MATCH ?)",
+                "owner:\"" + owner(userId) + "\"");
+        }
+    }
+
+    /** 分类名称变了，重写该分类下交易的索引行 */
+    @Override
+    public void onCategoryRenamed(Integer userId, int fromLabelId, int toLabelId) {
+        if (!available) {
+            return;
+        }
+        List<Object[]> rows = jdbcTemplate.query(
+            "SELECT t.id, t.description, l.name FROM transactions t JOIN transaction_labels l ON l.id = t.category_id" +
+            " WHERE t.user_id = ? AND t.category_id = ?",
+            (rs, i) -> new Object[] { rs.getInt(1), owner(userId), segment(rs.getString(2)), segment(rs.getString(3)) },
+            userId, toLabelId);
+        List<Object[]> ids = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            ids.add(new Object[] { row[0] });
+        }
+        jdbcTemplate.batchUpdate("DELETE FROM transactions_fts WHERE rowid = ?", ids);
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO transactions_fts (rowid, owner, description, category) VALUES (?, ?, ?, ?)", rows);
+    }
+
+    private void insert(Transaction t) {
+        jdbcTemplate.update(
+            "INSERT INTO transactions_fts (rowid, owner, description, category) VALUES (?, ?, ?, ?)",
+            t.getId(), owner(t.getUserId()), segment(t.getDescription()), segment(t.getCategory()));
+    }
+
+    /** 带定界符，使 "<u1>" 不会作为子串命中 "<u12>" */
+    private static String owner(Integer userId) {
+        return "<u" + userId + ">";
+    }
+
+    /** 写入索引前的预处理：转小写，去掉字母的变音符号（é → e），相邻的中日韩字符之间加一个空格 */
+    static String segment(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(lower.length() * 2);
+        boolean prevCjk = false;
+        for (int i = 0; i < lower.length(); ) {
+            int cp = lower.codePointAt(i);
+            i += Character.charCount(cp);
+            boolean cjk = isCjk(cp);
+            if (cjk && prevCjk) {
+                sb.append(' ');
+            }
+            if (cp < 0x80 || cjk) {
+                sb.appendCodePoint(cp);
+            } else {
+                Normalizer.normalize(new String(Character.toChars(cp)), Normalizer.Form.NFD).codePoints()
+                    .filter(c -> Character.getType(c) != Character.NON_SPACING_MARK)
+                    .forEach(sb::appendCodePoint);
+            }
+            prevCjk = cjk;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 把关键字转成 FTS5 查询：每个检索词按写入时的方式预处理后作为一个短语（子串），各词之间为 AND；
+     * 无可检索字符或有不足三个字符的检索词时返回 null
+     */
+    static String toMatchQuery(String keyword) {
+        List<Term> terms = terms(keyword);
+        if (terms.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Term term : terms) {
+            String phrase = segment(term.text);
+            if (phrase.codePointCount(0, phrase.length()) < MIN_TERM_LENGTH) {
+                return null;
+            }
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append('"').append(phrase).append('"');
+        }
+        return sb.toString();
+    }
+
+    /** 按字符类别切分关键字；标点、空白等作为分隔符丢弃 */
+    static List<Term> terms(String keyword) {
+        List<Term> terms = new ArrayList<>();
+        String lower = keyword.trim().toLowerCase(Locale.ROOT);
+        StringBuilder cur = new StringBuilder();
+        boolean curCjk = false;
+        for (int i = 0; i < lower.length(); ) {
+            int cp = lower.codePointAt(i);
+            i += Character.charCount(cp);
+            boolean cjk = isCjk(cp);
+            boolean word = cjk || isWordChar(cp);
+            if (!word || (cur.length() > 0 && cjk != curCjk)) {
+                if (cur.length() > 0) {
+                    terms.add(new Term(cur.toString(), curCjk));
+                    cur.setLength(0);
+                }
+            }
+            if (word) {
+                cur.appendCodePoint(cp);
+                curCjk = cjk;
+            }
+        }
+        if (cur.length() > 0) {
+            terms.add(new Term(cur.toString(), curCjk));
+        }
+        return terms;
+    }
+
+    private static boolean isWordChar(int cp) {
+        return Character.isLetterOrDigit(cp) && !isCjk(cp);
+    }
+
+    private static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+            || script == Character.UnicodeScript.HIRAGANA
+            || script == Character.UnicodeScript.KATAKANA
+            || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -2,14 +2,19 @@ package com.countinghelper.service;
 
 import com.countinghelper.dto.request.TransactionRequest;
 import com.countinghelper.dto.response.StatsResponse;
+import com.countinghelper.entity.Money;
 import com.countinghelper.entity.Transaction;
 import com.countinghelper.repository.TransactionRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
@@ -18,23 +23,56 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 @Service
 public class TransactionService {
 
     private static final DateTimeFormatter DB_DATETIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int COUNT_CACHE_MAX = 10_000;
+    private static final String INSERT_SQL =
+        "INSERT INTO transactions (user_id, amount, amount_in_gbp, currency_id, description, category_id, payment_method_id, type_id, created_at, created_at_epoch, created_day, fingerprint) VALUES (?,?,?,?,?,?,?,?,?,?,?,?)";
 
     @Autowired
     private TransactionRepository transactionRepository;
 
     @Autowired
     private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private GroupCommitWriter groupCommitWriter;
+
+    @Autowired
+    private UserStatsService userStatsService;
+
+    @Autowired
+    private DataVersionService dataVersionService;
+
+    @Autowired
+    private TransactionSearchService searchService;
+
+    @Autowired
+    private TransactionLabelService labelService;
+
+    @Autowired
+    private List<TransactionChangeListener> changeListeners;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /** 游标分页总数缓存：key 为用户 + 筛选条件，value 为 {数据版本, count}，版本见 {@link DataVersionService} */
+    private final Map<String, long[]> countCache = new ConcurrentHashMap<>();
     
     private static final Map<String, Double> EXCHANGE_RATES = new HashMap<>();
     
@@ -48,12 +86,77 @@ public class TransactionService {
     /**
      * 使用 JdbcTemplate 执行 INSERT 并通过 last_insert_rowid() 取回 ID，
      * 避免 SQLite JDBC 不支持 getGeneratedKeys() 导致的 400。
+     * 写入经 {@link GroupCommitWriter} 与其他并发写合并提交。
      */
-    @Transactional
     public Transaction createTransaction(Integer userId, TransactionRequest request) {
-        double amount = request.getAmount();
+        return groupCommitWriter.execute(() -> doCreateTransaction(userId, request));
+    }
+
+    private Transaction doCreateTransaction(Integer userId, TransactionRequest request) {
+        Transaction transaction = newTransaction(userId, request);
+        labelService.bind(transaction);
+        jdbcTemplate.update(INSERT_SQL, insertArgs(transaction));
+        long id = jdbcTemplate.queryForObject("SELECT last_insert_rowid()", Long.class);
+        transaction.setId((int) id);
+        for (TransactionChangeListener listener : changeListeners) {
+            listener.onCreated(transaction);
+        }
+        return transaction;
+    }
+
+    /**
+     * 批量新增（导入用）：整批在一个写事务内用 batchUpdate 插入，派生数据通过
+     * {@link TransactionChangeListener#onCreatedAll} 合并更新。任一条失败则整批回滚。
+     */
+    public List<Transaction> createTransactions(Integer userId, List<TransactionRequest> requests) {
+        return createTransactions(userId, requests, null);
+    }
+
+    /**
+     * 同上；inTransaction 不为 null 时在插入之后、提交之前于同一事务内以已分配 id 的交易调用
+     * （例如标记疑似重复、记录导入断点），与本批数据一起提交或回滚。
+     */
+    public List<Transaction> createTransactions(Integer userId, List<TransactionRequest> requests,
+                                                Consumer<List<Transaction>> inTransaction) {
+        if (requests.isEmpty()) {
+            return List.of();
+        }
+        return groupCommitWriter.execute(() -> {
+            List<Transaction> created = insertAll(userId, requests);
+            if (inTransaction != null) {
+                inTransaction.accept(created);
+            }
+            return created;
+        });
+    }
+
+    /** 在当前写事务内 batchUpdate 插入并分配 id，随后通知变更回调；调用方负责事务 */
+    List<Transaction> insertAll(Integer userId, List<TransactionRequest> requests) {
+        List<Transaction> created = new ArrayList<>(requests.size());
+        List<Object[]> args = new ArrayList<>(requests.size());
+        for (TransactionRequest request : requests) {
+            Transaction t = newTransaction(userId, request);
+            labelService.bind(t);
+            created.add(t);
+            args.add(insertArgs(t));
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, args);
+        // 写连接唯一且处于同一事务内，本批自增 id 连续，由最后一条倒推
+        long lastId = jdbcTemplate.queryForObject("SELECT last_insert_rowid()", Long.class);
+        long firstId = lastId - created.size() + 1;
+        for (int i = 0; i < created.size(); i++) {
+            created.get(i).setId((int) (firstId + i));
+        }
+        for (TransactionChangeListener listener : changeListeners) {
+            listener.onCreatedAll(created);
+        }
+        return created;
+    }
+
+    /** 由请求构造待插入的交易（未分配 id）：换算英镑金额，解析日期，未给日期时取当前时间 */
+    static Transaction newTransaction(Integer userId, TransactionRequest request) {
         String currency = request.getCurrency();
-        double amountInGbp = amount * EXCHANGE_RATES.getOrDefault(currency, 1.0);
+        long amountMinor = Money.toMinor(request.getAmount(), currency);
         LocalDateTime createdAt;
         if (request.getCreatedAt() != null && !request.getCreatedAt().isEmpty()) {
             try {
@@ -68,27 +171,11 @@ public class TransactionService {
         } else {
             createdAt = LocalDateTime.now();
         }
-        String createdAtStr = createdAt.format(DB_DATETIME);
-
-        String sql = "INSERT INTO transactions (user_id, amount, amount_in_gbp, currency, description, category, payment_method, transaction_type, created_at) VALUES (?,?,?,?,?,?,?,?,?)";
-        jdbcTemplate.update(sql,
-            userId,
-            amount,
-            amountInGbp,
-            currency,
-            request.getDescription() != null ? request.getDescription() : "",
-            request.getCategory() != null ? request.getCategory() : "",
-            request.getPaymentMethod(),
-            request.getTransactionType(),
-            createdAtStr);
-
-        long id = jdbcTemplate.queryForObject("SELECT last_insert_rowid()", Long.class);
         Transaction transaction = new Transaction();
-        transaction.setId((int) id);
         transaction.setUserId(userId);
-        transaction.setAmount(amount);
+        transaction.setAmountMinor(amountMinor);
         transaction.setCurrency(currency);
-        transaction.setAmountInGbp(amountInGbp);
+        transaction.setAmountInGbpMinor(gbpMinor(amountMinor, currency));
         transaction.setDescription(request.getDescription());
         transaction.setCategory(request.getCategory());
         transaction.setPaymentMethod(request.getPaymentMethod());
@@ -96,13 +183,32 @@ public class TransactionService {
         transaction.setCreatedAt(createdAt);
         return transaction;
     }
+
+    private static Object[] insertArgs(Transaction t) {
+        return new Object[] {
+            t.getUserId(),
+            t.getAmountMinor(),
+            t.getAmountInGbpMinor(),
+            t.getCurrencyId(),
+            t.getDescription() != null ? t.getDescription() : "",
+            t.getCategoryId(),
+            t.getPaymentMethodId(),
+            t.getTypeId(),
+            t.getCreatedAt().format(DB_DATETIME),
+            t.getCreatedAtEpoch(),
+            t.getCreatedDay(),
+            TransactionFingerprint.of(t)
+        };
+    }
     
     /** 按 id 获取单条交易（仅限当前用户） */
+    @Transactional(readOnly = true)
     public Transaction getTransactionById(Integer userId, Integer transactionId) {
         return transactionRepository.findByIdAndUserId(transactionId, userId)
             .orElseThrow(() -> new RuntimeException("交易不存在"));
     }
 
+    @Transactional(readOnly = true)
     public List<Transaction> getTransactions(Integer userId, String date) {
         if (date != null && !date.isEmpty()) {
             try {
@@ -117,6 +223,7 @@ public class TransactionService {
     }
 
     /** 按日期范围查询（含 from 和 to 当天，用于一周/一月分享） */
+    @Transactional(readOnly = true)
     public List<Transaction> getTransactionsInRange(Integer userId, String from, String to) {
         try {
             LocalDateTime start = LocalDateTime.parse(from + "T00:00:00", DateTimeFormatter.ISO_LOCAL_DATE_TIME);
@@ -127,19 +234,195 @@ public class TransactionService {
         }
     }
 
-    /** 分页查询：支持 date/from/to、type、paymentMethod、category、keyword 筛选 */
+    /**
+     * 分页查询：支持 date/from/to、type、paymentMethod、category、keyword 筛选。
+     * keyword 经全文索引匹配；sortByRelevance 且关键字可走索引时按相关度排序，否则按时间倒序。
+     */
+    @Transactional(readOnly = true)
     public Page<Transaction> getTransactionsPaged(
             Integer userId, int page, int size,
             String date, String from, String to,
-            String transactionType, String paymentMethod, String category, String keyword) {
-        Pageable pageable = PageRequest.of(Math.max(0, page), Math.min(100, Math.max(1, size)), Sort.by(Sort.Direction.DESC, "createdAt"));
-        Specification<Transaction> spec = buildListSpec(userId, date, from, to, transactionType, paymentMethod, category, keyword);
+            String transactionType, String paymentMethod, String category, String keyword,
+            boolean sortByRelevance) {
+        Pageable pageable = PageRequest.of(Math.max(0, page), Math.min(100, Math.max(1, size)), Sort.by(Sort.Direction.DESC, "createdAtEpoch", "id"));
+        List<Integer> keywordIds = keywordIds(userId, keyword);
+        Specification<Transaction> spec = buildListSpec(userId, date, from, to, transactionType, paymentMethod, category, keyword, keywordIds);
+        if (sortByRelevance && keywordIds != null) {
+            return rankedPage(spec, keywordIds, pageable);
+        }
         return transactionRepository.findAll(spec, pageable);
     }
 
+    /** 其余筛选条件只取 id，再按全文检索给出的相关度顺序切出一页 */
+    private Page<Transaction> rankedPage(Specification<Transaction> spec, List<Integer> rankedIds, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Integer> query = cb.createQuery(Integer.class);
+        Root<Transaction> root = query.from(Transaction.class);
+        query.select(root.<Integer>get("id")).where(spec.toPredicate(root, query, cb));
+        Set<Integer> allowed = new HashSet<>(entityManager.createQuery(query).getResultList());
+        List<Integer> ordered = new ArrayList<>(allowed.size());
+        for (Integer id : rankedIds) {
+            if (allowed.contains(id)) {
+                ordered.add(id);
+            }
+        }
+        int start = (int) Math.min(pageable.getOffset(), ordered.size());
+        List<Integer> pageIds = ordered.subList(start, Math.min(start + pageable.getPageSize(), ordered.size()));
+        Map<Integer, Transaction> byId = new HashMap<>();
+        for (Transaction t : transactionRepository.findAllById(pageIds)) {
+            byId.put(t.getId(), t);
+        }
+        List<Transaction> content = new ArrayList<>(pageIds.size());
+        for (Integer id : pageIds) {
+            Transaction t = byId.get(id);
+            if (t != null) {
+                content.add(t);
+            }
+        }
+        return new PageImpl<>(content, pageable, ordered.size());
+    }
+
+    /** 关键字命中的交易 id（按相关度）；无关键字或无法走全文索引时为 null */
+    private List<Integer> keywordIds(Integer userId, String keyword) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return null;
+        }
+        return searchService.search(userId, keyword.trim());
+    }
+
+    /** 游标分页的一页结果；nextCursor 为 null 表示已无更多，totalElements 仅在 withTotal 时给出 */
+    public static class CursorPage {
+        public final List<Transaction> content;
+        public final String nextCursor;
+        public final Long totalElements;
+
+        public CursorPage(List<Transaction> content, String nextCursor, Long totalElements) {
+            this.content = content;
+            this.nextCursor = nextCursor;
+            this.totalElements = totalElements;
+        }
+    }
+
+    /**
+     * 游标（keyset）分页：按 (createdAt DESC, id DESC) 排序，用行值 (created_at_epoch, id) &lt; (游标) 在索引上范围查找
+     * （见 {@link com.countinghelper.config.KeysetSqliteDialect}），不使用 OFFSET，也不做 COUNT，第 500 页与第 1 页代价相同。
+     * 无时间的交易排在最后，有时间的部分取完后再按 id 从中续取。筛选条件与 {@link #getTransactionsPaged} 一致。
+     * cursor 为空表示第一页；withTotal 时附带总数，按用户的数据版本缓存（交易增删改与分类改名、合并都会递增），
+     * 数据未变化时不重复 COUNT。
+     */
+    @Transactional(readOnly = true)
+    public CursorPage getTransactionsByCursor(
+            Integer userId, String cursor, int size, boolean withTotal,
+            String date, String from, String to,
+            String transactionType, String paymentMethod, String category, String keyword) {
+        int limit = Math.min(100, Math.max(1, size));
+        CursorKey after = (cursor != null && !cursor.isEmpty()) ? CursorKey.decode(cursor) : null;
+        Specification<Transaction> spec = buildListSpec(userId, date, from, to, transactionType, paymentMethod, category, keyword,
+            keywordIds(userId, keyword));
+
+        List<Transaction> rows = findAfter(spec, after, limit + 1);
+        if (rows.size() <= limit && after != null && after.createdAt != null) {
+            rows = new ArrayList<>(rows);
+            rows.addAll(findAfter(spec, CursorKey.NULL_EPOCH_START, limit + 1 - rows.size()));
+        }
+
+        boolean hasNext = rows.size() > limit;
+        List<Transaction> content = hasNext ? new ArrayList<>(rows.subList(0, limit)) : rows;
+        String nextCursor = hasNext ? CursorKey.of(content.get(limit - 1)).encode() : null;
+        Long total = null;
+        if (withTotal) {
+            String key = String.join("\0", String.valueOf(userId), nz(date), nz(from), nz(to),
+                nz(transactionType), nz(paymentMethod), nz(category), nz(keyword));
+            total = cachedCount(userId, key, spec);
+        }
+        return new CursorPage(content, nextCursor, total);
+    }
+
+    /** 排在游标之后的至多 max 行；after 为 null 时从头取 */
+    private List<Transaction> findAfter(Specification<Transaction> spec, CursorKey after, int max) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Transaction> query = cb.createQuery(Transaction.class);
+        Root<Transaction> root = query.from(Transaction.class);
+        Predicate where = spec.toPredicate(root, query, cb);
+        if (after != null) {
+            where = cb.and(where, after.toPredicate(root, cb));
+        }
+        query.where(where);
+        query.orderBy(cb.desc(root.get("createdAtEpoch")), cb.desc(root.get("id")));
+        return entityManager.createQuery(query).setMaxResults(max).getResultList();
+    }
+
+    private long cachedCount(Integer userId, String key, Specification<Transaction> spec) {
+        long version = dataVersionService.current(userId);
+        long[] cached = countCache.get(key);
+        if (cached != null && cached[0] == version) {
+            return cached[1];
+        }
+        long count = transactionRepository.count(spec);
+        if (countCache.size() >= COUNT_CACHE_MAX) {
+            countCache.clear();
+        }
+        countCache.put(key, new long[] { version, count });
+        return count;
+    }
+
+    private static String nz(String s) {
+        return s != null ? s : "";
+    }
+
+    /** 游标内容：最后一条的 (created_at, id)，以 base64url 编码后对客户端不透明 */
+    private static final class CursorKey {
+        /** 无时间部分的起点：id 都小于它 */
+        static final CursorKey NULL_EPOCH_START = new CursorKey(null, Integer.MAX_VALUE);
+
+        final LocalDateTime createdAt;
+        final int id;
+
+        CursorKey(LocalDateTime createdAt, int id) {
+            this.createdAt = createdAt;
+            this.id = id;
+        }
+
+        static CursorKey of(Transaction t) {
+            return new CursorKey(t.getCreatedAt(), t.getId());
+        }
+
+        String encode() {
+            String raw = (createdAt != null ? createdAt.format(DB_DATETIME) : "") + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static CursorKey decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int sep = raw.lastIndexOf('|');
+                String time = raw.substring(0, sep);
+                int id = Integer.parseInt(raw.substring(sep + 1));
+                return new CursorKey(time.isEmpty() ? null : LocalDateTime.parse(time, DB_DATETIME), id);
+            } catch (RuntimeException e) {
+                throw new RuntimeException("无效的分页游标");
+            }
+        }
+
+        /**
+         * 排在游标之后的行。有时间的游标只取有时间的行（行值比较遇 NULL 不成立），
+         * 无时间的行（SQLite 中 NULL 最小，降序时排在最后）由调用方用 {@link #NULL_EPOCH_START} 另取。
+         */
+        Predicate toPredicate(Root<Transaction> root, CriteriaBuilder cb) {
+            Path<Long> epochPath = root.get("createdAtEpoch");
+            Path<Integer> idPath = root.get("id");
+            if (createdAt == null) {
+                return cb.and(cb.isNull(epochPath), cb.lessThan(idPath, id));
+            }
+            return cb.isTrue(cb.function("keyset_before", Boolean.class,
+                epochPath, idPath, cb.literal(Transaction.epochOf(createdAt)), cb.literal(id)));
+        }
+    }
+
     private Specification<Transaction> buildListSpec(
             Integer userId, String date, String from, String to,
-            String transactionType, String paymentMethod, String category, String keyword) {
+            String transactionType, String paymentMethod, String category, String keyword,
+            List<Integer> keywordIds) {
         return (Root<Transaction> root, CriteriaQuery<?> query, CriteriaBuilder cb) -> {
             List<Predicate> preds = new ArrayList<>();
             preds.add(cb.equal(root.get("userId"), userId));
@@ -148,48 +431,79 @@ public class TransactionService {
                 try {
                     LocalDateTime start = LocalDateTime.parse(from + "T00:00:00", DateTimeFormatter.ISO_LOCAL_DATE_TIME);
                     LocalDateTime end = LocalDateTime.parse(to + "T23:59:59", DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-                    preds.add(cb.between(root.get("createdAt"), start, end));
+                    preds.add(cb.between(root.get("createdAtEpoch"), Transaction.epochOf(start), Transaction.epochOf(end)));
                 } catch (Exception ignored) { }
             } else if (date != null && !date.isEmpty()) {
                 try {
                     LocalDateTime start = LocalDateTime.parse(date + "T00:00:00", DateTimeFormatter.ISO_LOCAL_DATE_TIME);
                     LocalDateTime end = LocalDateTime.parse(date + "T23:59:59", DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-                    preds.add(cb.between(root.get("createdAt"), start, end));
+                    preds.add(cb.between(root.get("createdAtEpoch"), Transaction.epochOf(start), Transaction.epochOf(end)));
                 } catch (Exception ignored) { }
             }
 
+            // 名称先换成标签 id 再比较；没有该名称的标签时不会有交易匹配
             if (transactionType != null && !transactionType.isEmpty()) {
-                preds.add(cb.equal(root.get("transactionType"), transactionType));
+                preds.add(labelEquals(cb, root.get("typeId"),
+                    labelService.find(userId, TransactionLabelService.TYPE, transactionType)));
             }
             if (paymentMethod != null && !paymentMethod.isEmpty()) {
-                preds.add(cb.equal(root.get("paymentMethod"), paymentMethod));
+                preds.add(labelEquals(cb, root.get("paymentMethodId"),
+                    labelService.find(userId, TransactionLabelService.PAYMENT_METHOD, paymentMethod)));
             }
             if (category != null && !category.isEmpty()) {
-                preds.add(cb.equal(root.get("category"), category));
+                preds.add(labelEquals(cb, root.get("categoryId"),
+                    labelService.find(userId, TransactionLabelService.CATEGORY, category)));
             }
-            if (keyword != null && !keyword.isEmpty()) {
+            if (keywordIds != null) {
+                preds.add(keywordIds.isEmpty() ? cb.disjunction() : root.get("id").in(keywordIds));
+            } else if (keyword != null && !keyword.isEmpty()) {
+                // 全文索引不可用或关键字无可检索字符时退回子串匹配
                 String pattern = "%" + keyword.trim().toLowerCase() + "%";
-                preds.add(cb.or(
-                    cb.like(cb.lower(cb.coalesce(root.get("description"), "")), pattern),
-                    cb.like(cb.lower(cb.coalesce(root.get("category"), "")), pattern)
-                ));
+                List<Integer> categoryIds = labelService.matching(userId, TransactionLabelService.CATEGORY, keyword.trim());
+                Predicate byDescription = cb.like(cb.lower(cb.coalesce(root.get("description"), "")), pattern);
+                preds.add(categoryIds.isEmpty()
+                    ? byDescription
+                    : cb.or(byDescription, root.get("categoryId").in(categoryIds)));
             }
             return cb.and(preds.toArray(new Predicate[0]));
         };
     }
+
+    private static Predicate labelEquals(CriteriaBuilder cb, Path<Integer> path, Integer labelId) {
+        return labelId != null ? cb.equal(path, labelId) : cb.disjunction();
+    }
     
-    @Transactional
     public Transaction updateTransaction(Integer userId, Integer transactionId, TransactionRequest request) {
+        return groupCommitWriter.execute(() -> doUpdateTransaction(userId, transactionId, request));
+    }
+
+    private Transaction doUpdateTransaction(Integer userId, Integer transactionId, TransactionRequest request) {
         Transaction transaction = transactionRepository.findById(transactionId)
             .orElseThrow(() -> new RuntimeException("交易不存在"));
         
         if (!transaction.getUserId().equals(userId)) {
             throw new RuntimeException("交易不存在");
         }
+        Transaction before = copyOf(transaction);
+        applyRequest(transaction, request);
+        labelService.bind(transaction);
         
-        transaction.setAmount(request.getAmount());
+        Transaction saved = transactionRepository.save(transaction);
+        // fingerprint 未映射到实体，JPA 的 UPDATE 不会覆盖它
+        jdbcTemplate.update("UPDATE transactions SET fingerprint = ? WHERE id = ?",
+            TransactionFingerprint.of(saved), saved.getId());
+        for (TransactionChangeListener listener : changeListeners) {
+            listener.onUpdated(before, saved);
+        }
+        return saved;
+    }
+    
+    /** 按修改请求覆盖交易字段并重算英镑金额；日期未给或无法解析时保持原日期 */
+    static void applyRequest(Transaction transaction, TransactionRequest request) {
+        long amountMinor = Money.toMinor(request.getAmount(), request.getCurrency());
+        transaction.setAmountMinor(amountMinor);
         transaction.setCurrency(request.getCurrency());
-        transaction.setAmountInGbp(request.getAmount() * EXCHANGE_RATES.getOrDefault(request.getCurrency(), 1.0));
+        transaction.setAmountInGbpMinor(gbpMinor(amountMinor, request.getCurrency()));
         transaction.setDescription(request.getDescription());
         transaction.setCategory(request.getCategory());
         transaction.setPaymentMethod(request.getPaymentMethod());
@@ -206,44 +520,49 @@ public class TransactionService {
                 // 保持原日期
             }
         }
-        
-        return transactionRepository.save(transaction);
     }
     
-    @Transactional
     public void deleteTransaction(Integer userId, Integer transactionId) {
-        if (!transactionRepository.existsByIdAndUserId(transactionId, userId)) {
-            throw new RuntimeException("交易不存在");
-        }
-        transactionRepository.deleteByIdAndUserId(transactionId, userId);
+        groupCommitWriter.execute(() -> {
+            Transaction existing = transactionRepository.findByIdAndUserId(transactionId, userId)
+                .orElseThrow(() -> new RuntimeException("交易不存在"));
+            transactionRepository.deleteByIdAndUserId(transactionId, userId);
+            for (TransactionChangeListener listener : changeListeners) {
+                listener.onDeleted(existing);
+            }
+            return null;
+        });
+    }
+
+    /** 按固定汇率折算的英镑金额（便士），未知货币按 1:1 */
+    static long gbpMinor(long amountMinor, String currency) {
+        return Money.toGbpMinor(amountMinor, currency, EXCHANGE_RATES.getOrDefault(currency, 1.0));
+    }
+
+    /** 修改前的快照，供变更回调计算增量 */
+    static Transaction copyOf(Transaction t) {
+        Transaction copy = new Transaction(t.getId(), t.getUserId(), t.getAmountMinor(), t.getCurrency(),
+            t.getAmountInGbpMinor(), t.getDescription(), t.getCategory(), t.getPaymentMethod(), t.getTransactionType(),
+            t.getCreatedAt());
+        copy.setTypeId(t.getTypeId());
+        copy.setCurrencyId(t.getCurrencyId());
+        copy.setCategoryId(t.getCategoryId());
+        copy.setPaymentMethodId(t.getPaymentMethodId());
+        return copy;
     }
     
+    /** 读取 user_stats 计数器，O(1)，不再加载全部交易 */
+    @Transactional(readOnly = true)
     public StatsResponse getStats(Integer userId) {
-        List<Transaction> transactions = transactionRepository.findByUserIdOrderByCreatedAtDesc(userId);
-        
-        double income = 0.0;
-        double expense = 0.0;
-        int incomeCount = 0;
-        int expenseCount = 0;
-        
-        for (Transaction t : transactions) {
-            if ("收入".equals(t.getTransactionType())) {
-                income += t.getAmountInGbp();
-                incomeCount++;
-            } else {
-                expense += t.getAmountInGbp();
-                expenseCount++;
-            }
-        }
-        
-        double balance = income - expense;
+        UserStatsService.Snapshot snapshot = userStatsService.get(userId);
+        long balance = snapshot.income - snapshot.expense;
         
         return new StatsResponse(
-            String.format("%.2f", income),
-            String.format("%.2f", expense),
-            String.format("%.2f", balance),
-            incomeCount,
-            expenseCount
+            Money.format(snapshot.income, Money.GBP_SCALE),
+            Money.format(snapshot.expense, Money.GBP_SCALE),
+            Money.format(balance, Money.GBP_SCALE),
+            snapshot.incomeCount,
+            snapshot.expenseCount
         );
     }
 }
@@ -0,0 +1,233 @@
+package com.countinghelper.service;
+
+import com.countinghelper.entity.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 维护 user_stats 表：每个用户的收入/支出合计（英镑便士）与笔数，以及最后修改版本号。
+ * 通过 {@link TransactionChangeListener} 在每次新增、修改、删除、导入的同一事务内增量更新，
+ * 使汇总统计与 /api/auth/me 的交易笔数变为单行读取。
+ * {@link #repair()} 从交易表全量重算并报告与计数器的偏差，定时执行，也可由管理员手动触发。
+ */
+@Service
+@Lazy(false) // 定时修复任务需要在启动时注册，不随全局延迟初始化推迟到首次使用
+public class UserStatsService implements TransactionChangeListener {
+
+    private static final Logger log = LoggerFactory.getLogger(UserStatsService.class);
+    /** 收入的 type_id 固定为 1（迁移 V11） */
+    private static final String AGGREGATE_SELECT =
+        "SELECT user_id," +
+        " COALESCE(SUM(CASE WHEN type_id = 1 THEN amount_in_gbp ELSE 0 END), 0) AS income," +
+        " COALESCE(SUM(CASE WHEN type_id = 1 THEN 0 ELSE amount_in_gbp END), 0) AS expense," +
+        " COALESCE(SUM(CASE WHEN type_id = 1 THEN 1 ELSE 0 END), 0) AS income_count," +
+        " COALESCE(SUM(CASE WHEN type_id = 1 THEN 0 ELSE 1 END), 0) AS expense_count" +
+        " FROM transactions";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /** 一个用户的汇总计数，金额为英镑便士 */
+    public static class Snapshot {
+        public final long income;
+        public final long expense;
+        public final int incomeCount;
+        public final int expenseCount;
+        public final long version;
+
+        public Snapshot(long income, long expense, int incomeCount, int expenseCount, long version) {
+            this.income = income;
+            this.expense = expense;
+            this.incomeCount = incomeCount;
+            this.expenseCount = expenseCount;
+            this.version = version;
+        }
+
+        public int getTransactionCount() {
+            return incomeCount + expenseCount;
+        }
+    }
+
+    /** 一项偏差：计数器中的值与实际重算值不一致 */
+    public static class Drift {
+        public Integer userId;
+        public String field;
+        public Object stored;
+        public Object actual;
+
+        Drift(Integer userId, String field, Object stored, Object actual) {
+            this.userId = userId;
+            this.field = field;
+            this.stored = stored;
+            this.actual = actual;
+        }
+    }
+
+    /** 读取用户汇总；计数器行缺失时（例如库被外部修改）直接聚合交易表兜底 */
+    @Transactional(readOnly = true)
+    public Snapshot get(Integer userId) {
+        try {
+            return jdbcTemplate.queryForObject(
+                "SELECT income, expense, income_count, expense_count, version FROM user_stats WHERE user_id = ?",
+                (rs, i) -> new Snapshot(rs.getLong(1), rs.getLong(2), rs.getInt(3), rs.getInt(4), rs.getLong(5)),
+                userId);
+        } catch (EmptyResultDataAccessException e) {
+            return jdbcTemplate.queryForObject(
+                AGGREGATE_SELECT + " WHERE user_id = ?",
+                (rs, i) -> new Snapshot(rs.getLong("income"), rs.getLong("expense"),
+                    rs.getInt("income_count"), rs.getInt("expense_count"), 0L),
+                userId);
+        }
+    }
+
+    /** 所有已有计数器行的交易笔数，key 为 user_id（管理员用户列表用） */
+    @Transactional(readOnly = true)
+    public Map<Integer, Integer> transactionCountsByUser() {
+        Map<Integer, Integer> out = new HashMap<>();
+        jdbcTemplate.query("SELECT user_id, income_count + expense_count FROM user_stats",
+            rs -> {
+                out.put(rs.getInt(1), rs.getInt(2));
+            });
+        return out;
+    }
+
+    @Override
+    public void onCreated(Transaction created) {
+        applyDelta(created, 1);
+    }
+
+    /** 同一用户的增量先在内存中合并，每个用户只执行一条 upsert */
+    @Override
+    public void onCreatedAll(List<Transaction> created) {
+        Map<Integer, long[]> deltas = new LinkedHashMap<>();
+        for (Transaction t : created) {
+            long[] d = deltas.computeIfAbsent(t.getUserId(), k -> new long[4]);
+            long gbp = t.getAmountInGbpMinor() != null ? t.getAmountInGbpMinor() : 0;
+            if (isIncome(t)) {
+                d[0] += gbp;
+                d[2]++;
+            } else {
+                d[1] += gbp;
+                d[3]++;
+            }
+        }
+        deltas.forEach((userId, d) -> applyDelta(userId, d[0], d[1], (int) d[2], (int) d[3]));
+    }
+
+    @Override
+    public void onUpdated(Transaction before, Transaction after) {
+        applyDelta(before, -1);
+        applyDelta(after, 1);
+    }
+
+    @Override
+    public void onDeleted(Transaction deleted) {
+        applyDelta(deleted, -1);
+    }
+
+    @Override
+    public void onAllDeleted(Integer userId) {
+        jdbcTemplate.update("DELETE FROM user_stats WHERE user_id = ?", userId);
+    }
+
+    private static boolean isIncome(Transaction t) {
+        return t.getTypeId() != null && t.getTypeId() == TransactionLabelService.INCOME;
+    }
+
+    /**
+     * 行不存在时以增量本身建行：用户在建行前没有任何交易（迁移已回填存量用户），因此从 0 起算是正确的。
+     */
+    private void applyDelta(Transaction t, int sign) {
+        long gbp = t.getAmountInGbpMinor() != null ? t.getAmountInGbpMinor() : 0;
+        boolean income = isIncome(t);
+        applyDelta(t.getUserId(),
+            income ? sign * gbp : 0,
+            income ? 0 : sign * gbp,
+            income ? sign : 0,
+            income ? 0 : sign);
+    }
+
+    private void applyDelta(Integer userId, long income, long expense, int incomeCount, int expenseCount) {
+        jdbcTemplate.update(
+            "INSERT INTO user_stats (user_id, income, expense, income_count, expense_count, version, updated_at)" +
+            " VALUES (?, ?, ?, ?, ?, 1, datetime('now'))" +
+            " ON CONFLICT(user_id) DO UPDATE SET" +
+            "  income = income + excluded.income," +
+            "  expense = expense + excluded.expense," +
+            "  income_count = income_count + excluded.income_count," +
+            "  expense_count = expense_count + excluded.expense_count," +
+            "  version = version + 1," +
+            "  updated_at = excluded.updated_at",
+            userId, income, expense, incomeCount, expenseCount);
+    }
+
+    /**
+     * 从交易表全量重算所有用户的计数器，修正并返回发现的偏差。
+     */
+    @Scheduled(cron = "${app.user-stats.repair-cron:0 30 4 * * *}")
+    @Transactional
+    public List<Drift> repair() {
+        Map<Integer, Snapshot> actual = new HashMap<>();
+        jdbcTemplate.query(AGGREGATE_SELECT + " GROUP BY user_id", rs -> {
+            actual.put(rs.getInt("user_id"), new Snapshot(rs.getLong("income"), rs.getLong("expense"),
+                rs.getInt("income_count"), rs.getInt("expense_count"), 0L));
+        });
+        Map<Integer, Snapshot> stored = new HashMap<>();
+        jdbcTemplate.query("SELECT user_id, income, expense, income_count, expense_count, version FROM user_stats", rs -> {
+            stored.put(rs.getInt(1), new Snapshot(rs.getLong(2), rs.getLong(3), rs.getInt(4), rs.getInt(5), rs.getLong(6)));
+        });
+
+        List<Drift> drifts = new ArrayList<>();
+        Set<Integer> userIds = new HashSet<>(actual.keySet());
+        userIds.addAll(stored.keySet());
+        for (Integer userId : userIds) {
+            Snapshot a = actual.getOrDefault(userId, new Snapshot(0, 0, 0, 0, 0));
+            Snapshot s = stored.get(userId);
+            List<Drift> found = new ArrayList<>();
+            if (s == null) {
+                if (a.getTransactionCount() > 0) {
+                    found.add(new Drift(userId, "row", null, "missing"));
+                }
+            } else {
+                if (s.income != a.income) found.add(new Drift(userId, "income", s.income, a.income));
+                if (s.expense != a.expense) found.add(new Drift(userId, "expense", s.expense, a.expense));
+                if (s.incomeCount != a.incomeCount) found.add(new Drift(userId, "incomeCount", s.incomeCount, a.incomeCount));
+                if (s.expenseCount != a.expenseCount) found.add(new Drift(userId, "expenseCount", s.expenseCount, a.expenseCount));
+            }
+            if (found.isEmpty()) {
+                continue;
+            }
+            drifts.addAll(found);
+            jdbcTemplate.update(
+                "INSERT INTO user_stats (user_id, income, expense, income_count, expense_count, version, updated_at)" +
+                " VALUES (?, ?, ?, ?, ?, 1, datetime('now'))" +
+                " ON CONFLICT(user_id) DO UPDATE SET" +
+                "  income = excluded.income, expense = excluded.expense," +
+                "  income_count = excluded.income_count, expense_count = excluded.expense_count," +
+                "  version = version + 1, updated_at = excluded.updated_at",
+                userId, a.income, a.expense, a.incomeCount, a.expenseCount);
+        }
+        if (drifts.isEmpty()) {
+            log.info("[UserStats] Repair checked {} users, no drift", userIds.size());
+        } else {
+            log.warn("[UserStats] Repair fixed {} drifted fields: {}", drifts.size(),
+                drifts.stream().map(d -> "user " + d.userId + " " + d.field + " " + d.stored + " -> " + d.actual).toList());
+        }
+        return drifts;
+    }
+}
@@ -0,0 +1,277 @@
+package com.countinghelper.service;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.SAXException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 流式 XLSX 读取器：用 {@link XSSFReader} 直接读取第一个工作表的 XML，按事件逐行解析，
+ * 不构建工作簿对象模型，内存占用与行数无关（共享字符串表除外，按唯一字符串常驻内存；本系统导出的文件使用内联字符串，没有该表）。
+ * <p>
+ * 单元格按导入所需转成文本：共享字符串与内联字符串取文本，日期格式的数字转成 yyyy-MM-dd HH:mm
+ * （格式不含时间时为 yyyy-MM-dd），其他数字保留原始值。中间缺失的单元格补空字符串。
+ * 续传位置 {@link #offset()} 为已读取的行数，压缩包内的 XML 无法按字节定位，续传时从头解析并跳过这些行。
+ */
+public class XlsxRecordReader implements RecordReader {
+
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ISO_LOCAL_DATE;
+
+    /** 单元格样式的日期类别 */
+    private static final int NOT_DATE = 0;
+    private static final int DATE_ONLY = 1;
+    private static final int DATE_AND_TIME = 2;
+
+    private final OPCPackage pkg;
+    private InputStream sheet;
+    private XMLStreamReader xml;
+    private SharedStrings strings;
+    private StylesTable styles;
+    private final Map<Integer, Integer> dateKinds = new HashMap<>();
+
+    private final List<String> fields = new ArrayList<>();
+    private int rowNum;
+    private long rowsRead;
+    private int totalRows = -1;
+
+    public XlsxRecordReader(File file) throws IOException {
+        this(file, 0);
+    }
+
+    /** 跳过前 skipRows 行后开始读取（续传） */
+    public XlsxRecordReader(File file, long skipRows) throws IOException {
+        try {
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+        } catch (OpenXML4JException | RuntimeException e) {
+            throw new IOException("无法读取 xlsx 文件：" + e.getMessage(), e);
+        }
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            strings = new ReadOnlySharedStringsTable(pkg);
+            styles = reader.getStylesTable();
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                throw new IOException("工作簿中没有工作表");
+            }
+            sheet = sheets.next();
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            xml = factory.createXMLStreamReader(sheet);
+            readUntilSheetData();
+            while (rowsRead < skipRows && next()) {
+                // 跳过已导入的行
+            }
+        } catch (OpenXML4JException | SAXException | XMLStreamException | RuntimeException e) {
+            close();
+            throw new IOException("无法读取 xlsx 文件：" + e.getMessage(), e);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /** 工作表声明的行数（dimension 的末行号），未声明时为 -1 */
+    @Override
+    public long total() {
+        return totalRows;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        try {
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT && "row".equals(xml.getLocalName())) {
+                    readRow();
+                    rowsRead++;
+                    return true;
+                }
+            }
+            return false;
+        } catch (XMLStreamException | RuntimeException e) {
+            throw new IOException("第" + (rowNum + 1) + "行附近 xlsx 解析失败：" + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public List<String> fields() {
+        return fields;
+    }
+
+    @Override
+    public int line() {
+        return rowNum;
+    }
+
+    /** 已读取的行数 */
+    @Override
+    public long offset() {
+        return rowsRead;
+    }
+
+    @Override
+    public int nextLine() {
+        return rowNum + 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (xml != null) {
+                xml.close();
+            }
+        } catch (XMLStreamException e) {
+            // 忽略，下面仍关闭流与文件
+        }
+        if (sheet != null) {
+            sheet.close();
+        }
+        // 只读打开的包用 revert 关闭，不写回文件
+        pkg.revert();
+    }
+
+    /** 读到 sheetData 开始处，顺带取 dimension 中声明的末行号 */
+    private void readUntilSheetData() throws XMLStreamException {
+        while (xml.hasNext()) {
+            if (xml.next() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            String name = xml.getLocalName();
+            if ("dimension".equals(name)) {
+                String ref = xml.getAttributeValue(null, "ref");
+                if (ref != null) {
+                    totalRows = rowOf(ref.substring(ref.indexOf(':') + 1));
+                }
+            } else if ("sheetData".equals(name)) {
+                return;
+            }
+        }
+    }
+
+    private void readRow() throws XMLStreamException {
+        fields.clear();
+        String r = xml.getAttributeValue(null, "r");
+        rowNum = r != null ? Integer.parseInt(r) : rowNum + 1;
+        while (xml.hasNext()) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT && "c".equals(xml.getLocalName())) {
+                String ref = xml.getAttributeValue(null, "r");
+                int col = ref != null ? columnOf(ref) : fields.size();
+                while (fields.size() < col) {
+                    fields.add("");
+                }
+                fields.add(readCell());
+            } else if (event == XMLStreamConstants.END_ELEMENT && "row".equals(xml.getLocalName())) {
+                return;
+            }
+        }
+    }
+
+    /** 读取一个 c 元素直到其结束，返回单元格文本 */
+    private String readCell() throws XMLStreamException {
+        String type = xml.getAttributeValue(null, "t");
+        String style = xml.getAttributeValue(null, "s");
+        String value = null;
+        StringBuilder inline = null;
+        while (xml.hasNext()) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = xml.getLocalName();
+                if ("v".equals(name)) {
+                    value = xml.getElementText();
+                } else if ("t".equals(name)) {
+                    // 内联字符串：<is><t>..</t></is>，富文本时为多个 <r><t>..</t></r>
+                    if (inline == null) {
+                        inline = new StringBuilder();
+                    }
+                    inline.append(xml.getElementText());
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && "c".equals(xml.getLocalName())) {
+                break;
+            }
+        }
+        if ("inlineStr".equals(type)) {
+            return inline != null ? inline.toString() : "";
+        }
+        if (value == null) {
+            return "";
+        }
+        if ("s".equals(type)) {
+            return strings.getItemAt(Integer.parseInt(value.trim())).getString();
+        }
+        if ("b".equals(type)) {
+            return "1".equals(value) ? "TRUE" : "FALSE";
+        }
+        if (type == null || "n".equals(type)) {
+            int kind = dateKind(style);
+            if (kind != NOT_DATE) {
+                LocalDateTime t = DateUtil.getLocalDateTime(Double.parseDouble(value), false, true);
+                return t.format(kind == DATE_AND_TIME ? DATE_TIME : DATE);
+            }
+        }
+        return value;
+    }
+
+    private int dateKind(String style) {
+        if (style == null || styles == null) {
+            return NOT_DATE;
+        }
+        return dateKinds.computeIfAbsent(Integer.parseInt(style), idx -> {
+            XSSFCellStyle cs = idx < styles.getNumCellStyles() ? styles.getStyleAt(idx) : null;
+            if (cs == null) {
+                return NOT_DATE;
+            }
+            String format = cs.getDataFormatString();
+            if (format == null || !DateUtil.isADateFormat(cs.getDataFormat(), format)) {
+                return NOT_DATE;
+            }
+            return format.toLowerCase(Locale.ROOT).contains("h") ? DATE_AND_TIME : DATE_ONLY;
+        });
+    }
+
+    /** "BC12" 中的列号（从 0 开始） */
+    private static int columnOf(String ref) {
+        int col = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char c = ref.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+            col = col * 26 + (c - 'A' + 1);
+        }
+        return col - 1;
+    }
+
+    /** "G100001" 中的行号 */
+    private static int rowOf(String ref) {
+        int i = 0;
+        while (i < ref.length() && !Character.isDigit(ref.charAt(i))) {
+            i++;
+        }
+        return i < ref.length() ? Integer.parseInt(ref.substring(i)) : -1;
+    }
+}
@@ -0,0 +1,28 @@
+package com.countinghelper.service;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/** XLSX（第一个工作表，列与 CSV 相同），按 zip 文件头识别，续传位置为已读行数 */
+@Service
+@Order(1)
+public class XlsxStatementParser implements StatementParser {
+
+    @Override
+    public String format() {
+        return "xlsx";
+    }
+
+    @Override
+    public boolean matches(byte[] head, int length) {
+        return length >= 4 && head[0] == 'P' && head[1] == 'K' && head[2] == 3 && head[3] == 4;
+    }
+
+    @Override
+    public RecordReader open(Path file, long offset, int nextLine) throws IOException {
+        return new XlsxRecordReader(file.toFile(), offset);
+    }
+}
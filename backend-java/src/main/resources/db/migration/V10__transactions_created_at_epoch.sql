@@ -0,0 +1,16 @@
+-- created_at 为格式不一的 TEXT，按日期/区间筛选时无法走索引。新增规范化的整数列并由写路径同时写入：
+-- created_at_epoch：created_at 视为 UTC 的秒数（不做时区换算，只用于定位与排序），无法解析时为 NULL；
+-- created_day：created_at 的日期，距 1970-01-01 的天数。
+ALTER TABLE transactions ADD COLUMN created_at_epoch INTEGER;
+ALTER TABLE transactions ADD COLUMN created_day INTEGER;
+
+UPDATE transactions SET
+  created_at_epoch = CAST(strftime('%s', created_at) AS INTEGER),
+  created_day = CAST(julianday(date(created_at)) - 2440587.5 AS INTEGER)
+WHERE created_at IS NOT NULL;
+
+-- 列表、日期与区间查询按 (created_at_epoch DESC, id DESC) 定位与排序；id 同为降序，ORDER BY 无需临时排序
+CREATE INDEX IF NOT EXISTS idx_transactions_user_epoch ON transactions(user_id, created_at_epoch DESC, id DESC);
+
+-- 按 created_at 文本排序的游标分页索引已由上面的索引取代
+DROP INDEX IF EXISTS idx_transactions_user_created_id;
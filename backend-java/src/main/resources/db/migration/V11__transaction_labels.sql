@@ -0,0 +1,77 @@
+-- 类型、货币、分类、支付方式改为引用 transaction_labels 的整数 id（见 TransactionLabelService）：
+-- 类型与货币为全局字典（user_id = 0），分类与支付方式按用户；kind：1 类型、2 货币、3 分类、4 支付方式。
+-- 收入、支出固定为 1、2，统计按 type_id = 1 判断收入。
+CREATE TABLE IF NOT EXISTS transaction_labels (
+  id INTEGER PRIMARY KEY,
+  user_id INTEGER NOT NULL,
+  kind INTEGER NOT NULL,
+  name TEXT NOT NULL,
+  UNIQUE (user_id, kind, name)
+);
+
+INSERT OR IGNORE INTO transaction_labels (id, user_id, kind, name) VALUES (1, 0, 1, '收入');
+INSERT OR IGNORE INTO transaction_labels (id, user_id, kind, name) VALUES (2, 0, 1, '支出');
+
+INSERT OR IGNORE INTO transaction_labels (user_id, kind, name)
+SELECT DISTINCT 0, 1, transaction_type FROM transactions WHERE transaction_type IS NOT NULL AND transaction_type <> '';
+INSERT OR IGNORE INTO transaction_labels (user_id, kind, name)
+SELECT DISTINCT 0, 2, currency FROM transactions WHERE currency IS NOT NULL AND currency <> '';
+INSERT OR IGNORE INTO transaction_labels (user_id, kind, name)
+SELECT DISTINCT user_id, 3, category FROM transactions WHERE category IS NOT NULL AND category <> '';
+INSERT OR IGNORE INTO transaction_labels (user_id, kind, name)
+SELECT DISTINCT user_id, 4, payment_method FROM transactions WHERE payment_method IS NOT NULL AND payment_method <> '';
+
+ALTER TABLE transactions ADD COLUMN type_id INTEGER;
+ALTER TABLE transactions ADD COLUMN currency_id INTEGER;
+ALTER TABLE transactions ADD COLUMN category_id INTEGER;
+ALTER TABLE transactions ADD COLUMN payment_method_id INTEGER;
+
+UPDATE transactions SET
+  type_id = (SELECT l.id FROM transaction_labels l
+             WHERE l.user_id = 0 AND l.kind = 1 AND l.name = transactions.transaction_type),
+  currency_id = (SELECT l.id FROM transaction_labels l
+                 WHERE l.user_id = 0 AND l.kind = 2 AND l.name = transactions.currency),
+  category_id = (SELECT l.id FROM transaction_labels l
+                 WHERE l.user_id = transactions.user_id AND l.kind = 3 AND l.name = transactions.category),
+  payment_method_id = (SELECT l.id FROM transaction_labels l
+                       WHERE l.user_id = transactions.user_id AND l.kind = 4 AND l.name = transactions.payment_method);
+
+CREATE INDEX IF NOT EXISTS idx_transactions_user_category ON transactions(user_id, category_id);
+CREATE INDEX IF NOT EXISTS idx_transactions_user_payment_method ON transactions(user_id, payment_method_id);
+
+-- 日汇总按 id 分组重建（空维度为 0），分类改名不再影响汇总行
+DROP TABLE IF EXISTS transaction_daily_rollup;
+CREATE TABLE transaction_daily_rollup (
+  user_id INTEGER NOT NULL,
+  day TEXT NOT NULL,
+  type_id INTEGER NOT NULL DEFAULT 0,
+  category_id INTEGER NOT NULL DEFAULT 0,
+  payment_method_id INTEGER NOT NULL DEFAULT 0,
+  currency_id INTEGER NOT NULL DEFAULT 0,
+  amount INTEGER NOT NULL DEFAULT 0,
+  amount_in_gbp INTEGER NOT NULL DEFAULT 0,
+  tx_count INTEGER NOT NULL DEFAULT 0,
+  PRIMARY KEY (user_id, day, type_id, category_id, payment_method_id, currency_id)
+) WITHOUT ROWID;
+
+INSERT INTO transaction_daily_rollup
+  (user_id, day, type_id, category_id, payment_method_id, currency_id, amount, amount_in_gbp, tx_count)
+SELECT user_id,
+       COALESCE(substr(created_at, 1, 10), ''),
+       COALESCE(type_id, 0),
+       COALESCE(category_id, 0),
+       COALESCE(payment_method_id, 0),
+       COALESCE(currency_id, 0),
+       COALESCE(SUM(CAST(amount AS INTEGER)), 0),
+       COALESCE(SUM(CAST(amount_in_gbp AS INTEGER)), 0),
+       COUNT(*)
+FROM transactions
+GROUP BY user_id, COALESCE(substr(created_at, 1, 10), ''), COALESCE(type_id, 0), COALESCE(category_id, 0),
+         COALESCE(payment_method_id, 0), COALESCE(currency_id, 0);
+
+-- 文本列已由上面的 id 取代；先删除建在其上的旧索引，否则 DROP COLUMN 会失败
+DROP INDEX IF EXISTS idx_transactions_type;
+ALTER TABLE transactions DROP COLUMN transaction_type;
+ALTER TABLE transactions DROP COLUMN currency;
+ALTER TABLE transactions DROP COLUMN category;
+ALTER TABLE transactions DROP COLUMN payment_method;
@@ -0,0 +1,16 @@
+-- 分析结果缓存（见 AnalysisCacheService）：按 (用户, 时间段, 所用数据的哈希) 保存，每个 (用户, 时间段) 只保留最新一条。
+-- window_start 为分析时间段起点的 epoch 秒（全部为 NULL），写入的交易时间不早于它时该条失效；
+-- created_at、last_used_at 为 epoch 秒，超出条数上限时按 last_used_at 淘汰。
+CREATE TABLE IF NOT EXISTS analysis_cache (
+  user_id INTEGER NOT NULL,
+  period TEXT NOT NULL,
+  data_hash TEXT NOT NULL,
+  window_start INTEGER,
+  analysis TEXT NOT NULL,
+  model TEXT,
+  created_at INTEGER NOT NULL,
+  last_used_at INTEGER NOT NULL,
+  PRIMARY KEY (user_id, period)
+);
+
+CREATE INDEX IF NOT EXISTS idx_analysis_cache_last_used ON analysis_cache(last_used_at);
@@ -0,0 +1,12 @@
+-- 全文索引改用 trigram 分词器，检索词按子串匹配（"ffee" 命中 "coffee"），与原来的 LIKE 条件一致。
+-- owner 列改存 "<u{user_id}>"：trigram 至少需要三个字符，两端的定界符也避免 "<u1>" 命中 "<u12>"。
+-- 中日韩字符之间由应用写入时加一个空格（见 TransactionSearchService），两个汉字的检索词即构成一个 trigram。
+-- 新表为空，TransactionSearchService 启动时发现行数不一致会整体重建。
+DROP TABLE IF EXISTS transactions_fts;
+
+CREATE VIRTUAL TABLE IF NOT EXISTS transactions_fts USING fts5(
+  owner,
+  description,
+  category,
+  tokenize = 'trigram'
+);
@@ -0,0 +1,7 @@
+-- 导入任务已匹配为重复的已有交易 id（见 TransactionDedupeService.Detector）：与断点在同一事务内写入，
+-- 续传重建 Detector 时排除，已匹配过的交易不会再与后面的行匹配。任务结束（完成或失败）时删除。
+CREATE TABLE IF NOT EXISTS import_job_matches (
+  job_id TEXT NOT NULL,
+  transaction_id INTEGER NOT NULL,
+  PRIMARY KEY (job_id, transaction_id)
+) WITHOUT ROWID;
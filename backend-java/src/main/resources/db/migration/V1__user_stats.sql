@@ -0,0 +1,23 @@
+-- 每个用户的收支汇总计数器，随交易的新增/修改/删除/导入在同一事务内增量维护。
+-- version 为最后修改版本号，每次变更 +1。
+CREATE TABLE IF NOT EXISTS user_stats (
+  user_id INTEGER PRIMARY KEY,
+  income REAL NOT NULL DEFAULT 0,
+  expense REAL NOT NULL DEFAULT 0,
+  income_count INTEGER NOT NULL DEFAULT 0,
+  expense_count INTEGER NOT NULL DEFAULT 0,
+  version INTEGER NOT NULL DEFAULT 0,
+  updated_at TEXT
+);
+
+-- 用现有交易回填
+INSERT OR REPLACE INTO user_stats (user_id, income, expense, income_count, expense_count, version, updated_at)
+SELECT user_id,
+       COALESCE(SUM(CASE WHEN transaction_type = '收入' THEN amount_in_gbp ELSE 0 END), 0),
+       COALESCE(SUM(CASE WHEN transaction_type = '收入' THEN 0 ELSE amount_in_gbp END), 0),
+       SUM(CASE WHEN transaction_type = '收入' THEN 1 ELSE 0 END),
+       SUM(CASE WHEN transaction_type = '收入' THEN 0 ELSE 1 END),
+       1,
+       datetime('now')
+FROM transactions
+GROUP BY user_id;
@@ -0,0 +1,30 @@
+-- 按 (用户, 本地日期, 类型, 分类, 支付方式, 货币) 汇总的日粒度统计，随交易写入增量维护。
+-- 分析与还款周期统计读取该表，不再扫描全部交易。维度为空时统一存为 ''。
+CREATE TABLE IF NOT EXISTS transaction_daily_rollup (
+  user_id INTEGER NOT NULL,
+  day TEXT NOT NULL,
+  transaction_type TEXT NOT NULL,
+  category TEXT NOT NULL DEFAULT '',
+  payment_method TEXT NOT NULL DEFAULT '',
+  currency TEXT NOT NULL DEFAULT '',
+  amount REAL NOT NULL DEFAULT 0,
+  amount_in_gbp REAL NOT NULL DEFAULT 0,
+  tx_count INTEGER NOT NULL DEFAULT 0,
+  PRIMARY KEY (user_id, day, transaction_type, category, payment_method, currency)
+) WITHOUT ROWID;
+
+-- 用现有交易回填
+INSERT OR REPLACE INTO transaction_daily_rollup
+  (user_id, day, transaction_type, category, payment_method, currency, amount, amount_in_gbp, tx_count)
+SELECT user_id,
+       COALESCE(substr(created_at, 1, 10), ''),
+       COALESCE(transaction_type, ''),
+       COALESCE(category, ''),
+       COALESCE(payment_method, ''),
+       COALESCE(currency, ''),
+       COALESCE(SUM(amount), 0),
+       COALESCE(SUM(amount_in_gbp), 0),
+       COUNT(*)
+FROM transactions
+GROUP BY user_id, COALESCE(substr(created_at, 1, 10), ''), COALESCE(transaction_type, ''),
+         COALESCE(category, ''), COALESCE(payment_method, ''), COALESCE(currency, '');
@@ -0,0 +1,2 @@
+-- 游标分页按 (created_at DESC, id DESC) 顺序定位，复合索引让每页只读 size+1 行
+CREATE INDEX IF NOT EXISTS idx_transactions_user_created_id ON transactions(user_id, created_at, id);
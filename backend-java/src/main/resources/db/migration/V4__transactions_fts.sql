@@ -0,0 +1,9 @@
+-- 交易描述/分类全文索引（FTS5），rowid 即 transactions.id。
+-- owner 列存 "u{user_id}"，让按用户过滤也走倒排索引；中文按单字分词由应用写入时完成，
+-- 因此索引内容由 TransactionSearchService 在写路径维护，启动时发现行数不一致会整体重建。
+CREATE VIRTUAL TABLE IF NOT EXISTS transactions_fts USING fts5(
+  owner,
+  description,
+  category,
+  tokenize = 'unicode61 remove_diacritics 2'
+);
@@ -0,0 +1,23 @@
+-- 后台导入任务：上传文件先落盘，任务按块导入并在同一事务内记录断点（字节偏移、行号、累计结果），
+-- 服务重启后从断点继续。status: queued / running / done / failed
+CREATE TABLE IF NOT EXISTS import_jobs (
+  id TEXT PRIMARY KEY,
+  user_id INTEGER NOT NULL,
+  status TEXT NOT NULL,
+  file_name TEXT,
+  file_path TEXT NOT NULL,
+  total_bytes INTEGER NOT NULL DEFAULT 0,
+  byte_offset INTEGER NOT NULL DEFAULT 0,
+  next_line INTEGER NOT NULL DEFAULT 1,
+  imported INTEGER NOT NULL DEFAULT 0,
+  failed INTEGER NOT NULL DEFAULT 0,
+  errors TEXT,
+  rows_per_second REAL,
+  message TEXT,
+  created_at TEXT NOT NULL,
+  started_at TEXT,
+  finished_at TEXT,
+  updated_at TEXT
+);
+
+CREATE INDEX IF NOT EXISTS idx_import_jobs_user_status ON import_jobs(user_id, status);
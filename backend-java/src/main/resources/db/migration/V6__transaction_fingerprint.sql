@@ -0,0 +1,12 @@
+-- 交易内容指纹（见 TransactionFingerprint），导入时用于识别重复行；存量行由 TransactionDedupeService 启动时回填。
+-- duplicate_of：以「标记」方式导入的疑似重复行，记录与之重复的已有交易 id。
+ALTER TABLE transactions ADD COLUMN fingerprint INTEGER;
+ALTER TABLE transactions ADD COLUMN duplicate_of INTEGER;
+
+CREATE INDEX IF NOT EXISTS idx_transactions_user_fingerprint ON transactions(user_id, fingerprint);
+
+-- 导入任务记录重复处理方式、比对范围（任务开始时该用户最大交易 id）与重复行统计，续传时沿用
+ALTER TABLE import_jobs ADD COLUMN duplicate_mode TEXT NOT NULL DEFAULT 'skip';
+ALTER TABLE import_jobs ADD COLUMN dedupe_max_id INTEGER;
+ALTER TABLE import_jobs ADD COLUMN duplicates INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE import_jobs ADD COLUMN duplicate_rows TEXT;
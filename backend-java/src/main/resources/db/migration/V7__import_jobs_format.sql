@@ -0,0 +1,3 @@
+-- 导入任务的文件格式（csv / xlsx）。xlsx 无法按字节续传，byte_offset 记录已读行数，total_rows 为工作表声明的行数
+ALTER TABLE import_jobs ADD COLUMN file_format TEXT NOT NULL DEFAULT 'csv';
+ALTER TABLE import_jobs ADD COLUMN total_rows INTEGER;
@@ -0,0 +1,26 @@
+-- 增量同步：每个用户一个单调递增的变更版本号，每次写入 +1 并写到受影响的行（change_version）上；
+-- 删除的交易记入 transaction_tombstones。客户端带上次的版本号拉取之后的变更（见 SyncService）。
+-- reset_version：早于该版本的同步点已无法增量补齐（墓碑已清理），需要全量重新同步。
+CREATE TABLE IF NOT EXISTS user_sync (
+  user_id INTEGER PRIMARY KEY,
+  version INTEGER NOT NULL DEFAULT 0,
+  reset_version INTEGER NOT NULL DEFAULT 0
+);
+
+-- 存量交易取默认值 1（即各用户的初始版本）；新行由写入路径在同一事务内改写为当时的版本号
+ALTER TABLE transactions ADD COLUMN change_version INTEGER NOT NULL DEFAULT 1;
+
+INSERT OR IGNORE INTO user_sync (user_id, version)
+SELECT DISTINCT user_id, 1 FROM transactions;
+
+CREATE INDEX IF NOT EXISTS idx_transactions_user_change ON transactions(user_id, change_version, id);
+
+CREATE TABLE IF NOT EXISTS transaction_tombstones (
+  user_id INTEGER NOT NULL,
+  transaction_id INTEGER NOT NULL,
+  change_version INTEGER NOT NULL,
+  deleted_at TEXT NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_tombstones_user_change ON transaction_tombstones(user_id, change_version, transaction_id);
+CREATE INDEX IF NOT EXISTS idx_tombstones_deleted_at ON transaction_tombstones(deleted_at);
@@ -0,0 +1,66 @@
+-- 金额改为最小货币单位的整数（见 Money）：amount 按货币的小数位数（日元等 0 位、第纳尔等 3 位、其余 2 位），
+-- amount_in_gbp 为便士。transactions 的列名与声明类型不变（SQLite 无法原地改列类型，重建表会丢掉各部署自建的索引），
+-- 取整后的值由 SQLite 以整数格式存储，应用按 long 读写。
+UPDATE transactions SET
+  amount = CAST(ROUND(amount * CASE
+    WHEN currency IN ('JPY', 'KRW', 'VND', 'CLP', 'ISK', 'PYG', 'UGX', 'XAF', 'XOF', 'XPF', 'BIF', 'DJF', 'GNF', 'KMF', 'RWF', 'VUV') THEN 1
+    WHEN currency IN ('BHD', 'IQD', 'JOD', 'KWD', 'LYD', 'OMR', 'TND') THEN 1000
+    ELSE 100 END) AS INTEGER),
+  amount_in_gbp = CAST(ROUND(amount_in_gbp * 100) AS INTEGER);
+
+-- 指纹按最小单位计算；两位小数货币与原先「金额到分」一致，其余货币置空，由 TransactionDedupeService 启动时重算
+UPDATE transactions SET fingerprint = NULL
+WHERE currency IN ('JPY', 'KRW', 'VND', 'CLP', 'ISK', 'PYG', 'UGX', 'XAF', 'XOF', 'XPF', 'BIF', 'DJF', 'GNF', 'KMF', 'RWF', 'VUV',
+                   'BHD', 'IQD', 'JOD', 'KWD', 'LYD', 'OMR', 'TND');
+
+-- 派生表按整数列重建并从交易表回填
+DROP TABLE IF EXISTS user_stats;
+CREATE TABLE user_stats (
+  user_id INTEGER PRIMARY KEY,
+  income INTEGER NOT NULL DEFAULT 0,
+  expense INTEGER NOT NULL DEFAULT 0,
+  income_count INTEGER NOT NULL DEFAULT 0,
+  expense_count INTEGER NOT NULL DEFAULT 0,
+  version INTEGER NOT NULL DEFAULT 0,
+  updated_at TEXT
+);
+
+INSERT INTO user_stats (user_id, income, expense, income_count, expense_count, version, updated_at)
+SELECT user_id,
+       COALESCE(SUM(CASE WHEN transaction_type = '收入' THEN CAST(amount_in_gbp AS INTEGER) ELSE 0 END), 0),
+       COALESCE(SUM(CASE WHEN transaction_type = '收入' THEN 0 ELSE CAST(amount_in_gbp AS INTEGER) END), 0),
+       SUM(CASE WHEN transaction_type = '收入' THEN 1 ELSE 0 END),
+       SUM(CASE WHEN transaction_type = '收入' THEN 0 ELSE 1 END),
+       1,
+       datetime('now')
+FROM transactions
+GROUP BY user_id;
+
+DROP TABLE IF EXISTS transaction_daily_rollup;
+CREATE TABLE transaction_daily_rollup (
+  user_id INTEGER NOT NULL,
+  day TEXT NOT NULL,
+  transaction_type TEXT NOT NULL,
+  category TEXT NOT NULL DEFAULT '',
+  payment_method TEXT NOT NULL DEFAULT '',
+  currency TEXT NOT NULL DEFAULT '',
+  amount INTEGER NOT NULL DEFAULT 0,
+  amount_in_gbp INTEGER NOT NULL DEFAULT 0,
+  tx_count INTEGER NOT NULL DEFAULT 0,
+  PRIMARY KEY (user_id, day, transaction_type, category, payment_method, currency)
+) WITHOUT ROWID;
+
+INSERT INTO transaction_daily_rollup
+  (user_id, day, transaction_type, category, payment_method, currency, amount, amount_in_gbp, tx_count)
+SELECT user_id,
+       COALESCE(substr(created_at, 1, 10), ''),
+       COALESCE(transaction_type, ''),
+       COALESCE(category, ''),
+       COALESCE(payment_method, ''),
+       COALESCE(currency, ''),
+       COALESCE(SUM(CAST(amount AS INTEGER)), 0),
+       COALESCE(SUM(CAST(amount_in_gbp AS INTEGER)), 0),
+       COUNT(*)
+FROM transactions
+GROUP BY user_id, COALESCE(substr(created_at, 1, 10), ''), COALESCE(transaction_type, ''),
+         COALESCE(category, ''), COALESCE(payment_method, ''), COALESCE(currency, '');
@@ -0,0 +1,166 @@
+package com.countinghelper.repository;
+
+import com.countinghelper.config.SchemaMigrator;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 按日期、区间、起点筛选的交易查询在迁移后的表结构上应走 (user_id, created_at_epoch DESC, id DESC) 索引定位，
+ * 且 ORDER BY 不需要临时排序。表结构由 {@link SchemaMigrator} 在临时 SQLite 文件上执行全部迁移得到；
+ * JPQL 查询按 Hibernate 生成的 SQL 形式写出，原生查询直接用 {@link TransactionRepository#DAY_RANGE}。
+ */
+class TransactionRepositoryQueryPlanTest {
+
+    private static final String INDEX = "idx_transactions_user_epoch";
+
+    @TempDir
+    static Path dir;
+
+    private static SingleConnectionDataSource dataSource;
+    private static NamedParameterJdbcTemplate jdbc;
+
+    @BeforeAll
+    static void migrate() throws Exception {
+        dataSource = new SingleConnectionDataSource("jdbc:sqlite:" + dir.resolve("plan.db"), true);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        // 迁移前的基础表（与最早部署的库一致），V1 起的迁移在其上执行
+        jdbcTemplate.execute(
+            "CREATE TABLE transactions (" +
+            "  id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "  user_id INTEGER NOT NULL," +
+            "  amount REAL NOT NULL," +
+            "  currency TEXT DEFAULT 'GBP'," +
+            "  amount_in_gbp REAL NOT NULL," +
+            "  description TEXT," +
+            "  category TEXT," +
+            "  payment_method TEXT NOT NULL," +
+            "  transaction_type TEXT NOT NULL," +
+            "  created_at DATETIME DEFAULT CURRENT_TIMESTAMP" +
+            ")");
+        new SchemaMigrator(jdbcTemplate, new DataSourceTransactionManager(dataSource), null).afterPropertiesSet();
+        jdbc = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    @AfterAll
+    static void close() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void findByUserIdAndDate() {
+        assertIndexedWithoutSort(
+            "SELECT * FROM transactions WHERE user_id = :userId" + TransactionRepository.DAY_RANGE +
+            " ORDER BY created_at_epoch DESC, id DESC");
+    }
+
+    @Test
+    void findByUserIdAndDatePaged() {
+        assertIndexedWithoutSort(
+            "SELECT * FROM transactions WHERE user_id = :userId" + TransactionRepository.DAY_RANGE +
+            " ORDER BY created_at_epoch DESC, id DESC LIMIT :limit OFFSET :offset");
+        assertIndexedWithoutSort(
+            "SELECT COUNT(*) FROM transactions WHERE user_id = :userId" + TransactionRepository.DAY_RANGE);
+    }
+
+    @Test
+    void findByUserIdAndEpochBetween() {
+        assertIndexedWithoutSort(
+            "SELECT * FROM transactions WHERE user_id = :userId AND created_at_epoch BETWEEN :start AND :end" +
+            " ORDER BY created_at_epoch DESC, id DESC");
+    }
+
+    @Test
+    void findByUserIdAndEpochBetweenPaged() {
+        assertIndexedWithoutSort(
+            "SELECT * FROM transactions WHERE user_id = :userId AND created_at_epoch BETWEEN :start AND :end" +
+            " ORDER BY created_at_epoch DESC, id DESC LIMIT :limit OFFSET :offset");
+        assertIndexedWithoutSort(
+            "SELECT COUNT(*) FROM transactions WHERE user_id = :userId AND created_at_epoch BETWEEN :start AND :end");
+    }
+
+    @Test
+    void findByUserIdAndEpochFrom() {
+        assertIndexedWithoutSort(
+            "SELECT * FROM transactions WHERE user_id = :userId AND created_at_epoch >= :start" +
+            " ORDER BY created_at_epoch DESC, id DESC");
+    }
+
+    @Test
+    void findTop50ByUserIdAndCreatedAtEpochGreaterThanEqual() {
+        assertIndexedWithoutSort(
+            "SELECT * FROM transactions WHERE user_id = :userId AND created_at_epoch >= :start" +
+            " ORDER BY created_at_epoch DESC, id DESC LIMIT 50");
+    }
+
+    @Test
+    void findByUserIdOrderByCreatedAtDesc() {
+        assertIndexedWithoutSort(
+            "SELECT * FROM transactions WHERE user_id = :userId ORDER BY created_at_epoch DESC, id DESC" +
+            " LIMIT :limit OFFSET :offset");
+    }
+
+    /** TransactionService.getTransactionsByCursor：行值游标须成为索引上的范围查找，不能只按 user_id 定位 */
+    @Test
+    void cursorPage() {
+        String text = assertIndexedWithoutSort(
+            "SELECT * FROM transactions WHERE user_id = :userId AND ((created_at_epoch, id) < (:start, :id))" +
+            " ORDER BY created_at_epoch DESC, id DESC LIMIT :limit");
+        assertTrue(text.contains("(user_id=? AND created_at_epoch<?)"), () -> "游标未参与定位：\n" + text);
+    }
+
+    /** 游标分页中无时间的部分 */
+    @Test
+    void cursorPageNullEpoch() {
+        String text = assertIndexedWithoutSort(
+            "SELECT * FROM transactions WHERE user_id = :userId AND created_at_epoch IS NULL AND id < :id" +
+            " ORDER BY created_at_epoch DESC, id DESC LIMIT :limit");
+        assertTrue(text.contains("id<?"), () -> "游标未参与定位：\n" + text);
+    }
+
+    /** DailyRollupService.findRowsBetween：分析时间段起点当天的零头，分组需要临时表，只检查按索引定位 */
+    @Test
+    void dailyRollupFindRowsBetween() {
+        assertIndexed(
+            "SELECT date(created_at_epoch, 'unixepoch'), COALESCE(type_id, 0), COALESCE(category_id, 0)," +
+            " COALESCE(payment_method_id, 0), COALESCE(currency_id, 0)," +
+            " COALESCE(SUM(amount), 0), COALESCE(SUM(amount_in_gbp), 0), COUNT(*)" +
+            " FROM transactions WHERE user_id = :userId AND created_at_epoch BETWEEN :start AND :end" +
+            " GROUP BY 1, 2, 3, 4, 5 ORDER BY 1, 2, 3, 4, 5");
+    }
+
+    private static String assertIndexedWithoutSort(String sql) {
+        String text = assertIndexed(sql);
+        assertFalse(text.contains("USE TEMP B-TREE"), () -> "需要临时排序：\n" + text + "\n" + sql);
+        return text;
+    }
+
+    /** 返回查询计划文本 */
+    private static String assertIndexed(String sql) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+            .addValue("userId", 1)
+            .addValue("date", "2024-03-01")
+            .addValue("start", 1709251200L)
+            .addValue("end", 1709337599L)
+            .addValue("id", 1000)
+            .addValue("limit", 20)
+            .addValue("offset", 0);
+        List<String> plan = jdbc.query("EXPLAIN QUERY PLAN " + sql, params, (rs, i) -> rs.getString("detail"));
+        String text = String.join("\n", plan);
+        assertTrue(text.matches("(?s).*USING (COVERING )?INDEX " + INDEX + " \\(user_id=\\?.*"),
+            () -> "未走 " + INDEX + "：\n" + text + "\n" + sql);
+        return text;
+    }
+}
@@ -0,0 +1,195 @@
+package com.countinghelper.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分析提示词的收支汇总：{@link TransactionAggregationService#aggregate} 与此前按名称分四次遍历、
+ * 每个分组用 HashMap&lt;String, Long&gt; 装箱累加的实现（{@link #fourMaps}，原样保留自 AnalysisService）对比。
+ * <p>
+ * 运行（需带 GC 分配统计）：
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/test.classpath
+ * java -cp target/test-classes:target/classes:$(cat target/test.classpath) org.openjdk.jmh.Main TransactionAggregationBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionAggregationBenchmark {
+
+    private static final int USER = 1;
+    private static final int CATEGORIES = 20;
+    private static final int PAYMENT_METHODS = 5;
+
+    /** 汇总行数：约一个月与约一年的日汇总 */
+    @Param({ "1000", "20000" })
+    public int rows;
+
+    private TransactionAggregationService service;
+    private List<DailyRollupService.Row> idRows;
+    private List<NamedRow> namedRows;
+
+    /** 改为标签 id 之前的汇总行，维度为名称 */
+    static final class NamedRow {
+        final String day;
+        final String transactionType;
+        final String category;
+        final String paymentMethod;
+        final long amountInGbp;
+
+        NamedRow(String day, String transactionType, String category, String paymentMethod, long amountInGbp) {
+            this.day = day;
+            this.transactionType = transactionType;
+            this.category = category;
+            this.paymentMethod = paymentMethod;
+            this.amountInGbp = amountInGbp;
+        }
+
+        boolean isIncome() {
+            return "收入".equals(transactionType);
+        }
+    }
+
+    /** 名称只来自内存字典，不访问数据库 */
+    static final class FixedLabels extends TransactionLabelService {
+        final Map<Integer, String> names = new HashMap<>();
+
+        @Override
+        public String nameOf(Integer userId, Integer id) {
+            return id != null ? names.get(id) : null;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        FixedLabels labels = new FixedLabels();
+        labels.names.put(TransactionLabelService.INCOME, "收入");
+        labels.names.put(TransactionLabelService.EXPENSE, "支出");
+        for (int i = 0; i < CATEGORIES; i++) {
+            labels.names.put(100 + i, "分类" + i);
+        }
+        for (int i = 0; i < PAYMENT_METHODS; i++) {
+            labels.names.put(200 + i, "支付方式" + i);
+        }
+        service = new TransactionAggregationService();
+        ReflectionTestUtils.setField(service, "labelService", labels);
+
+        Random random = new Random(42);
+        LocalDate first = LocalDate.of(2024, 1, 1);
+        idRows = new ArrayList<>(rows);
+        namedRows = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            // 每天约 30 行（类型 × 分类 × 支付方式的组合），约一成为收入，少量无分类
+            String day = first.plusDays(i / 30).toString();
+            int type = random.nextInt(10) == 0 ? TransactionLabelService.INCOME : TransactionLabelService.EXPENSE;
+            int category = random.nextInt(CATEGORIES + 1) == 0 ? 0 : 100 + random.nextInt(CATEGORIES);
+            int method = 200 + random.nextInt(PAYMENT_METHODS);
+            long amount = 100 + random.nextInt(20_000);
+            idRows.add(new DailyRollupService.Row(day, type, category, method, 0, amount, amount, 1 + random.nextInt(3)));
+            namedRows.add(new NamedRow(new String(day), labels.names.get(type),
+                category == 0 ? "" : labels.names.get(category), labels.names.get(method), amount));
+        }
+    }
+
+    @Benchmark
+    public TransactionAggregationService.Breakdown singlePass() {
+        return service.aggregate(USER, idRows, "未填写", "未分类");
+    }
+
+    @Benchmark
+    public Object[] fourMaps() {
+        return new Object[] {
+            calculateStats(namedRows),
+            calculateDailyStats(namedRows),
+            calculatePaymentMethodStats(namedRows),
+            calculateCategoryStats(namedRows)
+        };
+    }
+
+    private static Map<String, Long> calculateStats(List<NamedRow> rows) {
+        long income = 0;
+        long expense = 0;
+        Set<String> days = new HashSet<>();
+
+        for (NamedRow r : rows) {
+            if (r.isIncome()) {
+                income += r.amountInGbp;
+            } else {
+                expense += r.amountInGbp;
+            }
+            days.add(r.day);
+        }
+
+        long avgDailyExpense = !days.isEmpty() ? Math.round((double) expense / days.size()) : 0;
+
+        Map<String, Long> stats = new HashMap<>();
+        stats.put("income", income);
+        stats.put("expense", expense);
+        stats.put("balance", income - expense);
+        stats.put("avgDailyExpense", avgDailyExpense);
+
+        return stats;
+    }
+
+    private static Map<String, Object> calculateDailyStats(List<NamedRow> rows) {
+        Map<String, Map<String, Long>> dailyMap = new LinkedHashMap<>();
+        for (NamedRow r : rows) {
+            if (r.day.isEmpty()) continue;
+            addTo(dailyMap, r.day, r);
+        }
+        return new HashMap<>(dailyMap);
+    }
+
+    private static Map<String, Object> calculatePaymentMethodStats(List<NamedRow> rows) {
+        Map<String, Map<String, Long>> byMethod = new LinkedHashMap<>();
+        for (NamedRow r : rows) {
+            String method = !r.paymentMethod.isEmpty() ? r.paymentMethod : "未填写";
+            addTo(byMethod, method, r);
+        }
+        return new HashMap<>(byMethod);
+    }
+
+    private static Map<String, Object> calculateCategoryStats(List<NamedRow> rows) {
+        Map<String, Map<String, Long>> byCategory = new LinkedHashMap<>();
+        for (NamedRow r : rows) {
+            String cat = !r.category.isEmpty() ? r.category : "未分类";
+            addTo(byCategory, cat, r);
+        }
+        return new HashMap<>(byCategory);
+    }
+
+    private static void addTo(Map<String, Map<String, Long>> target, String key, NamedRow r) {
+        target.putIfAbsent(key, new HashMap<>(Map.of("income", 0L, "expense", 0L)));
+        Map<String, Long> m = target.get(key);
+        if (r.isIncome()) {
+            m.put("income", m.get("income") + r.amountInGbp);
+        } else {
+            m.put("expense", m.get("expense") + r.amountInGbp);
+        }
+    }
+}
@@ -1,4 +1,4 @@
-import { useState, useEffect } from 'react';
+import { useState, useEffect, useRef } from 'react';
 import Layout from '../components/Layout';
 import EmptyState from '../components/EmptyState';
 import { analysisApi } from '../services/api';
@@ -8,16 +8,26 @@ export default function Analysis() {
   const [loading, setLoading] = useState(false);
   const [period, setPeriod] = useState<'day' | '3days' | 'week' | 'month' | 'all'>('all');
   const [error, setError] = useState('');
+  // 进行中的分析；重新分析或离开页面时中止，服务端随之取消任务
+  const runningRef = useRef<AbortController | null>(null);
 
   useEffect(() => {
     loadAnalysis();
+    return () => runningRef.current?.abort();
   }, []);
 
   const loadAnalysis = async () => {
+    runningRef.current?.abort();
+    const controller = new AbortController();
+    runningRef.current = controller;
     setLoading(true);
     setError('');
+    setAnalysis('');
     try {
-      const response = await analysisApi.analyze(period);
+      const response = await analysisApi.analyze(period, (text) => {
+        if (!controller.signal.aborted) setAnalysis(text);
+      }, controller.signal);
+      if (controller.signal.aborted) return;
       // 检查是否有静默错误
       if ((response as { silent?: boolean; isTokenExpired?: boolean })?.silent || (response as { isTokenExpired?: boolean })?.isTokenExpired) {
         return; // token失效，会被重定向，不需要继续处理
@@ -27,14 +37,21 @@ export default function Analysis() {
         setError(response.error);
       }
     } catch (err: any) {
+      // 被新的分析取代或已离开页面
+      if (controller.signal.aborted) {
+        return;
+      }
       // 如果是token失效，已经被拦截器静默处理，不需要显示错误
       if (err?.silent || err?.isTokenExpired) {
         return;
       }
-      setError(err.response?.data?.error || '分析失败，请重试');
+      setError(err.response?.data?.error || (!err?.isAxiosError && err?.message) || '分析失败，请重试');
       setAnalysis('');
     } finally {
-      setLoading(false);
+      if (runningRef.current === controller) {
+        runningRef.current = null;
+        setLoading(false);
+      }
     }
   };
 
@@ -22,7 +22,7 @@ export default function Settings() {
   const [exporting, setExporting] = useState(false);
   const [importFile, setImportFile] = useState<File | null>(null);
   const [importing, setImporting] = useState(false);
-  const [importResult, setImportResult] = useState<{ imported: number; failed: number; errors: string[] } | null>(null);
+  const [importResult, setImportResult] = useState<{ imported: number; failed: number; errors: string[]; duplicates: number } | null>(null);
   const [categories, setCategories] = useState<UserCategory[]>([]);
   const [newCategoryName, setNewCategoryName] = useState('');
   const [addingCategory, setAddingCategory] = useState(false);
@@ -77,7 +77,7 @@ export default function Settings() {
 
   const handleImport = async () => {
     if (!importFile) {
-      toast('请先选择 CSV 文件');
+      toast('请先选择要导入的文件');
       return;
     }
     setImporting(true);
@@ -87,6 +87,7 @@ export default function Settings() {
       setImportResult(result);
       if (result.imported > 0) toast(`已导入 ${result.imported} 条`);
       if (result.failed > 0 && result.errors.length > 0) toast(`有 ${result.failed} 条导入失败`);
+      if (result.duplicates > 0) toast(`跳过 ${result.duplicates} 条重复交易`);
     } catch (e: unknown) {
       const err = e as Error;
       toast(err.message || '导入失败');
@@ -354,14 +355,14 @@ export default function Settings() {
                 </svg>
                 数据导入
               </h2>
-              <p className="text-sm mb-3" style={{ color: 'var(--theme-text-muted)' }}>上传 CSV，格式与导出一致：日期,类型,金额,货币,支付方式,分类,描述（首行为表头）</p>
+              <p className="text-sm mb-3" style={{ color: 'var(--theme-text-muted)' }}>上传 CSV 或 XLSX（列与导出一致：日期,类型,金额,货币,支付方式,分类,描述，首行为表头），或银行对账单 OFX / QIF / CAMT.053</p>
               <div className="space-y-3">
                 <div className="flex flex-wrap items-center gap-3">
-                  <label htmlFor="import-csv" className="sr-only">选择 CSV 文件</label>
+                  <label htmlFor="import-csv" className="sr-only">选择导入文件</label>
                   <input
                     id="import-csv"
                     type="file"
-                    accept=".csv"
+                    accept=".csv,.xlsx,.ofx,.qfx,.qif,.xml"
                     className="text-sm"
                     onChange={(e) => {
                       const f = e.target.files?.[0];
@@ -374,14 +375,17 @@ export default function Settings() {
                     onClick={handleImport}
                     disabled={importing || !importFile}
                     className="btn-primary"
-                    aria-label="导入 CSV"
+                    aria-label="导入交易文件"
                   >
                     {importing ? '导入中...' : '导入'}
                   </button>
                 </div>
                 {importResult && (
                   <div className="text-sm rounded-lg p-3 border" style={{ borderColor: 'var(--theme-border)', color: 'var(--theme-text)' }}>
-                    <p>成功导入 {importResult.imported} 条，失败 {importResult.failed} 条</p>
+                    <p>
+                      成功导入 {importResult.imported} 条，失败 {importResult.failed} 条
+                      {importResult.duplicates > 0 && `，跳过重复 ${importResult.duplicates} 条`}
+                    </p>
                     {importResult.errors.length > 0 && (
                       <ul className="mt-2 list-disc list-inside text-red-600 dark:text-red-400">
                         {importResult.errors.slice(0, 10).map((msg, i) => (
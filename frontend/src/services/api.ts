@@ -1,6 +1,6 @@
 import axios from 'axios';
 import { getToken, removeToken, setUserRole } from './auth';
-import type { User, Transaction, Stats, AnalysisResponse, BillingCycleDto, TransactionPage, UserCategory } from '../types';
+import type { User, Transaction, Stats, AnalysisResponse, BillingCycleDto, TransactionPage, TransactionCursorPage, TransactionHighlights, UserCategory, BatchOperation, BatchResponse, SyncPage, SyncResult } from '../types';
 
 // In app build (Capacitor), use VITE_API_URL (e.g. https://your-api.com/api). In dev/web, default is /api (proxy).
 const api = axios.create({
@@ -193,9 +193,11 @@ export const transactionApi = {
       paymentMethod?: string;
       category?: string;
       keyword?: string;
+      sort?: 'relevance';
+      highlight?: boolean;
     }
   ): Promise<TransactionPage> => {
-    const params: Record<string, string | number> = { page, size };
+    const params: Record<string, string | number | boolean> = { page, size };
     if (opts?.from && opts?.to) {
       params.from = opts.from;
       params.to = opts.to;
@@ -206,6 +208,8 @@ export const transactionApi = {
     if (opts?.paymentMethod) params.paymentMethod = opts.paymentMethod;
     if (opts?.category) params.category = opts.category;
     if (opts?.keyword?.trim()) params.keyword = opts.keyword.trim();
+    if (opts?.sort) params.sort = opts.sort;
+    if (opts?.highlight) params.highlight = true;
     const response = await api.get('/transactions/paged', { params });
     const data = response.data;
     if (data?.silent || data?.isTokenExpired) return data;
@@ -215,6 +219,7 @@ export const transactionApi = {
       totalPages?: number;
       number?: number;
       size?: number;
+      highlights?: TransactionHighlights;
     };
     return {
       content: (raw.content ?? []).map((t) => normalizeTransaction(t as Record<string, unknown>)),
@@ -222,6 +227,50 @@ export const transactionApi = {
       totalPages: raw.totalPages ?? 0,
       number: raw.number ?? 0,
       size: raw.size ?? size,
+      highlights: raw.highlights,
+    };
+  },
+  /** 游标分页（无限滚动）：cursor 传 '' 取第一页，之后传上一页的 nextCursor */
+  getCursorPage: async (
+    cursor: string,
+    size: number,
+    opts?: {
+      date?: string;
+      from?: string;
+      to?: string;
+      type?: string;
+      paymentMethod?: string;
+      category?: string;
+      keyword?: string;
+      withTotal?: boolean;
+    }
+  ): Promise<TransactionCursorPage> => {
+    const params: Record<string, string | number | boolean> = { cursor, size };
+    if (opts?.from && opts?.to) {
+      params.from = opts.from;
+      params.to = opts.to;
+    } else if (opts?.date) {
+      params.date = opts.date;
+    }
+    if (opts?.type) params.type = opts.type;
+    if (opts?.paymentMethod) params.paymentMethod = opts.paymentMethod;
+    if (opts?.category) params.category = opts.category;
+    if (opts?.keyword?.trim()) params.keyword = opts.keyword.trim();
+    if (opts?.withTotal) params.withTotal = true;
+    const response = await api.get('/transactions/paged', { params });
+    const data = response.data;
+    if (data?.silent || data?.isTokenExpired) return data;
+    const raw = data as {
+      content?: unknown[];
+      nextCursor?: string | null;
+      hasNext?: boolean;
+      totalElements?: number;
+    };
+    return {
+      content: (raw.content ?? []).map((t) => normalizeTransaction(t as Record<string, unknown>)),
+      nextCursor: raw.nextCursor ?? null,
+      hasNext: raw.hasNext ?? false,
+      totalElements: raw.totalElements,
     };
   },
   update: async (id: number, transaction: Partial<Transaction> & { amount?: number | string }) => {
@@ -232,6 +281,25 @@ export const transactionApi = {
     const response = await api.delete(`/transactions/${id}`);
     return response.data;
   },
+  /**
+   * 批量新增 / 修改 / 删除，整批一个请求、一个写事务。atomic（默认）时任一项失败则全部不执行，
+   * 后端返回 400，结果在 error.response.data.results 中；best-effort 时只跳过失败项。
+   */
+  batch: async (
+    operations: BatchOperation[],
+    mode: 'atomic' | 'best-effort' = 'atomic'
+  ): Promise<BatchResponse> => {
+    const response = await api.post('/transactions/batch', {
+      mode,
+      operations: operations.map((o) => ({
+        clientId: o.clientId,
+        op: o.op,
+        id: o.id,
+        data: o.data ? toBackendTransactionPayload(o.data) : undefined,
+      })),
+    });
+    return response.data;
+  },
   /** 导出交易为 CSV 或 Excel，可选日期范围；成功后触发浏览器下载 */
   export: async (format: 'csv' | 'excel', from?: string, to?: string): Promise<void> => {
     const params: Record<string, string> = { format: format === 'excel' ? 'excel' : 'csv' };
@@ -259,19 +327,51 @@ export const transactionApi = {
     a.click();
     URL.revokeObjectURL(url);
   },
-  /** 从 CSV 导入交易，格式与导出一致。返回 { imported, failed, errors } */
-  importCsv: async (file: File): Promise<{ imported: number; failed: number; errors: string[] }> => {
+  /**
+   * 导入交易：CSV / XLSX（列与导出一致）或银行对账单 OFX、QIF、CAMT.053，服务端按内容识别格式。服务端在后台导入，这里轮询任务进度直到结束，
+   * onProgress 可选地接收进度（0~1）与已处理行数。duplicates 为与已有交易重复的行的处理方式：
+   * skip 跳过（默认）、flag 导入并标记、force 不检查。返回 { imported, failed, errors, duplicates, duplicateRows }
+   */
+  importCsv: async (
+    file: File,
+    onProgress?: (progress: number, processed: number) => void,
+    duplicates: 'skip' | 'flag' | 'force' = 'skip'
+  ): Promise<{ imported: number; failed: number; errors: string[]; duplicates: number; duplicateRows: string[] }> => {
     const form = new FormData();
     form.append('file', file);
+    form.append('duplicates', duplicates);
     const response = await api.post('/transactions/import', form, {
       headers: { 'Content-Type': 'multipart/form-data' },
     });
-    const data = response.data as { imported?: number; failed?: number; errors?: string[] };
-    return {
-      imported: data.imported ?? 0,
-      failed: data.failed ?? 0,
-      errors: Array.isArray(data.errors) ? data.errors : [],
-    };
+    const { jobId } = response.data as { jobId: string };
+    for (;;) {
+      await new Promise((resolve) => setTimeout(resolve, 1000));
+      const { data } = await api.get(`/transactions/import/${encodeURIComponent(jobId)}`);
+      const job = data as {
+        status?: string;
+        progress?: number;
+        processed?: number;
+        imported?: number;
+        failed?: number;
+        errors?: string[];
+        duplicates?: number;
+        duplicateRows?: string[];
+        message?: string;
+      };
+      onProgress?.(job.progress ?? 0, job.processed ?? 0);
+      if (job.status === 'failed') {
+        throw new Error(job.message || '导入失败');
+      }
+      if (job.status === 'done') {
+        return {
+          imported: job.imported ?? 0,
+          failed: job.failed ?? 0,
+          errors: Array.isArray(job.errors) ? job.errors : [],
+          duplicates: job.duplicates ?? 0,
+          duplicateRows: Array.isArray(job.duplicateRows) ? job.duplicateRows : [],
+        };
+      }
+    }
   },
 };
 
@@ -282,10 +382,90 @@ export const statsApi = {
   },
 };
 
+/** 解析 SSE 文本中完整的事件，返回 [事件列表, 未完整的剩余部分] */
+const parseSseEvents = (buffer: string): [{ event: string; data: string }[], string] => {
+  const events: { event: string; data: string }[] = [];
+  const blocks = buffer.split(/\r?\n\r?\n/);
+  const rest = blocks.pop() ?? '';
+  for (const block of blocks) {
+    let event = 'message';
+    const data: string[] = [];
+    for (const line of block.split(/\r?\n/)) {
+      if (line.startsWith('event:')) event = line.slice(6).trim();
+      else if (line.startsWith('data:')) data.push(line.slice(5).replace(/^ /, ''));
+    }
+    if (data.length > 0) events.push({ event, data: data.join('\n') });
+  }
+  return [events, rest];
+};
+
+type AnalysisJob = AnalysisResponse & { status?: string; message?: string };
+
 export const analysisApi = {
-  analyze: async (period: 'day' | '3days' | 'week' | 'month' | 'all' = 'all'): Promise<AnalysisResponse> => {
-    const response = await api.post('/analysis', { period });
-    return response.data;
+  /**
+   * 服务端创建分析任务后立即返回任务 id，这里通过 SSE 接收输出：onText 在每个片段到达时收到目前为止的全部文本。
+   * signal 中止时断开连接并取消任务。流式连接不可用时改为轮询任务状态。
+   */
+  analyze: async (
+    period: 'day' | '3days' | 'week' | 'month' | 'all' = 'all',
+    onText?: (text: string) => void,
+    signal?: AbortSignal
+  ): Promise<AnalysisResponse> => {
+    const response = await api.post('/analysis', { period }, { signal });
+    const { jobId } = response.data as { jobId: string };
+    const path = `/analysis/${encodeURIComponent(jobId)}`;
+    const cancel = () => {
+      api.delete(path).catch(() => undefined);
+    };
+    signal?.addEventListener('abort', cancel, { once: true });
+    const finish = (job: AnalysisJob): AnalysisResponse => {
+      signal?.removeEventListener('abort', cancel);
+      if (job.status === 'failed' || job.status === 'cancelled') {
+        throw new Error(job.message || '分析失败，请重试');
+      }
+      return { analysis: job.analysis, model: job.model ?? undefined, error: job.error ?? undefined };
+    };
+
+    const token = getToken();
+    const stream = await fetch(`${api.defaults.baseURL}${path}/stream`, {
+      headers: { Accept: 'text/event-stream', ...(token ? { Authorization: `Bearer ${token}` } : {}) },
+      signal,
+    }).catch((err) => {
+      if (signal?.aborted) throw err;
+      return null;
+    });
+    if (stream && stream.ok && stream.body) {
+      const reader = stream.body.getReader();
+      const decoder = new TextDecoder();
+      let buffer = '';
+      let text = '';
+      for (;;) {
+        const { done, value } = await reader.read();
+        if (done) break;
+        buffer += decoder.decode(value, { stream: true });
+        const [events, rest] = parseSseEvents(buffer);
+        buffer = rest;
+        for (const e of events) {
+          if (e.event === 'token') {
+            text += (JSON.parse(e.data) as { text: string }).text;
+            onText?.(text);
+          } else if (e.event === 'end') {
+            return finish(JSON.parse(e.data) as AnalysisJob);
+          }
+        }
+      }
+    }
+    // 流式连接失败或提前断开：轮询任务状态直到结束
+    for (;;) {
+      if (signal?.aborted) throw new Error('分析已取消');
+      const { data } = await api.get(path);
+      const job = data as AnalysisJob;
+      if (job.status !== 'queued' && job.status !== 'running') {
+        return finish(job);
+      }
+      if (job.analysis) onText?.(job.analysis);
+      await new Promise((resolve) => setTimeout(resolve, 1000));
+    }
   },
 };
 
@@ -393,3 +573,40 @@ export const performanceApi = {
     return response.data;
   },
 };
+
+/**
+ * 增量同步：从 since（上次返回的 version，首次为 0）拉取全部变更页，行数组按 fields 还原为 Transaction。
+ * reset 为 true 时调用方应先清空本地数据；完成后保存 version 作为下次的 since。
+ */
+export const syncApi = {
+  pull: async (since = 0): Promise<SyncResult> => {
+    // 跨页按 id 取最后一次变更，null 表示已删除
+    const latest = new Map<number, Transaction | null>();
+    let cursor: string | undefined;
+    let reset = false;
+    let version = since;
+    do {
+      const { data } = await api.get<SyncPage>('/sync', { params: { since, cursor } });
+      if (!cursor) reset = data.reset;
+      for (const row of data.changes) {
+        const raw: Record<string, unknown> = {};
+        data.fields.forEach((f, i) => {
+          raw[f] = row[i];
+        });
+        const t = normalizeTransaction(raw);
+        latest.delete(t.id);
+        latest.set(t.id, t);
+      }
+      for (const id of data.deleted) {
+        latest.delete(id);
+        latest.set(id, null);
+      }
+      version = data.version;
+      cursor = data.hasMore && data.cursor ? data.cursor : undefined;
+    } while (cursor);
+    const changed: Transaction[] = [];
+    const deleted: number[] = [];
+    latest.forEach((t, id) => (t ? changed.push(t) : deleted.push(id)));
+    return { version, reset, changed, deleted };
+  },
+};
@@ -45,12 +45,60 @@ export interface BillingCycleDto {
   expectedExpense?: number | null;
 }
 
+/** 关键字命中位置（[start, end) 字符下标），按交易 id 分组 */
+export type TransactionHighlights = Record<number, { description: [number, number][]; category: [number, number][] }>;
+
 export interface TransactionPage {
   content: Transaction[];
   totalElements: number;
   totalPages: number;
   number: number;
   size: number;
+  highlights?: TransactionHighlights;
+}
+
+/** 游标分页：nextCursor 为 null 表示没有更多；totalElements 仅在 withTotal 时返回 */
+export interface TransactionCursorPage {
+  content: Transaction[];
+  nextCursor: string | null;
+  hasNext: boolean;
+  totalElements?: number;
+}
+
+/** 批量接口的单个操作：update / delete 需要 id，create / update 需要 data */
+export interface BatchOperation {
+  clientId?: string;
+  op: 'create' | 'update' | 'delete';
+  id?: number;
+  data?: Partial<Transaction> & { amount?: number | string };
+}
+
+/** 批量接口结果，results 与请求的 operations 一一对应 */
+export interface BatchResponse {
+  mode: 'atomic' | 'best-effort';
+  applied: boolean;
+  succeeded: number;
+  failed: number;
+  results: { clientId?: string; op: string; status: 'ok' | 'error' | 'skipped'; id?: number; error?: string }[];
+}
+
+/** GET /api/sync 的一页：changes 为按 fields 排列的数组行，deleted 为被删除的交易 id */
+export interface SyncPage {
+  version: number;
+  reset: boolean;
+  hasMore: boolean;
+  cursor: string | null;
+  fields: string[];
+  changes: unknown[][];
+  deleted: number[];
+}
+
+/** 一次增量同步的合并结果 */
+export interface SyncResult {
+  version: number;
+  reset: boolean;
+  changed: Transaction[];
+  deleted: number[];
 }
 
 export interface UserCategory {